@@ -1,7 +1,13 @@
 package ru.practicum.ewm.constants;
 
+import java.time.LocalDateTime;
+
 public abstract class Constants {
     public static final String DATE_TIME_FORMAT = "yyyy-MM-dd HH:mm:ss";
 
     public static final String STATS_EVENTS_URL = "/events/";
+
+    // постоянное окно запроса просмотров, чтобы ответы сервиса статистики кешировались
+    public static final LocalDateTime STATS_START = LocalDateTime.of(2000, 1, 1, 0, 0);
+    public static final LocalDateTime STATS_END = LocalDateTime.of(2100, 1, 1, 0, 0);
 }
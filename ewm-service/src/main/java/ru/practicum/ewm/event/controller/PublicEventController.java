@@ -5,6 +5,7 @@ import jakarta.validation.constraints.DecimalMax;
 import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.Min;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -90,12 +91,11 @@ public class PublicEventController {
 
         Collection<EventShortDtoOut> events = eventService.findShortEventsBy(filter);
 
-        Collection<Long> ids = events.stream()
-                .map(EventShortDtoOut::getId)
-                .toList();
-
-        writeStatisticsByIds(ids, request.getRemoteAddr());
-        writeStatisticsByUris(List.of("/events"), request.getRemoteAddr());
+        // просмотры найденных событий и самого списка отправляются одним пакетом
+        List<String> uris = new ArrayList<>();
+        events.forEach(event -> uris.add(STATS_EVENTS_URL + event.getId()));
+        uris.add("/events");
+        writeStatisticsByUris(uris, request.getRemoteAddr());
 
         return events;
     }
@@ -118,8 +118,7 @@ public class PublicEventController {
 
     private void writeStatisticsByUris(Collection<String> uris, String ip) {
         try {
-            for (String uri : uris)
-                statsClient.hit(appName, uri, ip);
+            statsClient.hitAll(appName, uris, ip);
 
         } catch (StatsClientException ex) {
             log.error(ex.getMessage());
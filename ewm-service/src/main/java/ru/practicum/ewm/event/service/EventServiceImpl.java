@@ -27,17 +27,21 @@ import ru.practicum.ewm.participation.repository.ParticipationRequestRepository;
 import ru.practicum.ewm.user.model.User;
 import ru.practicum.ewm.user.repository.UserRepository;
 import ru.practicum.statsclient.StatsClient;
-import ru.practicum.statsclient.StatsClientException;
-import ru.practicum.statsdto.StatsDtoOut;
+import ru.practicum.statsdto.ViewCounts;
 
 import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
+import static ru.practicum.ewm.constants.Constants.STATS_END;
 import static ru.practicum.ewm.constants.Constants.STATS_EVENTS_URL;
+import static ru.practicum.ewm.constants.Constants.STATS_START;
 
 @Slf4j
 @Service
@@ -163,12 +167,19 @@ public class EventServiceImpl implements EventService {
 
     @Override
     public EventDtoOut findPublished(Long eventId) {
-
-        Event event = eventRepository.findPublishedById(eventId)
-                .orElseThrow(() -> new NotFoundException("Event", eventId));
+        // просмотры запрашиваются у сервиса статистики параллельно с чтением из базы
+        List<Long> ids = List.of(eventId);
+        CompletableFuture<ViewCounts> viewsRequest = requestViews(ids);
+
+        Optional<Event> found = eventRepository.findPublishedById(eventId);
+        if (found.isEmpty()) {
+            viewsRequest.cancel(true);
+            throw new NotFoundException("Event", eventId);
+        }
+        Event event = found.get();
 
         enrichWithConfirmedRequestsCount(List.of(event));
-        enrichWithViewsCount(List.of(event));
+        applyViewsCount(List.of(event), awaitViews(viewsRequest));
 
         return EventMapper.toDto(event);
     }
@@ -290,47 +301,36 @@ public class EventServiceImpl implements EventService {
         if (events.isEmpty())
             return;
 
-        Map<Long, Integer> hitsMap = getStatistics(events.stream()
+        List<Long> ids = events.stream()
                 .map(Event::getId)
-                .toList());
+                .toList();
+        applyViewsCount(events, awaitViews(requestViews(ids)));
+    }
 
-        if (hitsMap.isEmpty())
+    private void applyViewsCount(Collection<Event> events, ViewCounts views) {
+        if (views == null)
             return;
 
-        events.forEach(dto ->
-                dto.setViews(hitsMap.getOrDefault(dto.getId(), 0))
+        events.forEach(event ->
+                event.setViews((int) views.get(event.getId()))
         );
     }
 
-    private Map<Long, Integer> getStatistics(Collection<Long> ids) {
-        Collection<StatsDtoOut> stats = List.of();
+    private CompletableFuture<ViewCounts> requestViews(Collection<Long> ids) {
         if (ids.isEmpty())
-            return Map.of();
+            return CompletableFuture.completedFuture(new ViewCounts());
+
+        return statsClient.getViewCountsAsync(STATS_START, STATS_END, STATS_EVENTS_URL, ids, true);
+    }
 
+    // null - сервис статистики недоступен, просмотры остаются как есть
+    private ViewCounts awaitViews(CompletableFuture<ViewCounts> viewsRequest) {
         try {
-            stats = statsClient.getStats(
-                    LocalDateTime.now().minusYears(10),
-                    LocalDateTime.now().plusYears(10),
-                    ids.stream().map(id -> STATS_EVENTS_URL + id).toList(),
-                    true);
-        } catch (StatsClientException ex) {
-            log.error(ex.getMessage());
+            return viewsRequest.join();
+        } catch (CompletionException | CancellationException ex) {
+            log.error("Failed to get views from stats service: {}", ex.getMessage());
+            return null;
         }
-
-        if (stats.isEmpty())
-            return Map.of();
-
-        Map<String, Integer> hits = stats.stream()
-                .collect(Collectors.toMap(
-                        StatsDtoOut::getUri,
-                        StatsDtoOut::getHits
-                ));
-
-        return ids.stream()
-                .collect(Collectors.toMap(
-                        num -> num,
-                        num -> hits.getOrDefault(STATS_EVENTS_URL + num, 0)
-                ));
     }
 
     private void validateEventDate(LocalDateTime eventDate, EventState state) {
@@ -0,0 +1,16 @@
+package ru.practicum.ewm.statsclient;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.practicum.statsclient.StatsClientConfig;
+
+@Configuration
+public class StatsClientConfiguration {
+
+    @Bean
+    @ConfigurationProperties(prefix = "statsclient")
+    public StatsClientConfig statsClientConfig() {
+        return new StatsClientConfig();
+    }
+}
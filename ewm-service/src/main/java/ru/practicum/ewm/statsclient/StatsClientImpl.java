@@ -1,15 +1,19 @@
 package ru.practicum.ewm.statsclient;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import ru.practicum.statsclient.StatsClient;
+import ru.practicum.statsclient.StatsClientConfig;
 
 @Component
 public class StatsClientImpl extends StatsClient {
 
     @Autowired
-    public StatsClientImpl(@Value("${statsserver.url}") String serverUrl) {
-        super(serverUrl);
+    public StatsClientImpl(@Value("${statsserver.url}") String serverUrl,
+                           StatsClientConfig config,
+                           MeterRegistry meterRegistry) {
+        super(serverUrl, config, meterRegistry);
     }
 }
@@ -0,0 +1,83 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker for calls to the stats server.
+ * <p>
+ * Opens after {@code failureThreshold} consecutive failures and rejects calls for {@code openDuration};
+ * then lets a single probe through (half-open): its success closes the circuit, its failure opens it again.
+ * Every permitted call must report its outcome with {@link #onSuccess()} or {@link #onFailure()}.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean probeInFlight = new AtomicBoolean();
+    private volatile long openedAt;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration, MeterRegistry meterRegistry) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+
+        Gauge.builder("stats.client.circuit.state", state, s -> s.get().ordinal())
+                .description("Stats server circuit: 0 - closed, 1 - open, 2 - half-open")
+                .register(meterRegistry);
+    }
+
+    public State state() {
+        return state.get();
+    }
+
+    public boolean tryAcquire() {
+        State current = state.get();
+        if (current == State.CLOSED)
+            return true;
+        if (current == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos)
+                return false;
+            state.compareAndSet(State.OPEN, State.HALF_OPEN);
+        }
+        // в полуоткрытом состоянии пропускается только одна проба
+        return probeInFlight.compareAndSet(false, true);
+    }
+
+    public void onSuccess() {
+        consecutiveFailures.set(0);
+        if (state.get() != State.CLOSED) {
+            state.set(State.CLOSED);
+            probeInFlight.set(false);
+            log.info("Stats server circuit closed");
+        }
+    }
+
+    public void onFailure() {
+        if (state.get() == State.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold)
+            open();
+    }
+
+    private void open() {
+        openedAt = System.nanoTime();
+        if (state.getAndSet(State.OPEN) != State.OPEN)
+            log.warn("Stats server circuit opened for {} ms", openNanos / 1_000_000);
+        probeInFlight.set(false);
+        consecutiveFailures.set(0);
+    }
+}
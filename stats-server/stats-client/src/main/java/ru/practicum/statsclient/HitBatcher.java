@@ -0,0 +1,139 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.statsdto.HitDto;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces hits of all calling threads into batched requests.
+ * <p>
+ * A flusher thread takes the first waiting submission, collects further ones for at most
+ * {@code linger} or until {@code maxBatchSize} hits are collected, and sends them in one request.
+ * Each submission gets a future completed when its batch was accepted by the server or failed,
+ * so callers may still wait for their hits to be stored.
+ */
+@Slf4j
+public class HitBatcher implements AutoCloseable {
+
+    private final BlockingQueue<Submission> queue;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final Consumer<List<HitDto>> sender;
+
+    private final DistributionSummary batchSizeSummary;
+    private final Timer flushTimer;
+    private final Counter rejectedCounter;
+
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    public HitBatcher(StatsClientConfig.Batch config, Consumer<List<HitDto>> sender, MeterRegistry meterRegistry) {
+        this.queue = new LinkedBlockingQueue<>(config.getQueueCapacity());
+        this.maxBatchSize = config.getMaxBatchSize();
+        this.lingerNanos = config.getLinger().toNanos();
+        this.sender = sender;
+
+        Gauge.builder("stats.client.batch.queue", queue, BlockingQueue::size)
+                .description("Hit submissions waiting for the next batch")
+                .register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder("stats.client.batch.size")
+                .description("Hits sent in one batched request")
+                .baseUnit("hits")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("stats.client.batch.flush")
+                .description("Time spent sending one batch of hits")
+                .register(meterRegistry);
+        rejectedCounter = meterRegistry.counter("stats.client.batch.rejected");
+
+        flusher = new Thread(this::flushLoop, "stats-hit-batcher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public CompletableFuture<Void> submit(Collection<HitDto> hits) {
+        Submission submission = new Submission(List.copyOf(hits), new CompletableFuture<>());
+        if (!running || !queue.offer(submission)) {
+            rejectedCounter.increment(hits.size());
+            submission.result().completeExceptionally(new StatsClientException("Hit batch queue is full"));
+        }
+        return submission.result();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushLoop() {
+        List<Submission> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Submission first = running ? queue.take() : queue.poll();
+                if (first == null)
+                    break;
+                batch.add(first);
+                int size = first.hits().size();
+
+                // окно отсчитывается от первого хита пакета, а не от последней отправки
+                long deadline = System.nanoTime() + lingerNanos;
+                while (size < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Submission next = running && remaining > 0
+                            ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : queue.poll();
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                    size += next.hits().size();
+                }
+            } catch (InterruptedException e) {
+                // close(): досылаем то, что уже в очереди
+                continue;
+            }
+            flush(batch);
+        }
+        flush(batch);
+    }
+
+    private void flush(List<Submission> batch) {
+        if (batch.isEmpty())
+            return;
+
+        List<HitDto> hits = new ArrayList<>();
+        for (Submission submission : batch)
+            hits.addAll(submission.hits());
+
+        try {
+            batchSizeSummary.record(hits.size());
+            flushTimer.record(() -> sender.accept(hits));
+            batch.forEach(submission -> submission.result().complete(null));
+        } catch (RuntimeException e) {
+            log.error("Failed to send batch of {} hits: {}", hits.size(), e.getMessage());
+            batch.forEach(submission -> submission.result().completeExceptionally(e));
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private record Submission(List<HitDto> hits, CompletableFuture<Void> result) {
+    }
+}
@@ -0,0 +1,299 @@
+package ru.practicum.statsclient;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.statsdto.HitDto;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Durable queue of hits on local disk.
+ * <p>
+ * {@link StatsClient} appends only hits it failed to send, so views stay synchronous while the server is up.
+ * <p>
+ * Hits are appended as NDJSON lines to segment files; a full segment is closed and a new one started,
+ * each start of the client opens a new segment. A background sender reads hits after the checkpoint,
+ * sends them in batches and moves the checkpoint forward only after the server accepted the batch,
+ * deleting fully sent segments. Every hit carries an id, so a batch re-sent after a failure
+ * is counted once by the server.
+ */
+@Slf4j
+public class HitSpool implements AutoCloseable {
+
+    private static final Pattern SEGMENT_FILE = Pattern.compile("spool-(\\d{16})\\.ndjson");
+    private static final String CHECKPOINT_FILE = "spool.checkpoint";
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int batchSize;
+    private final Duration pollInterval;
+    private final Duration maxBackoff;
+    private final Consumer<List<HitDto>> sender;
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private final Thread senderThread;
+
+    // состояние писателя, под монитором this
+    private long writeSegment;
+    private FileChannel writeChannel;
+    private long writePosition;
+
+    // состояние читателя, только в потоке отправки
+    private long readSegment;
+    private long readPosition;
+
+    private volatile boolean running = true;
+
+    public HitSpool(StatsClientConfig.Spool config, Consumer<List<HitDto>> sender) {
+        this.directory = Path.of(config.getDirectory());
+        this.segmentBytes = config.getSegmentBytes();
+        this.batchSize = config.getBatchSize();
+        this.pollInterval = config.getPollInterval();
+        this.maxBackoff = config.getMaxBackoff();
+        this.sender = sender;
+
+        try {
+            Files.createDirectories(directory);
+            List<Long> segments = listSegments();
+            readCheckpoint(segments);
+            long lastSegment = segments.isEmpty() ? 0 : segments.getLast();
+            openSegment(Math.max(lastSegment, readSegment) + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open hit spool in " + directory, e);
+        }
+
+        senderThread = new Thread(this::sendLoop, "stats-spool-sender");
+        senderThread.setDaemon(true);
+        senderThread.start();
+        log.info("Hit spool opened in {}, replaying from segment {} at {}",
+                directory.toAbsolutePath(), readSegment, readPosition);
+    }
+
+    public void append(HitDto hit) {
+        byte[] line;
+        try {
+            line = (objectMapper.writeValueAsString(hit) + "\n").getBytes(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new StatsClientException("Failed to serialize hit: " + e.getMessage());
+        }
+
+        synchronized (this) {
+            try {
+                if (writePosition > 0 && writePosition + line.length > segmentBytes) {
+                    writeChannel.close();
+                    openSegment(writeSegment + 1);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(line);
+                while (buffer.hasRemaining())
+                    writePosition += writeChannel.write(buffer);
+            } catch (IOException e) {
+                throw new StatsClientException("Failed to write hit to spool: " + e.getMessage());
+            }
+        }
+        // отправитель не ждёт конца poll-interval
+        LockSupport.unpark(senderThread);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(senderThread);
+        try {
+            senderThread.join(pollInterval.toMillis() * 10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                writeChannel.force(false);
+                writeChannel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close hit spool segment: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void sendLoop() {
+        long backoff = pollInterval.toMillis();
+        while (running) {
+            try {
+                syncWriter();
+                Batch batch = readBatch();
+                if (batch == null) {
+                    LockSupport.parkNanos(pollInterval.toNanos());
+                    continue;
+                }
+                if (batch.hits().isEmpty()) {
+                    commit(batch);
+                    continue;
+                }
+
+                try {
+                    sender.accept(batch.hits());
+                } catch (StatsClientException e) {
+                    if (e.isRetryable())
+                        throw e;
+                    log.error("Stats server rejected {} spooled hits, skipping them: {}",
+                            batch.hits().size(), e.getMessage());
+                }
+                commit(batch);
+                backoff = pollInterval.toMillis();
+            } catch (RuntimeException | IOException e) {
+                // экспоненциальная задержка с разбросом, чтобы клиенты не повторяли запросы синхронно
+                backoff = Math.min(backoff * 2, maxBackoff.toMillis());
+                long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                log.warn("Failed to send spooled hits, retrying in {} ms: {}", delay, e.getMessage());
+                // новые хиты будят поток, но повтор ждёт свою задержку целиком
+                long pause = Duration.ofMillis(delay).toNanos();
+                long until = System.nanoTime() + pause;
+                for (long left = pause; running && left > 0; left = until - System.nanoTime())
+                    LockSupport.parkNanos(left);
+            }
+        }
+    }
+
+    // null - читать пока нечего
+    private Batch readBatch() throws IOException {
+        long lastSegment;
+        synchronized (this) {
+            lastSegment = writeSegment;
+        }
+
+        List<HitDto> hits = new ArrayList<>();
+        long position = readPosition;
+        Path path = segmentPath(readSegment);
+        if (Files.exists(path)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer buffer = read(channel, position, READ_BUFFER_SIZE);
+                // строка длиннее буфера: буфер растёт, пока в него не войдёт целая строка или конец файла
+                while (buffer.limit() == buffer.capacity() && !containsLine(buffer))
+                    buffer = read(channel, position, buffer.capacity() * 2);
+
+                int lineStart = 0;
+                for (int i = 0; i < buffer.limit() && hits.size() < batchSize; i++) {
+                    if (buffer.get(i) != '\n')
+                        continue;
+
+                    String line = new String(buffer.array(), lineStart, i - lineStart, StandardCharsets.UTF_8);
+                    lineStart = i + 1;
+                    if (line.isBlank())
+                        continue;
+                    try {
+                        hits.add(objectMapper.readValue(line, HitDto.class));
+                    } catch (JsonProcessingException e) {
+                        log.error("Skipping corrupted spooled hit in segment {}: {}", readSegment, line);
+                    }
+                }
+                position += lineStart;
+            }
+        }
+
+        if (position > readPosition)
+            return new Batch(hits, readSegment, position);
+
+        // закрытый сегмент дочитан (недописанный после сбоя хвост пропускается) - переходим к следующему
+        if (readSegment < lastSegment)
+            return new Batch(hits, readSegment + 1, 0);
+        return null;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) <= 0)
+                break;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static boolean containsLine(ByteBuffer buffer) {
+        for (int i = 0; i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n')
+                return true;
+        }
+        return false;
+    }
+
+    private void commit(Batch batch) throws IOException {
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        Path tmp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.writeString(tmp, batch.segment() + " " + batch.position(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        Files.move(tmp, checkpoint, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (long segment = readSegment; segment < batch.segment(); segment++)
+            Files.deleteIfExists(segmentPath(segment));
+        readSegment = batch.segment();
+        readPosition = batch.position();
+    }
+
+    // записанное попадает на диск не реже одного раза за цикл отправки
+    private void syncWriter() throws IOException {
+        FileChannel channel;
+        synchronized (this) {
+            channel = writeChannel;
+        }
+        if (channel.isOpen())
+            channel.force(false);
+    }
+
+    private void readCheckpoint(List<Long> segments) throws IOException {
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        readSegment = segments.isEmpty() ? 1 : segments.getFirst();
+        readPosition = 0;
+        if (!Files.exists(checkpoint))
+            return;
+
+        String[] parts = Files.readString(checkpoint).trim().split(" ");
+        long segment = Long.parseLong(parts[0]);
+        if (segment >= readSegment) {
+            readSegment = segment;
+            readPosition = Long.parseLong(parts[1]);
+        }
+    }
+
+    private void openSegment(long segment) throws IOException {
+        writeChannel = FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        writeSegment = segment;
+        writePosition = writeChannel.size();
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .map(path -> SEGMENT_FILE.matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve("spool-%016d.ndjson".formatted(segment));
+    }
+
+    private record Batch(List<HitDto> hits, long segment, long position) {
+    }
+}
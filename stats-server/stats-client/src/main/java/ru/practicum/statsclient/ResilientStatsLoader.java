@@ -0,0 +1,178 @@
+package ru.practicum.statsclient;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.statsdto.StatsDtoOut;
+import ru.practicum.statsdto.ViewCounts;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Stats loading that keeps callers fast while the stats server is in trouble.
+ * <p>
+ * Calls go through the {@link CircuitBreaker}; retryable failures are retried with jittered exponential
+ * backoff while the per-call deadline and the {@link RetryBudget} allow. When the circuit is open
+ * or the call finally fails, the last successfully loaded stats of the requested uris are returned
+ * at once (uris never loaded get no stats, i.e. zero views). View counts by id are remembered
+ * per (window, prefix, id) and fall back the same way.
+ */
+@Slf4j
+public class ResilientStatsLoader implements StatsLoader, ViewCountsLoader {
+
+    private final StatsLoader delegate;
+    private final ViewCountsLoader viewsDelegate;
+    private final CircuitBreaker circuitBreaker;
+    private final RetryBudget retryBudget;
+    private final long deadlineNanos;
+    private final long initialBackoffNanos;
+    private final Cache<Key, List<StatsDtoOut>> lastKnown;
+    private final Cache<ViewWindowKey, Long> lastKnownViews;
+    private final Counter fallbackCounter;
+    private final Counter retryCounter;
+
+    public ResilientStatsLoader(StatsLoader delegate,
+                                ViewCountsLoader viewsDelegate,
+                                CircuitBreaker circuitBreaker,
+                                StatsClientConfig.Resilience config,
+                                MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.viewsDelegate = viewsDelegate;
+        this.circuitBreaker = circuitBreaker;
+        this.retryBudget = new RetryBudget(config.getRetryRatio(), config.getMaxRetryTokens());
+        this.deadlineNanos = config.getDeadline().toNanos();
+        this.initialBackoffNanos = config.getInitialBackoff().toNanos();
+        this.lastKnown = Caffeine.newBuilder()
+                .maximumSize(config.getLastKnownMaxUris())
+                .build();
+        this.lastKnownViews = Caffeine.newBuilder()
+                .maximumSize(config.getLastKnownMaxUris())
+                .build();
+        this.fallbackCounter = meterRegistry.counter("stats.client.fallback");
+        this.retryCounter = meterRegistry.counter("stats.client.retries");
+    }
+
+    @Override
+    public Collection<StatsDtoOut> load(LocalDateTime start, LocalDateTime end, Collection<String> uris, boolean unique) {
+        return call(() -> {
+            Collection<StatsDtoOut> stats = delegate.load(start, end, uris, unique);
+            remember(start, end, uris, unique, stats);
+            return stats;
+        }, reason -> fallback(start, end, uris, unique, reason));
+    }
+
+    @Override
+    public ViewCounts load(LocalDateTime start, LocalDateTime end, String prefix, Collection<Long> ids, boolean unique) {
+        return call(() -> {
+            ViewCounts views = viewsDelegate.load(start, end, prefix, ids, unique);
+            for (Long id : ids)
+                lastKnownViews.put(new ViewWindowKey(start, end, unique, new ViewKey(prefix, id)), views.get(id));
+            return views;
+        }, reason -> fallbackViews(start, end, prefix, ids, unique, reason));
+    }
+
+    private <T> T call(Supplier<T> attempt, Function<String, T> fallback) {
+        long deadline = System.nanoTime() + deadlineNanos;
+        long backoff = initialBackoffNanos;
+        retryBudget.onCall();
+
+        while (true) {
+            if (!circuitBreaker.tryAcquire())
+                return fallback.apply("circuit is open");
+
+            try {
+                T result = attempt.get();
+                circuitBreaker.onSuccess();
+                return result;
+            } catch (StatsClientException e) {
+                // ошибка запроса, а не сервера: повтор не поможет, и цепь не размыкается
+                if (!e.isRetryable()) {
+                    circuitBreaker.onSuccess();
+                    throw e;
+                }
+                circuitBreaker.onFailure();
+
+                long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                if (System.nanoTime() + delay >= deadline || !retryBudget.tryRetry())
+                    return fallback.apply(e.getMessage());
+
+                retryCounter.increment();
+                LockSupport.parkNanos(delay);
+                if (Thread.currentThread().isInterrupted())
+                    return fallback.apply("interrupted");
+                backoff *= 2;
+            }
+        }
+    }
+
+    private Collection<StatsDtoOut> fallback(LocalDateTime start,
+                                             LocalDateTime end,
+                                             Collection<String> uris,
+                                             boolean unique,
+                                             String reason) {
+        if (uris == null || uris.isEmpty())
+            throw new StatsClientException("Stats service unavailable: " + reason);
+
+        fallbackCounter.increment();
+        log.warn("Stats service unavailable ({}), returning last known stats for {} uris", reason, uris.size());
+
+        List<StatsDtoOut> result = new ArrayList<>();
+        for (String uri : uris) {
+            List<StatsDtoOut> stats = lastKnown.getIfPresent(new Key(start, end, unique, uri));
+            if (stats != null)
+                result.addAll(stats);
+        }
+        return result;
+    }
+
+    private ViewCounts fallbackViews(LocalDateTime start,
+                                     LocalDateTime end,
+                                     String prefix,
+                                     Collection<Long> ids,
+                                     boolean unique,
+                                     String reason) {
+        fallbackCounter.increment();
+        log.warn("Stats service unavailable ({}), returning last known views for {} ids", reason, ids.size());
+
+        Map<Long, Long> result = new TreeMap<>();
+        for (Long id : ids) {
+            Long hits = lastKnownViews.getIfPresent(new ViewWindowKey(start, end, unique, new ViewKey(prefix, id)));
+            if (hits != null && hits > 0)
+                result.put(id, hits);
+        }
+        return ViewCounts.of(result);
+    }
+
+    private void remember(LocalDateTime start,
+                          LocalDateTime end,
+                          Collection<String> uris,
+                          boolean unique,
+                          Collection<StatsDtoOut> stats) {
+        if (uris == null || uris.isEmpty())
+            return;
+
+        Map<String, List<StatsDtoOut>> byUri = new HashMap<>();
+        for (StatsDtoOut dto : stats)
+            byUri.computeIfAbsent(dto.getUri(), uri -> new ArrayList<>()).add(dto);
+        for (String uri : uris)
+            lastKnown.put(new Key(start, end, unique, uri), List.copyOf(byUri.getOrDefault(uri, List.of())));
+    }
+
+    private record Key(LocalDateTime start, LocalDateTime end, boolean unique, String uri) {
+    }
+
+    private record ViewWindowKey(LocalDateTime start, LocalDateTime end, boolean unique, ViewKey view) {
+    }
+}
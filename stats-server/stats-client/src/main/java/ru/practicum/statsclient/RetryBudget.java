@@ -0,0 +1,29 @@
+package ru.practicum.statsclient;
+
+/**
+ * Limits retries to a share of calls, so retries cannot multiply the load of an overloaded server.
+ * Every call deposits {@code ratio} tokens up to {@code maxTokens}, every retry takes one token.
+ */
+public class RetryBudget {
+
+    private final double ratio;
+    private final double maxTokens;
+    private double tokens;
+
+    public RetryBudget(double ratio, int maxTokens) {
+        this.ratio = ratio;
+        this.maxTokens = maxTokens;
+        this.tokens = maxTokens;
+    }
+
+    public synchronized void onCall() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    public synchronized boolean tryRetry() {
+        if (tokens < 1)
+            return false;
+        tokens -= 1;
+        return true;
+    }
+}
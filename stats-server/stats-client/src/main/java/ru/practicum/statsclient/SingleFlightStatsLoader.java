@@ -0,0 +1,170 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import ru.practicum.statsdto.StatsDtoOut;
+import ru.practicum.statsdto.ViewCounts;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares in-flight stats requests between concurrent callers.
+ * <p>
+ * Every (window, uri) pair being loaded has one future. A caller joins the futures of uris
+ * already requested by others and loads only the remaining uris itself in one request,
+ * completing their futures for everyone waiting. Nothing is kept after a request completes.
+ * View counts by id are shared the same way per (window, prefix, id).
+ */
+public class SingleFlightStatsLoader implements StatsLoader, ViewCountsLoader {
+
+    private final StatsLoader delegate;
+    private final ViewCountsLoader viewsDelegate;
+    private final Map<Key, CompletableFuture<List<StatsDtoOut>>> inFlight = new ConcurrentHashMap<>();
+    private final Map<ViewWindowKey, CompletableFuture<Long>> viewsInFlight = new ConcurrentHashMap<>();
+    private final Counter sharedCounter;
+    private final Counter loadedCounter;
+
+    public SingleFlightStatsLoader(StatsLoader delegate, ViewCountsLoader viewsDelegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.viewsDelegate = viewsDelegate;
+        this.sharedCounter = meterRegistry.counter("stats.client.singleflight.uris", "result", "shared");
+        this.loadedCounter = meterRegistry.counter("stats.client.singleflight.uris", "result", "loaded");
+    }
+
+    @Override
+    public Collection<StatsDtoOut> load(LocalDateTime start, LocalDateTime end, Collection<String> uris, boolean unique) {
+        Map<String, CompletableFuture<List<StatsDtoOut>>> waiting = new LinkedHashMap<>();
+        Map<Key, CompletableFuture<List<StatsDtoOut>>> owned = new LinkedHashMap<>();
+
+        for (String uri : new LinkedHashSet<>(uris)) {
+            Key key = new Key(start, end, unique, uri);
+            CompletableFuture<List<StatsDtoOut>> future = new CompletableFuture<>();
+            CompletableFuture<List<StatsDtoOut>> existing = inFlight.putIfAbsent(key, future);
+            if (existing != null) {
+                waiting.put(uri, existing);
+            } else {
+                owned.put(key, future);
+                waiting.put(uri, future);
+            }
+        }
+        sharedCounter.increment(waiting.size() - owned.size());
+        loadedCounter.increment(owned.size());
+
+        if (!owned.isEmpty())
+            loadOwned(start, end, unique, owned);
+
+        List<StatsDtoOut> result = new ArrayList<>();
+        for (CompletableFuture<List<StatsDtoOut>> future : waiting.values())
+            result.addAll(join(future));
+        result.sort(Comparator.comparingInt(StatsDtoOut::getHits).reversed());
+        return result;
+    }
+
+    @Override
+    public ViewCounts load(LocalDateTime start, LocalDateTime end, String prefix, Collection<Long> ids, boolean unique) {
+        Map<Long, CompletableFuture<Long>> waiting = new LinkedHashMap<>();
+        Map<ViewWindowKey, CompletableFuture<Long>> owned = new LinkedHashMap<>();
+
+        for (Long id : ids) {
+            ViewWindowKey key = new ViewWindowKey(start, end, unique, new ViewKey(prefix, id));
+            CompletableFuture<Long> future = new CompletableFuture<>();
+            CompletableFuture<Long> existing = viewsInFlight.putIfAbsent(key, future);
+            if (existing != null) {
+                waiting.put(id, existing);
+            } else {
+                owned.put(key, future);
+                waiting.put(id, future);
+            }
+        }
+        sharedCounter.increment(waiting.size() - owned.size());
+        loadedCounter.increment(owned.size());
+
+        if (!owned.isEmpty())
+            loadOwnedViews(start, end, prefix, unique, owned);
+
+        Map<Long, Long> result = new TreeMap<>();
+        waiting.forEach((id, future) -> {
+            long hits = join(future);
+            if (hits > 0)
+                result.put(id, hits);
+        });
+        return ViewCounts.of(result);
+    }
+
+    // новые запросы этих uri не присоединяются к уже идущим, начатым до записи хитов
+    public void forget(Collection<String> uris) {
+        Set<String> forgotten = new HashSet<>(uris);
+        inFlight.keySet().removeIf(key -> forgotten.contains(key.uri()));
+        if (viewsInFlight.isEmpty())
+            return;
+
+        Set<String> prefixes = new HashSet<>();
+        viewsInFlight.keySet().forEach(key -> prefixes.add(key.view().prefix()));
+        Set<ViewKey> views = ViewKey.parseAll(forgotten, prefixes);
+        viewsInFlight.keySet().removeIf(key -> views.contains(key.view()));
+    }
+
+    private void loadOwned(LocalDateTime start,
+                           LocalDateTime end,
+                           boolean unique,
+                           Map<Key, CompletableFuture<List<StatsDtoOut>>> owned) {
+        try {
+            List<String> uris = owned.keySet().stream().map(Key::uri).toList();
+            Map<String, List<StatsDtoOut>> byUri = new HashMap<>();
+            for (StatsDtoOut stats : delegate.load(start, end, uris, unique))
+                byUri.computeIfAbsent(stats.getUri(), uri -> new ArrayList<>()).add(stats);
+
+            owned.forEach((key, future) -> future.complete(byUri.getOrDefault(key.uri(), List.of())));
+        } catch (RuntimeException e) {
+            owned.values().forEach(future -> future.completeExceptionally(e));
+        } finally {
+            owned.forEach(inFlight::remove);
+        }
+    }
+
+    private void loadOwnedViews(LocalDateTime start,
+                                LocalDateTime end,
+                                String prefix,
+                                boolean unique,
+                                Map<ViewWindowKey, CompletableFuture<Long>> owned) {
+        try {
+            List<Long> ids = owned.keySet().stream().map(key -> key.view().id()).toList();
+            ViewCounts views = viewsDelegate.load(start, end, prefix, ids, unique);
+            owned.forEach((key, future) -> future.complete(views.get(key.view().id())));
+        } catch (RuntimeException e) {
+            owned.values().forEach(future -> future.completeExceptionally(e));
+        } finally {
+            owned.forEach(viewsInFlight::remove);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    private record Key(LocalDateTime start, LocalDateTime end, boolean unique, String uri) {
+    }
+
+    private record ViewWindowKey(LocalDateTime start, LocalDateTime end, boolean unique, ViewKey view) {
+    }
+}
@@ -0,0 +1,126 @@
+package ru.practicum.statsclient;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import ru.practicum.statsdto.StatsDtoOut;
+import ru.practicum.statsdto.ViewCounts;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-through cache of per-uri stats.
+ * <p>
+ * Entries are kept per uri, each holding the stats of that uri for every requested window,
+ * so a request mixing cached and uncached uris asks the server only for the missing ones.
+ * Uris without hits are cached too. Entries expire after the TTL; hits recorded through
+ * the same client evict their uris, so a client always sees its own hits.
+ * View counts by id are cached the same way, keyed by (prefix, id) instead of the uri string.
+ */
+public class StatsCache {
+
+    private final Cache<String, Map<Query, List<StatsDtoOut>>> cache;
+    private final Cache<ViewKey, Map<Query, Long>> views;
+    private final Set<String> prefixes = ConcurrentHashMap.newKeySet();
+
+    public StatsCache(StatsClientConfig.Cache config, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.getMaxUris())
+                .expireAfterWrite(config.getTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "stats.client.cache");
+        this.views = Caffeine.newBuilder()
+                .maximumSize(config.getMaxUris())
+                .expireAfterWrite(config.getTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, views, "stats.client.cache.views");
+    }
+
+    public Collection<StatsDtoOut> getStats(LocalDateTime start,
+                                            LocalDateTime end,
+                                            Collection<String> uris,
+                                            boolean unique,
+                                            StatsLoader loader) {
+        Query query = new Query(start, end, unique);
+        List<StatsDtoOut> result = new ArrayList<>();
+        Set<String> missing = new LinkedHashSet<>();
+
+        for (String uri : new LinkedHashSet<>(uris)) {
+            Map<Query, List<StatsDtoOut>> entry = cache.getIfPresent(uri);
+            List<StatsDtoOut> stats = entry != null ? entry.get(query) : null;
+            if (stats != null)
+                result.addAll(stats);
+            else
+                missing.add(uri);
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, List<StatsDtoOut>> loaded = new ConcurrentHashMap<>();
+            missing.forEach(uri -> loaded.put(uri, new ArrayList<>()));
+            for (StatsDtoOut stats : loader.load(start, end, missing, unique))
+                loaded.computeIfAbsent(stats.getUri(), uri -> new ArrayList<>()).add(stats);
+
+            loaded.forEach((uri, stats) -> {
+                cache.get(uri, key -> new ConcurrentHashMap<>()).put(query, List.copyOf(stats));
+                result.addAll(stats);
+            });
+        }
+
+        // тот же порядок, что отдаёт сервер: по убыванию числа просмотров
+        result.sort(Comparator.comparingInt(StatsDtoOut::getHits).reversed());
+        return result;
+    }
+
+    public ViewCounts getViewCounts(LocalDateTime start,
+                                    LocalDateTime end,
+                                    String prefix,
+                                    Collection<Long> ids,
+                                    boolean unique,
+                                    ViewCountsLoader loader) {
+        prefixes.add(prefix);
+        Query query = new Query(start, end, unique);
+        Map<Long, Long> result = new TreeMap<>();
+        Set<Long> missing = new LinkedHashSet<>();
+
+        for (Long id : ids) {
+            Map<Query, Long> entry = views.getIfPresent(new ViewKey(prefix, id));
+            Long hits = entry != null ? entry.get(query) : null;
+            if (hits == null)
+                missing.add(id);
+            else if (hits > 0)
+                result.put(id, hits);
+        }
+
+        if (!missing.isEmpty()) {
+            ViewCounts loaded = loader.load(start, end, prefix, missing, unique);
+            for (Long id : missing) {
+                long hits = loaded.get(id);
+                views.get(new ViewKey(prefix, id), key -> new ConcurrentHashMap<>()).put(query, hits);
+                if (hits > 0)
+                    result.put(id, hits);
+            }
+        }
+        return ViewCounts.of(result);
+    }
+
+    public void evict(Collection<String> uris) {
+        cache.invalidateAll(uris);
+        if (!prefixes.isEmpty())
+            views.invalidateAll(ViewKey.parseAll(uris, prefixes));
+    }
+
+    private record Query(LocalDateTime start, LocalDateTime end, boolean unique) {
+    }
+}
@@ -1,43 +1,141 @@
 package ru.practicum.statsclient;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpStatusCode;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.util.UriComponentsBuilder;
 import ru.practicum.statsdto.HitDto;
 import ru.practicum.statsdto.StatsDtoOut;
+import ru.practicum.statsdto.StatsIdsQueryDto;
+import ru.practicum.statsdto.StatsQueryDto;
+import ru.practicum.statsdto.ViewCounts;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
 
 @Slf4j
-public abstract class StatsClient {
+public abstract class StatsClient implements AutoCloseable {
 
     private final RestClient restClient;
     private final String serverUrl;
+    private final HitSpool spool;
+    private final HitBatcher batcher;
+    private final StatsCache cache;
+    private final SingleFlightStatsLoader singleFlight;
+    private final CircuitBreaker circuitBreaker;
+    private final StatsLoader statsLoader;
+    private final ViewCountsLoader viewsLoader;
+    private final ExecutorService asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore asyncPermits;
+    private final Duration asyncTimeout;
+    private final StatsClientConfig.Query queryConfig;
 
     private static final String HIT_ENDPOINT = "/hit";
+    private static final String HIT_BATCH_ENDPOINT = "/hit/batch";
     private static final String STATS_ENDPOINT = "/stats";
+    private static final String STATS_QUERY_ENDPOINT = "/stats/query";
+    private static final String STATS_IDS_ENDPOINT = "/stats/ids";
+    private static final String STATS_STREAM_ENDPOINT = "/stats/stream";
+    private static final ObjectReader STATS_READER = JsonMapper.builder().build().readerFor(StatsDtoOut.class);
 
     public StatsClient(String serverUrl) {
+        this(serverUrl, new StatsClientConfig());
+    }
+
+    public StatsClient(String serverUrl, StatsClientConfig config) {
+        this(serverUrl, config, Metrics.globalRegistry);
+    }
+
+    public StatsClient(String serverUrl, StatsClientConfig config, MeterRegistry meterRegistry) {
         this.serverUrl = serverUrl;
 
-        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory();
-        factory.setConnectTimeout(Duration.ofSeconds(3));
-        factory.setConnectionRequestTimeout(Duration.ofSeconds(5));
+        int maxConcurrency = config.getAsync().getMaxConcurrency();
+        asyncPermits = new Semaphore(maxConcurrency);
+        asyncTimeout = config.getAsync().getTimeout();
+        queryConfig = config.getQuery();
+
+        // пул соединений не меньше числа одновременных асинхронных вызовов, иначе они ждут соединения
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setMaxConnTotal(maxConcurrency)
+                        .setMaxConnPerRoute(maxConcurrency)
+                        .build())
+                .build();
+
+        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        factory.setConnectTimeout(config.getConnectTimeout());
+        factory.setConnectionRequestTimeout(config.getConnectionRequestTimeout());
+        factory.setReadTimeout(config.getReadTimeout());
 
         restClient = RestClient.builder()
                 .requestFactory(factory)
                 .baseUrl(serverUrl)
                 .build();
+
+        // спул досылает хиты, которые не удалось отправить сразу; кеш вытесняется только после их доставки
+        spool = config.getSpool().isEnabled()
+                ? new HitSpool(config.getSpool(), hits -> {
+                    hitBatch(hits);
+                    evictCached(hits);
+                })
+                : null;
+        batcher = config.getBatch().isEnabled()
+                ? new HitBatcher(config.getBatch(), this::hitBatch, meterRegistry)
+                : null;
+        cache = config.getCache().isEnabled() ? new StatsCache(config.getCache(), meterRegistry) : null;
+
+        // чтение: кеш -> объединение одинаковых запросов -> предохранитель и повторы -> HTTP;
+        // просмотры по id проходят те же слои с ключом (префикс, id) и запрашиваются через /stats/ids
+        StatsLoader loader = this::fetchStats;
+        ViewCountsLoader idsLoader = this::fetchViewCounts;
+        if (config.getResilience().isEnabled()) {
+            StatsClientConfig.Resilience resilience = config.getResilience();
+            circuitBreaker = new CircuitBreaker(resilience.getFailureThreshold(), resilience.getOpenDuration(),
+                    meterRegistry);
+            ResilientStatsLoader resilient = new ResilientStatsLoader(loader, idsLoader, circuitBreaker, resilience,
+                    meterRegistry);
+            loader = resilient;
+            idsLoader = resilient;
+        } else {
+            circuitBreaker = null;
+        }
+        singleFlight = config.isSingleFlight()
+                ? new SingleFlightStatsLoader(loader, idsLoader, meterRegistry)
+                : null;
+        statsLoader = singleFlight != null ? singleFlight : loader;
+        viewsLoader = singleFlight != null ? singleFlight : idsLoader;
     }
 
     public void hit(String service, String url, String ip) {
@@ -50,7 +148,76 @@ public abstract class StatsClient {
     }
 
     public void hit(HitDto hitDto) throws StatsClientException {
+        assignIds(List.of(hitDto));
+        try {
+            if (batcher != null)
+                await(batcher.submit(List.of(hitDto)));
+            else
+                withCircuitBreaker(() -> postHit(hitDto));
+        } catch (StatsClientException e) {
+            spoolOrThrow(List.of(hitDto), e);
+            return;
+        }
+        evictCached(List.of(hitDto));
+    }
+
+    public void hitAll(String service, Collection<String> urls, String ip) {
+        LocalDateTime now = LocalDateTime.now();
+        List<HitDto> hits = urls.stream()
+                .map(url -> new HitDto(service, url, ip, now))
+                .toList();
+        hitAll(hits);
+    }
+
+    // все хиты уходят одним запросом, с включённым объединением - вместе с хитами других потоков
+    public void hitAll(Collection<HitDto> hits) throws StatsClientException {
+        if (hits.isEmpty())
+            return;
+
+        if (hits.size() == 1 && batcher == null) {
+            hit(hits.iterator().next());
+            return;
+        }
+
+        assignIds(hits);
+        try {
+            if (batcher != null)
+                await(batcher.submit(hits));
+            else
+                hitBatch(hits);
+        } catch (StatsClientException e) {
+            spoolOrThrow(hits, e);
+            return;
+        }
+        evictCached(hits);
+    }
+
+    public CompletableFuture<Void> hitAsync(String service, String url, String ip) {
+        HitDto dto = new HitDto();
+        dto.setService(service);
+        dto.setUri(url);
+        dto.setIp(ip);
+        dto.setDateTime(LocalDateTime.now());
+        return hitAsync(dto);
+    }
+
+    public CompletableFuture<Void> hitAsync(HitDto hitDto) {
+        if (spool == null && batcher != null)
+            return batcher.submit(List.of(hitDto))
+                    .orTimeout(asyncTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                    .thenRun(() -> evictCached(List.of(hitDto)));
+        // со спулом отказ отправки обрабатывает hit(): хит уходит в спул вместо ошибки
+        return submitAsync(() -> {
+            hit(hitDto);
+            return null;
+        }, asyncTimeout);
+    }
 
+    public void hitBatch(Collection<HitDto> hits) throws StatsClientException {
+        withCircuitBreaker(() -> postHitBatch(hits));
+    }
+
+    private void postHit(HitDto hitDto) {
         try {
             restClient.post()
                     .uri(HIT_ENDPOINT)
@@ -62,18 +229,60 @@ public abstract class StatsClient {
         } catch (ResourceAccessException e) {
             log.error(e.getMessage());
             throw new StatsClientException("Connection to stats service failed: " + e.getMessage());
+        } catch (HttpClientErrorException e) {
+            log.error("Stats service rejected hit: {}", e.getMessage());
+            throw new StatsClientException("Failed to save hit: " + e.getMessage(),
+                    e.getStatusCode().value() == 429);
         } catch (Exception e) {
             log.error("Unexpected error in hit(): {}", e.getMessage());
             throw new StatsClientException("Failed to save hit: " + e.getMessage());
         }
     }
 
+    private void postHitBatch(Collection<HitDto> hits) {
+        try {
+            restClient.post()
+                    .uri(HIT_BATCH_ENDPOINT)
+                    .contentType(APPLICATION_JSON)
+                    .body(hits)
+                    .retrieve()
+                    .toBodilessEntity();
+
+        } catch (ResourceAccessException e) {
+            log.error(e.getMessage());
+            throw new StatsClientException("Connection to stats service failed: " + e.getMessage());
+        } catch (HttpClientErrorException e) {
+            // 429 - сервер перегружен, остальные 4xx означают, что пакет не будет принят и при повторе
+            log.error("Stats service rejected hit batch: {}", e.getMessage());
+            throw new StatsClientException("Failed to save hits: " + e.getMessage(),
+                    e.getStatusCode().value() == 429);
+        } catch (Exception e) {
+            log.error("Unexpected error in hitBatch(): {}", e.getMessage());
+            throw new StatsClientException("Failed to save hits: " + e.getMessage());
+        }
+    }
+
     public Collection<StatsDtoOut> getStats(LocalDateTime start,
                                             LocalDateTime end,
                                             Collection<String> uris,
                                             boolean unique) throws StatsClientException {
         validateDates(start, end);
 
+        // запрос всех uri не кешируется и не объединяется: набор uri в ответе заранее неизвестен
+        if (uris == null || uris.isEmpty())
+            return withCircuitBreaker(() -> fetchStats(start, end, uris, unique));
+        if (cache != null)
+            return cache.getStats(start, end, uris, unique, statsLoader);
+        return statsLoader.load(start, end, uris, unique);
+    }
+
+    private Collection<StatsDtoOut> fetchStats(LocalDateTime start,
+                                               LocalDateTime end,
+                                               Collection<String> uris,
+                                               boolean unique) throws StatsClientException {
+        if (uris != null && uris.size() > queryConfig.getPostThreshold())
+            return queryStats(start, end, List.copyOf(uris), unique);
+
         String url = UriComponentsBuilder.fromHttpUrl(serverUrl + STATS_ENDPOINT)
                 .queryParam("start", start.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
                 .queryParam("end", end.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
@@ -87,20 +296,304 @@ public abstract class StatsClient {
             StatsDtoOut[] stats = restClient.get()
                     .uri(url)
                     .retrieve()
-                    .onStatus(HttpStatusCode::isError, (req, res) -> {
-                        throw new RuntimeException("Stats service error: " + res.getStatusCode());
-                    })
                     .body(StatsDtoOut[].class);
             return stats != null ? Arrays.asList(stats) : Collections.emptyList();
         } catch (ResourceAccessException e) {
             log.error("Stats service unavailable. URL: {}, error: {}", url, e.getMessage());
             throw new StatsClientException("Connection to stats service failed: " + e.getMessage());
+        } catch (HttpClientErrorException e) {
+            log.error("Stats service rejected stats request: {}", e.getMessage());
+            throw new StatsClientException("Failed to get stats: " + e.getMessage(),
+                    e.getStatusCode().value() == 429);
+        } catch (Exception e) {
+            log.error("Unexpected error in getStats(): {}", e.getMessage());
+            throw new StatsClientException("Failed to get stats: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads stats from /stats/stream and passes them to {@code consumer} one by one as they arrive,
+     * without collecting the whole response. Bypasses the client cache. Returns the number of rows read.
+     */
+    public long streamStats(LocalDateTime start,
+                            LocalDateTime end,
+                            Collection<String> uris,
+                            boolean unique,
+                            Consumer<StatsDtoOut> consumer) throws StatsClientException {
+        validateDates(start, end);
+
+        String url = UriComponentsBuilder.fromHttpUrl(serverUrl + STATS_STREAM_ENDPOINT)
+                .queryParam("start", start.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
+                .queryParam("end", end.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
+                .queryParam("uris", uris)
+                .queryParam("unique", unique)
+                .toUriString();
+
+        return withCircuitBreaker(() -> {
+            try {
+                Long rows = restClient.get()
+                        .uri(url)
+                        .accept(APPLICATION_NDJSON)
+                        .exchange((request, response) -> {
+                            if (response.getStatusCode().isError())
+                                throw new StatsClientException("Failed to stream stats: " + response.getStatusCode(),
+                                        !response.getStatusCode().is4xxClientError()
+                                                || response.getStatusCode().value() == 429);
+
+                            long count = 0;
+                            try (MappingIterator<StatsDtoOut> rowsIterator =
+                                         STATS_READER.readValues(response.getBody())) {
+                                while (rowsIterator.hasNextValue()) {
+                                    consumer.accept(rowsIterator.nextValue());
+                                    count++;
+                                }
+                            }
+                            return count;
+                        });
+                return rows != null ? rows : 0L;
+            } catch (StatsClientException e) {
+                throw e;
+            } catch (ResourceAccessException e) {
+                log.error("Stats service unavailable. URL: {}, error: {}", url, e.getMessage());
+                throw new StatsClientException("Connection to stats service failed: " + e.getMessage());
+            } catch (Exception e) {
+                log.error("Unexpected error in streamStats(): {}", e.getMessage());
+                throw new StatsClientException("Failed to stream stats: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Hits of uris {@code prefix + id} by numeric id, e.g. views of events with prefix "/events/".
+     * Read from /stats/ids through the same cache, single-flight and fallback layers as {@link #getStats},
+     * keyed by (prefix, id), so no per-uri strings are built or parsed.
+     */
+    public ViewCounts getViewCounts(LocalDateTime start,
+                                    LocalDateTime end,
+                                    String prefix,
+                                    Collection<Long> ids,
+                                    boolean unique) throws StatsClientException {
+        validateDates(start, end);
+        if (ids.isEmpty())
+            return new ViewCounts();
+
+        if (cache != null)
+            return cache.getViewCounts(start, end, prefix, ids, unique, viewsLoader);
+        return viewsLoader.load(start, end, prefix, ids, unique);
+    }
+
+    public CompletableFuture<ViewCounts> getViewCountsAsync(LocalDateTime start,
+                                                            LocalDateTime end,
+                                                            String prefix,
+                                                            Collection<Long> ids,
+                                                            boolean unique) {
+        return submitAsync(() -> getViewCounts(start, end, prefix, ids, unique), asyncTimeout);
+    }
+
+    private ViewCounts fetchViewCounts(LocalDateTime start,
+                                       LocalDateTime end,
+                                       String prefix,
+                                       Collection<Long> ids,
+                                       boolean unique) throws StatsClientException {
+        StatsIdsQueryDto query = new StatsIdsQueryDto(start, end, prefix, List.copyOf(ids), unique);
+        try {
+            ViewCounts views = restClient.post()
+                    .uri(STATS_IDS_ENDPOINT)
+                    .contentType(APPLICATION_JSON)
+                    .body(query)
+                    .retrieve()
+                    .body(ViewCounts.class);
+            return views != null ? views : new ViewCounts();
+        } catch (ResourceAccessException e) {
+            log.error("Stats service unavailable: {}", e.getMessage());
+            throw new StatsClientException("Connection to stats service failed: " + e.getMessage());
+        } catch (HttpClientErrorException e) {
+            log.error("Stats service rejected view counts query: {}", e.getMessage());
+            throw new StatsClientException("Failed to get view counts: " + e.getMessage(),
+                    e.getStatusCode().value() == 429);
+        } catch (Exception e) {
+            log.error("Unexpected error in getViewCounts(): {}", e.getMessage());
+            throw new StatsClientException("Failed to get view counts: " + e.getMessage());
+        }
+    }
+
+    // большие наборы uri делятся на части, которые запрашиваются параллельно
+    private Collection<StatsDtoOut> queryStats(LocalDateTime start,
+                                               LocalDateTime end,
+                                               List<String> uris,
+                                               boolean unique) throws StatsClientException {
+        int chunkSize = queryConfig.getMaxUrisPerRequest();
+        if (uris.size() <= chunkSize)
+            return postStatsQuery(new StatsQueryDto(start, end, uris, unique, false));
+
+        List<Future<Collection<StatsDtoOut>>> chunks = new ArrayList<>();
+        for (int from = 0; from < uris.size(); from += chunkSize) {
+            StatsQueryDto query = new StatsQueryDto(start, end,
+                    uris.subList(from, Math.min(from + chunkSize, uris.size())), unique, false);
+            chunks.add(asyncExecutor.submit(() -> postStatsQuery(query)));
+        }
+
+        List<StatsDtoOut> result = new ArrayList<>();
+        try {
+            for (Future<Collection<StatsDtoOut>> chunk : chunks)
+                result.addAll(chunk.get());
+        } catch (ExecutionException e) {
+            chunks.forEach(chunk -> chunk.cancel(true));
+            if (e.getCause() instanceof StatsClientException cause)
+                throw cause;
+            throw new StatsClientException("Failed to get stats: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            chunks.forEach(chunk -> chunk.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new StatsClientException("Stats call cancelled");
+        }
+        result.sort(Comparator.comparingInt(StatsDtoOut::getHits).reversed());
+        return result;
+    }
+
+    private Collection<StatsDtoOut> postStatsQuery(StatsQueryDto query) throws StatsClientException {
+        try {
+            StatsDtoOut[] stats = restClient.post()
+                    .uri(STATS_QUERY_ENDPOINT)
+                    .contentType(APPLICATION_JSON)
+                    .body(query)
+                    .retrieve()
+                    .body(StatsDtoOut[].class);
+            return stats != null ? Arrays.asList(stats) : Collections.emptyList();
+        } catch (ResourceAccessException e) {
+            log.error("Stats service unavailable: {}", e.getMessage());
+            throw new StatsClientException("Connection to stats service failed: " + e.getMessage());
+        } catch (HttpClientErrorException e) {
+            log.error("Stats service rejected stats query: {}", e.getMessage());
+            throw new StatsClientException("Failed to get stats: " + e.getMessage(),
+                    e.getStatusCode().value() == 429);
         } catch (Exception e) {
             log.error("Unexpected error in getStats(): {}", e.getMessage());
             throw new StatsClientException("Failed to get stats: " + e.getMessage());
         }
     }
 
+    public CompletableFuture<Collection<StatsDtoOut>> getStatsAsync(LocalDateTime start,
+                                                                    LocalDateTime end,
+                                                                    Collection<String> uris,
+                                                                    boolean unique) {
+        return getStatsAsync(start, end, uris, unique, asyncTimeout);
+    }
+
+    /**
+     * Requests stats on a virtual thread. The future fails with {@link java.util.concurrent.TimeoutException}
+     * after {@code timeout}; on timeout or {@code cancel} the HTTP call is interrupted.
+     */
+    public CompletableFuture<Collection<StatsDtoOut>> getStatsAsync(LocalDateTime start,
+                                                                    LocalDateTime end,
+                                                                    Collection<String> uris,
+                                                                    boolean unique,
+                                                                    Duration timeout) {
+        return submitAsync(() -> getStats(start, end, uris, unique), timeout);
+    }
+
+    @Override
+    public void close() {
+        if (spool != null)
+            spool.close();
+        if (batcher != null)
+            batcher.close();
+        asyncExecutor.shutdown();
+    }
+
+    private void withCircuitBreaker(Runnable call) {
+        withCircuitBreaker(() -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private <T> T withCircuitBreaker(Supplier<T> call) {
+        if (circuitBreaker == null)
+            return call.get();
+        if (!circuitBreaker.tryAcquire())
+            throw new StatsClientException("Stats service circuit is open");
+
+        try {
+            T result = call.get();
+            circuitBreaker.onSuccess();
+            return result;
+        } catch (StatsClientException e) {
+            if (e.isRetryable())
+                circuitBreaker.onFailure();
+            else
+                circuitBreaker.onSuccess();
+            throw e;
+        }
+    }
+
+    // с id сервер не посчитает дважды хит, который дошёл, но ответа на который клиент не дождался
+    private void assignIds(Collection<HitDto> hits) {
+        if (spool == null)
+            return;
+        for (HitDto hit : hits) {
+            if (hit.getId() == null)
+                hit.setId(UUID.randomUUID().toString());
+        }
+    }
+
+    // сервер недоступен или перегружен - хиты досылает спул; отклонённые сервером хиты не повторяются
+    private void spoolOrThrow(Collection<HitDto> hits, StatsClientException e) {
+        if (spool == null || !e.isRetryable())
+            throw e;
+
+        log.warn("Failed to send {} hits, spooling them: {}", hits.size(), e.getMessage());
+        hits.forEach(spool::append);
+    }
+
+    private void evictCached(Collection<HitDto> hits) {
+        if (cache == null && singleFlight == null)
+            return;
+
+        List<String> uris = hits.stream().map(HitDto::getUri).toList();
+        if (singleFlight != null)
+            singleFlight.forget(uris);
+        if (cache != null)
+            cache.evict(uris);
+    }
+
+    private void await(CompletableFuture<Void> result) {
+        try {
+            result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof StatsClientException cause)
+                throw cause;
+            throw new StatsClientException("Failed to save hits: " + e.getCause().getMessage());
+        }
+    }
+
+    private <T> CompletableFuture<T> submitAsync(Callable<T> call, Duration timeout) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = asyncExecutor.submit(() -> {
+            try {
+                asyncPermits.acquire();
+            } catch (InterruptedException e) {
+                result.completeExceptionally(new StatsClientException("Stats call cancelled"));
+                return;
+            }
+            try {
+                result.complete(call.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                asyncPermits.release();
+            }
+        });
+
+        // срок считается вместе с ожиданием разрешения; отмена будущего прерывает поток с запросом
+        result.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((value, e) -> {
+                    if (e != null)
+                        task.cancel(true);
+                });
+        return result;
+    }
+
     private void validateDates(LocalDateTime start, LocalDateTime end) {
         if (start == null || end == null) {
             throw new IllegalArgumentException("Dates must not be null");
@@ -0,0 +1,104 @@
+package ru.practicum.statsclient;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+/**
+ * Tuning of {@link StatsClient}. Defaults keep the plain synchronous behaviour.
+ */
+@Getter
+@Setter
+public class StatsClientConfig {
+
+    private Duration connectTimeout = Duration.ofSeconds(3);
+    private Duration connectionRequestTimeout = Duration.ofSeconds(5);
+    private Duration readTimeout = Duration.ofSeconds(5);
+
+    // одновременные запросы одних и тех же uri разделяют один HTTP-вызов
+    private boolean singleFlight = false;
+
+    private Async async = new Async();
+    private Query query = new Query();
+    private Batch batch = new Batch();
+    private Cache cache = new Cache();
+    private Resilience resilience = new Resilience();
+    private Spool spool = new Spool();
+
+    /**
+     * Async calls run on virtual threads; concurrency also sizes the HTTP connection pool.
+     */
+    @Getter
+    @Setter
+    public static class Async {
+        private int maxConcurrency = 64;
+        private Duration timeout = Duration.ofSeconds(3);
+    }
+
+    /**
+     * Stats requests for more than {@code postThreshold} uris go to POST /stats/query,
+     * split into parallel requests of at most {@code maxUrisPerRequest} uris.
+     */
+    @Getter
+    @Setter
+    public static class Query {
+        private int postThreshold = 50;
+        private int maxUrisPerRequest = 1000;
+    }
+
+    /**
+     * Coalescing of hits from all threads into /hit/batch requests; hit() waits for its batch to be sent.
+     */
+    @Getter
+    @Setter
+    public static class Batch {
+        private boolean enabled = false;
+        private int maxBatchSize = 500;
+        private Duration linger = Duration.ofMillis(10);
+        private int queueCapacity = 10_000;
+    }
+
+    /**
+     * Read-through cache of getStats() results per uri and getViewCounts() results per (prefix, id),
+     * bounded by size and age.
+     */
+    @Getter
+    @Setter
+    public static class Cache {
+        private boolean enabled = false;
+        private Duration ttl = Duration.ofSeconds(10);
+        private long maxUris = 100_000;
+    }
+
+    /**
+     * Circuit breaker and retries of stats server calls; while the server is unavailable
+     * getStats() answers with the last known stats.
+     */
+    @Getter
+    @Setter
+    public static class Resilience {
+        private boolean enabled = false;
+        private int failureThreshold = 5;
+        private Duration openDuration = Duration.ofSeconds(10);
+        private Duration deadline = Duration.ofSeconds(1);
+        private Duration initialBackoff = Duration.ofMillis(50);
+        private double retryRatio = 0.1;
+        private int maxRetryTokens = 10;
+        private long lastKnownMaxUris = 100_000;
+    }
+
+    /**
+     * Local spool for hits the server did not accept: a background sender replays them in batches.
+     */
+    @Getter
+    @Setter
+    public static class Spool {
+        private boolean enabled = false;
+        private String directory = "stats-spool";
+        private long segmentBytes = 16 * 1024 * 1024;
+        private int batchSize = 500;
+        private Duration pollInterval = Duration.ofMillis(200);
+        private Duration maxBackoff = Duration.ofSeconds(30);
+    }
+}
@@ -1,7 +1,19 @@
 package ru.practicum.statsclient;
 
 public class StatsClientException extends RuntimeException {
+    // false - сервер отклонил запрос, повторять его бессмысленно
+    private final boolean retryable;
+
     public StatsClientException(String message) {
+        this(message, true);
+    }
+
+    public StatsClientException(String message, boolean retryable) {
         super(message);
+        this.retryable = retryable;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
     }
 }
@@ -0,0 +1,15 @@
+package ru.practicum.statsclient;
+
+import ru.practicum.statsdto.StatsDtoOut;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Source of stats for a set of uris, the next step of the {@link StatsClient} read path.
+ */
+@FunctionalInterface
+public interface StatsLoader {
+
+    Collection<StatsDtoOut> load(LocalDateTime start, LocalDateTime end, Collection<String> uris, boolean unique);
+}
@@ -0,0 +1,15 @@
+package ru.practicum.statsclient;
+
+import ru.practicum.statsdto.ViewCounts;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Source of hits by numeric id of uris {@code prefix + id}, the id-oriented counterpart of {@link StatsLoader}.
+ */
+@FunctionalInterface
+public interface ViewCountsLoader {
+
+    ViewCounts load(LocalDateTime start, LocalDateTime end, String prefix, Collection<Long> ids, boolean unique);
+}
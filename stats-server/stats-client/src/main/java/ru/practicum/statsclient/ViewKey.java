@@ -0,0 +1,35 @@
+package ru.practicum.statsclient;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Uri {@code prefix + id} of the id-oriented read path, kept without building the uri string.
+ */
+record ViewKey(String prefix, long id) {
+
+    // хиты записываются по uri: по известным префиксам находим ключи, которые они затрагивают
+    static Set<ViewKey> parseAll(Collection<String> uris, Collection<String> prefixes) {
+        Set<ViewKey> keys = new HashSet<>();
+        for (String uri : uris) {
+            for (String prefix : prefixes) {
+                ViewKey key = parse(uri, prefix);
+                if (key != null)
+                    keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    // null - uri не вида prefix + число
+    static ViewKey parse(String uri, String prefix) {
+        if (uri == null || !uri.startsWith(prefix) || uri.length() == prefix.length())
+            return null;
+        try {
+            return new ViewKey(prefix, Long.parseLong(uri, prefix.length(), uri.length(), 10));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
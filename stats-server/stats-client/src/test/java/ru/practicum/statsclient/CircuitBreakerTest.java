@@ -0,0 +1,70 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(3, Duration.ofMillis(200),
+            new SimpleMeterRegistry());
+
+    @Test
+    @DisplayName("Цепь размыкается после серии отказов подряд, успех серию сбрасывает")
+    void shouldOpenAfterConsecutiveFailures() {
+        failCalls(2);
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onSuccess();
+        failCalls(2);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+
+        failCalls(1);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    @DisplayName("По истечении срока пропускается одна проба; её успех замыкает цепь")
+    void shouldCloseAfterSuccessfulProbe() throws InterruptedException {
+        failCalls(3);
+        TimeUnit.MILLISECONDS.sleep(250);
+
+        assertTrue(circuitBreaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.state());
+        assertFalse(circuitBreaker.tryAcquire(), "вторая проба не пропускается");
+
+        circuitBreaker.onSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+        assertTrue(circuitBreaker.tryAcquire());
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    @DisplayName("Отказ пробы снова размыкает цепь на полный срок")
+    void shouldReopenAfterFailedProbe() throws InterruptedException {
+        failCalls(3);
+        TimeUnit.MILLISECONDS.sleep(250);
+        assertTrue(circuitBreaker.tryAcquire());
+
+        circuitBreaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+        assertFalse(circuitBreaker.tryAcquire());
+        TimeUnit.MILLISECONDS.sleep(250);
+        assertTrue(circuitBreaker.tryAcquire(), "после нового срока - новая проба");
+    }
+
+    private void failCalls(int times) {
+        for (int i = 0; i < times; i++) {
+            assertTrue(circuitBreaker.tryAcquire());
+            circuitBreaker.onFailure();
+        }
+    }
+}
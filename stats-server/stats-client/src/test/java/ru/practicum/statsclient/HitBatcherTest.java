@@ -0,0 +1,101 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.practicum.statsdto.HitDto;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HitBatcherTest {
+
+    private final LocalDateTime now = LocalDateTime.of(2026, 10, 18, 12, 0, 0);
+    private final List<List<HitDto>> sent = new CopyOnWriteArrayList<>();
+
+    @Test
+    @DisplayName("Хиты, поданные в пределах окна ожидания, уходят одним запросом")
+    void shouldCoalesceSubmissionsWithinLinger() {
+        try (HitBatcher batcher = batcher(100, Duration.ofMillis(200), 10, sent::add)) {
+            CompletableFuture<Void> first = batcher.submit(List.of(hit("/events/1")));
+            CompletableFuture<Void> second = batcher.submit(List.of(hit("/events/2"), hit("/events/3")));
+
+            CompletableFuture.allOf(first, second).join();
+        }
+
+        assertEquals(1, sent.size());
+        assertEquals(3, sent.getFirst().size());
+    }
+
+    @Test
+    @DisplayName("Пакет отправляется, не дожидаясь окна, когда набран максимальный размер")
+    void shouldFlushFullBatchBeforeLinger() {
+        try (HitBatcher batcher = batcher(2, Duration.ofSeconds(30), 10, sent::add)) {
+            CompletableFuture<Void> first = batcher.submit(List.of(hit("/events/1")));
+            CompletableFuture<Void> second = batcher.submit(List.of(hit("/events/2")));
+
+            assertDoesNotThrow(() -> CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS));
+            assertEquals(1, sent.size());
+        }
+    }
+
+    @Test
+    @DisplayName("Ошибка отправки завершает исключением будущие всех хитов пакета")
+    void shouldFailAllSubmissionsOfFailedBatch() {
+        try (HitBatcher batcher = batcher(100, Duration.ofMillis(100), 10, hits -> {
+            throw new StatsClientException("unavailable");
+        })) {
+            CompletableFuture<Void> first = batcher.submit(List.of(hit("/events/1")));
+            CompletableFuture<Void> second = batcher.submit(List.of(hit("/events/2")));
+
+            CompletionException e = assertThrows(CompletionException.class, first::join);
+            assertInstanceOf(StatsClientException.class, e.getCause());
+            assertThrows(CompletionException.class, second::join);
+        }
+    }
+
+    @Test
+    @DisplayName("Переполненная очередь сразу отклоняет хиты")
+    void shouldRejectWhenQueueIsFull() throws InterruptedException {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (HitBatcher batcher = batcher(1, Duration.ZERO, 1, hits -> {
+            sending.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        })) {
+            CompletableFuture<Void> inFlight = batcher.submit(List.of(hit("/events/1")));
+            assertTrue(sending.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Void> queued = batcher.submit(List.of(hit("/events/2")));
+            CompletableFuture<Void> rejected = batcher.submit(List.of(hit("/events/3")));
+
+            assertTrue(rejected.isCompletedExceptionally());
+            release.countDown();
+            CompletableFuture.allOf(inFlight, queued).join();
+        }
+    }
+
+    private HitBatcher batcher(int maxBatchSize, Duration linger, int queueCapacity, Consumer<List<HitDto>> sender) {
+        StatsClientConfig.Batch config = new StatsClientConfig.Batch();
+        config.setMaxBatchSize(maxBatchSize);
+        config.setLinger(linger);
+        config.setQueueCapacity(queueCapacity);
+        return new HitBatcher(config, sender, new SimpleMeterRegistry());
+    }
+
+    private HitDto hit(String uri) {
+        return new HitDto("ewm-main-service", uri, "10.0.0.1", now);
+    }
+}
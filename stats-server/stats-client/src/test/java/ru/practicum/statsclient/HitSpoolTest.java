@@ -0,0 +1,144 @@
+package ru.practicum.statsclient;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.statsdto.HitDto;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HitSpoolTest {
+
+    private final LocalDateTime now = LocalDateTime.of(2026, 10, 18, 12, 0, 0);
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    @DisplayName("После перезапуска отправляются только хиты после контрольной точки")
+    void shouldReplayFromCheckpointAfterRestart() {
+        List<String> accepted = new CopyOnWriteArrayList<>();
+        AtomicInteger calls = new AtomicInteger();
+        // первый пакет принят, дальше сервер недоступен
+        try (HitSpool spool = spool(1000, hits -> {
+            if (calls.incrementAndGet() > 1)
+                throw new StatsClientException("unavailable");
+            hits.forEach(hit -> accepted.add(hit.getId()));
+        })) {
+            for (int i = 0; i < 5; i++)
+                spool.append(hit("/events/" + i, "hit-" + i));
+            await(() -> calls.get() > 1);
+        }
+
+        List<String> replayed = new CopyOnWriteArrayList<>();
+        try (HitSpool spool = spool(1000, hits -> hits.forEach(hit -> replayed.add(hit.getId())))) {
+            await(() -> accepted.size() + replayed.size() >= 5);
+        }
+
+        Set<String> all = new HashSet<>(accepted);
+        replayed.forEach(id -> assertTrue(all.add(id), "хит " + id + " отправлен повторно"));
+        assertEquals(Set.of("hit-0", "hit-1", "hit-2", "hit-3", "hit-4"), all);
+        assertFalse(accepted.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Полный сегмент закрывается, отправленные сегменты удаляются")
+    void shouldRollAndDeleteSentSegments() {
+        List<String> sent = new CopyOnWriteArrayList<>();
+        AtomicBoolean available = new AtomicBoolean();
+        try (HitSpool spool = spool(300, hits -> {
+            if (!available.get())
+                throw new StatsClientException("unavailable");
+            hits.forEach(hit -> sent.add(hit.getId()));
+        })) {
+            for (int i = 0; i < 10; i++)
+                spool.append(hit("/events/" + i, "hit-" + i));
+            assertTrue(segments().size() > 1, "записанное разложено по нескольким сегментам");
+
+            available.set(true);
+            await(() -> sent.size() == 10);
+            await(() -> segments().size() == 1);
+        }
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            expected.add("hit-" + i);
+        assertEquals(expected, sent, "порядок записи сохраняется");
+    }
+
+    @Test
+    @DisplayName("Строка длиннее буфера чтения отправляется и из открытого, и из закрытого сегмента")
+    void shouldSendLinesLongerThanReadBuffer() {
+        String longUri = "/events" + "/x".repeat(200_000);
+        List<HitDto> sent = new CopyOnWriteArrayList<>();
+        try (HitSpool spool = spool(16 * 1024 * 1024, sent::addAll)) {
+            spool.append(hit(longUri, "long-active"));
+            spool.append(hit("/events/1", "short-active"));
+            await(() -> sent.size() == 2);
+        }
+        assertEquals(longUri, sent.getFirst().getUri());
+
+        AtomicInteger calls = new AtomicInteger();
+        try (HitSpool spool = spool(16 * 1024 * 1024, hits -> {
+            calls.incrementAndGet();
+            throw new StatsClientException("unavailable");
+        })) {
+            spool.append(hit(longUri, "long-closed"));
+            spool.append(hit("/events/2", "short-closed"));
+            await(() -> calls.get() > 0);
+        }
+
+        List<String> replayed = new CopyOnWriteArrayList<>();
+        try (HitSpool spool = spool(16 * 1024 * 1024, hits -> hits.forEach(hit -> replayed.add(hit.getId())))) {
+            await(() -> replayed.size() == 2);
+        }
+        assertEquals(List.of("long-closed", "short-closed"), replayed);
+    }
+
+    private HitSpool spool(long segmentBytes, Consumer<List<HitDto>> sender) {
+        StatsClientConfig.Spool config = new StatsClientConfig.Spool();
+        config.setDirectory(directory.toString());
+        config.setSegmentBytes(segmentBytes);
+        config.setBatchSize(3);
+        config.setPollInterval(Duration.ofMillis(10));
+        config.setMaxBackoff(Duration.ofMillis(20));
+        return new HitSpool(config, sender);
+    }
+
+    private HitDto hit(String uri, String id) {
+        return new HitDto("ewm-main-service", uri, "10.0.0.1", now, id);
+    }
+
+    private List<Path> segments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".ndjson")).toList();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "условие не выполнилось за 10 секунд");
+            LockSupport.parkNanos(Duration.ofMillis(5).toNanos());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.practicum.statsdto.StatsDtoOut;
+import ru.practicum.statsdto.ViewCounts;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResilientStatsLoaderTest {
+
+    private final LocalDateTime start = LocalDateTime.of(2000, 1, 1, 0, 0);
+    private final LocalDateTime end = LocalDateTime.of(2100, 1, 1, 0, 0);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(3, Duration.ofMinutes(1), meterRegistry);
+
+    // отказы сервера для очередных вызовов; пустая очередь - успех
+    private final Queue<StatsClientException> failures = new ArrayDeque<>();
+    private int calls;
+
+    @Test
+    @DisplayName("Временный отказ повторяется с задержкой, пока позволяют срок и запас повторов")
+    void shouldRetryRetryableFailure() {
+        ResilientStatsLoader loader = loader(Duration.ofSeconds(1));
+        failures.add(new StatsClientException("unavailable"));
+
+        Collection<StatsDtoOut> stats = loader.load(start, end, List.of("/events/1"), false);
+
+        assertEquals(2, calls);
+        assertEquals(1, stats.size());
+        assertEquals(1, meterRegistry.counter("stats.client.retries").count());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+    }
+
+    @Test
+    @DisplayName("Отклонённый сервером запрос не повторяется и не размыкает цепь")
+    void shouldRethrowNonRetryableFailure() {
+        ResilientStatsLoader loader = loader(Duration.ofSeconds(1));
+        for (int i = 0; i < 5; i++)
+            failures.add(new StatsClientException("bad request", false));
+
+        for (int i = 0; i < 5; i++)
+            assertThrows(StatsClientException.class, () -> loader.load(start, end, List.of("/events/1"), false));
+
+        assertEquals(5, calls);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+    }
+
+    @Test
+    @DisplayName("После окончательного отказа возвращаются последние полученные значения")
+    void shouldFallBackToLastKnownStats() {
+        ResilientStatsLoader loader = loader(Duration.ZERO);
+        loader.load(start, end, List.of("/events/1", "/events/2"), false);
+        loader.load(start, end, "/events/", List.of(1L, 2L), false);
+        failures.add(new StatsClientException("unavailable"));
+        failures.add(new StatsClientException("unavailable"));
+
+        Collection<StatsDtoOut> stats = loader.load(start, end, List.of("/events/1", "/events/3"), false);
+        ViewCounts views = loader.load(start, end, "/events/", List.of(2L, 3L), false);
+
+        assertEquals(List.of("/events/1"), stats.stream().map(StatsDtoOut::getUri).toList(),
+                "uri, которых ещё не загружали, остаются без просмотров");
+        assertEquals(2, views.get(2));
+        assertEquals(0, views.get(3));
+        assertEquals(2, meterRegistry.counter("stats.client.fallback").count());
+    }
+
+    @Test
+    @DisplayName("При разомкнутой цепи сервер не вызывается, ответ сразу из последних значений")
+    void shouldNotCallServerWhileCircuitIsOpen() {
+        ResilientStatsLoader loader = loader(Duration.ZERO);
+        loader.load(start, end, List.of("/events/1"), false);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(circuitBreaker.tryAcquire());
+            circuitBreaker.onFailure();
+        }
+        int before = calls;
+
+        Collection<StatsDtoOut> stats = loader.load(start, end, List.of("/events/1"), false);
+
+        assertEquals(before, calls);
+        assertEquals(1, stats.iterator().next().getHits());
+        assertThrows(StatsClientException.class, () -> loader.load(start, end, List.of(), false),
+                "без списка uri подставить нечего");
+    }
+
+    private ResilientStatsLoader loader(Duration deadline) {
+        StatsClientConfig.Resilience config = new StatsClientConfig.Resilience();
+        config.setDeadline(deadline);
+        config.setInitialBackoff(Duration.ofMillis(2));
+        return new ResilientStatsLoader(this::loadStats, this::loadViews, circuitBreaker, config, meterRegistry);
+    }
+
+    private Collection<StatsDtoOut> loadStats(LocalDateTime start,
+                                              LocalDateTime end,
+                                              Collection<String> uris,
+                                              boolean unique) {
+        respond();
+        return uris.stream()
+                .map(uri -> new StatsDtoOut("ewm-main-service", uri, Integer.parseInt(uri.substring(8))))
+                .toList();
+    }
+
+    private ViewCounts loadViews(LocalDateTime start,
+                                 LocalDateTime end,
+                                 String prefix,
+                                 Collection<Long> ids,
+                                 boolean unique) {
+        respond();
+        Map<Long, Long> hits = new TreeMap<>();
+        ids.forEach(id -> hits.put(id, id));
+        return ViewCounts.of(hits);
+    }
+
+    private void respond() {
+        calls++;
+        StatsClientException failure = failures.poll();
+        if (failure != null)
+            throw failure;
+    }
+}
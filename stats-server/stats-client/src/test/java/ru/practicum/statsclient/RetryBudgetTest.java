@@ -0,0 +1,36 @@
+package ru.practicum.statsclient;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryBudgetTest {
+
+    @Test
+    @DisplayName("Запас повторов исчерпывается и пополняется долей от числа вызовов")
+    void shouldLimitRetriesToShareOfCalls() {
+        RetryBudget budget = new RetryBudget(0.5, 2);
+
+        assertTrue(budget.tryRetry());
+        assertTrue(budget.tryRetry());
+        assertFalse(budget.tryRetry(), "запас исчерпан");
+
+        budget.onCall();
+        assertFalse(budget.tryRetry(), "половины токена на повтор мало");
+        budget.onCall();
+        assertTrue(budget.tryRetry());
+    }
+
+    @Test
+    @DisplayName("Запас не копится выше предела")
+    void shouldCapTokens() {
+        RetryBudget budget = new RetryBudget(1, 2);
+        for (int i = 0; i < 10; i++)
+            budget.onCall();
+
+        assertTrue(budget.tryRetry());
+        assertTrue(budget.tryRetry());
+        assertFalse(budget.tryRetry());
+    }
+}
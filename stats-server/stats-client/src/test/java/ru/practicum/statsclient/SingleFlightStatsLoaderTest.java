@@ -0,0 +1,156 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.practicum.statsdto.StatsDtoOut;
+import ru.practicum.statsdto.ViewCounts;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightStatsLoaderTest {
+
+    private final LocalDateTime start = LocalDateTime.of(2000, 1, 1, 0, 0);
+    private final LocalDateTime end = LocalDateTime.of(2100, 1, 1, 0, 0);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final List<Collection<String>> requestedUris = new CopyOnWriteArrayList<>();
+    private final List<Collection<Long>> requestedIds = new CopyOnWriteArrayList<>();
+    // каждый вызов сервера ждёт своего разрешения
+    private final Semaphore permits = new Semaphore(0);
+    private final SingleFlightStatsLoader loader = new SingleFlightStatsLoader(this::loadStats, this::loadViews,
+            new SimpleMeterRegistry());
+
+    @AfterEach
+    void tearDown() {
+        permits.release(100);
+        executor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Одновременный запрос тех же uri присоединяется к идущему и догружает только новые")
+    void shouldShareInFlightUris() throws Exception {
+        CompletableFuture<Collection<StatsDtoOut>> first = load(List.of("/events/1", "/events/2"));
+        awaitRequests(1);
+        CompletableFuture<Collection<StatsDtoOut>> second = load(List.of("/events/2", "/events/3"));
+        awaitRequests(2);
+
+        permits.release(2);
+
+        assertEquals(List.of(List.of("/events/1", "/events/2"), List.of("/events/3")), requestedUris);
+        assertEquals(2, first.get(5, TimeUnit.SECONDS).size());
+        assertEquals(List.of("/events/3", "/events/2"),
+                second.get(5, TimeUnit.SECONDS).stream().map(StatsDtoOut::getUri).toList());
+    }
+
+    @Test
+    @DisplayName("После forget новый запрос uri не присоединяется к начатому до записи хита")
+    void shouldNotJoinForgottenUris() throws Exception {
+        CompletableFuture<Collection<StatsDtoOut>> before = load(List.of("/events/1"));
+        CompletableFuture<ViewCounts> viewsBefore = loadViews(List.of(1L, 2L));
+        awaitRequests(2);
+
+        loader.forget(List.of("/events/1"));
+        CompletableFuture<Collection<StatsDtoOut>> after = load(List.of("/events/1"));
+        CompletableFuture<ViewCounts> viewsAfter = loadViews(List.of(1L, 2L));
+        awaitRequests(4);
+        permits.release(4);
+
+        before.get(5, TimeUnit.SECONDS);
+        viewsBefore.get(5, TimeUnit.SECONDS);
+        after.get(5, TimeUnit.SECONDS);
+        assertEquals(2, viewsAfter.get(5, TimeUnit.SECONDS).get(2));
+        assertEquals(List.of(List.of("/events/1"), List.of("/events/1")), requestedUris);
+        assertEquals(List.of(List.of(1L, 2L), List.of(1L)), requestedIds, "id 2 по-прежнему общий");
+    }
+
+    @Test
+    @DisplayName("Ошибку загрузки получают и присоединившиеся запросы")
+    void shouldPropagateFailureToJoinedCallers() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SingleFlightStatsLoader failing = new SingleFlightStatsLoader((start, end, uris, unique) -> {
+            requestedUris.add(List.copyOf(uris));
+            acquire();
+            throw new StatsClientException("unavailable");
+        }, this::loadViews, meterRegistry);
+
+        CompletableFuture<Collection<StatsDtoOut>> first = CompletableFuture.supplyAsync(
+                () -> failing.load(start, end, List.of("/events/1"), false), executor);
+        awaitRequests(1);
+        CompletableFuture<Collection<StatsDtoOut>> second = CompletableFuture.supplyAsync(
+                () -> failing.load(start, end, List.of("/events/1"), false), executor);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.counter("stats.client.singleflight.uris", "result", "shared").count() < 1) {
+            assertTrue(System.nanoTime() < deadline, "второй запрос не присоединился");
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+        permits.release();
+
+        assertInstanceOf(StatsClientException.class,
+                assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS)).getCause());
+        assertInstanceOf(StatsClientException.class,
+                assertThrows(Exception.class, () -> second.get(5, TimeUnit.SECONDS)).getCause());
+        assertEquals(1, requestedUris.size());
+    }
+
+    private CompletableFuture<Collection<StatsDtoOut>> load(List<String> uris) {
+        return CompletableFuture.supplyAsync(() -> loader.load(start, end, uris, false), executor);
+    }
+
+    private CompletableFuture<ViewCounts> loadViews(List<Long> ids) {
+        return CompletableFuture.supplyAsync(() -> loader.load(start, end, "/events/", ids, false), executor);
+    }
+
+    private Collection<StatsDtoOut> loadStats(LocalDateTime start,
+                                              LocalDateTime end,
+                                              Collection<String> uris,
+                                              boolean unique) {
+        requestedUris.add(List.copyOf(uris));
+        acquire();
+        return uris.stream()
+                .map(uri -> new StatsDtoOut("ewm-main-service", uri, Integer.parseInt(uri.substring(8))))
+                .toList();
+    }
+
+    private ViewCounts loadViews(LocalDateTime start,
+                                 LocalDateTime end,
+                                 String prefix,
+                                 Collection<Long> ids,
+                                 boolean unique) {
+        requestedIds.add(List.copyOf(ids));
+        acquire();
+        Map<Long, Long> hits = new TreeMap<>();
+        ids.forEach(id -> hits.put(id, id));
+        return ViewCounts.of(hits);
+    }
+
+    private void acquire() {
+        try {
+            if (!permits.tryAcquire(5, TimeUnit.SECONDS))
+                throw new IllegalStateException("Server call was not released");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitRequests(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (requestedUris.size() + requestedIds.size() < count) {
+            assertTrue(System.nanoTime() < deadline, "ожидалось запросов к серверу: " + count);
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+    }
+}
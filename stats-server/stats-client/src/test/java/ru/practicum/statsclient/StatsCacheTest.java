@@ -0,0 +1,88 @@
+package ru.practicum.statsclient;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.practicum.statsdto.StatsDtoOut;
+import ru.practicum.statsdto.ViewCounts;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatsCacheTest {
+
+    private final LocalDateTime start = LocalDateTime.of(2000, 1, 1, 0, 0);
+    private final LocalDateTime end = LocalDateTime.of(2100, 1, 1, 0, 0);
+    private final StatsCache cache = new StatsCache(new StatsClientConfig.Cache(), new SimpleMeterRegistry());
+
+    private final List<Collection<String>> requestedUris = new ArrayList<>();
+    private final List<Collection<Long>> requestedIds = new ArrayList<>();
+
+    @Test
+    @DisplayName("С сервера запрашиваются только uri, которых нет в кеше; uri без хитов тоже кешируются")
+    void shouldLoadOnlyMissingUris() {
+        cache.getStats(start, end, List.of("/events/1", "/events/2"), false, this::loadStats);
+        Collection<StatsDtoOut> stats = cache.getStats(start, end, List.of("/events/2", "/events/1", "/events/3"),
+                false, this::loadStats);
+
+        assertEquals(List.of(List.of("/events/1", "/events/2"), List.of("/events/3")), requestedUris);
+        assertEquals(List.of("/events/3", "/events/1"), stats.stream().map(StatsDtoOut::getUri).toList(),
+                "по убыванию просмотров, /events/2 без хитов");
+    }
+
+    @Test
+    @DisplayName("Окна и признак уникальности кешируются отдельно")
+    void shouldKeepWindowsApart() {
+        cache.getStats(start, end, List.of("/events/1"), false, this::loadStats);
+        cache.getStats(start, end, List.of("/events/1"), true, this::loadStats);
+        cache.getStats(start, end.minusDays(1), List.of("/events/1"), false, this::loadStats);
+        cache.getStats(start, end, List.of("/events/1"), true, this::loadStats);
+
+        assertEquals(3, requestedUris.size());
+    }
+
+    @Test
+    @DisplayName("Вытеснение uri сбрасывает и статистику, и просмотры по id этого uri")
+    void shouldEvictStatsAndViewCounts() {
+        cache.getStats(start, end, List.of("/events/1", "/events/3"), false, this::loadStats);
+        cache.getViewCounts(start, end, "/events/", List.of(1L, 3L), false, this::loadViews);
+
+        cache.evict(List.of("/events/3", "/other/1"));
+        cache.getStats(start, end, List.of("/events/1", "/events/3"), false, this::loadStats);
+        ViewCounts views = cache.getViewCounts(start, end, "/events/", List.of(1L, 3L), false, this::loadViews);
+
+        assertEquals(List.of("/events/3"), requestedUris.getLast());
+        assertEquals(List.of(3L), requestedIds.getLast());
+        assertEquals(1, views.get(1));
+        assertEquals(3, views.get(3));
+    }
+
+    // у /events/2 хитов нет, у остальных - по номеру uri
+    private Collection<StatsDtoOut> loadStats(LocalDateTime start,
+                                              LocalDateTime end,
+                                              Collection<String> uris,
+                                              boolean unique) {
+        requestedUris.add(List.copyOf(uris));
+        return uris.stream()
+                .filter(uri -> !uri.equals("/events/2"))
+                .map(uri -> new StatsDtoOut("ewm-main-service", uri, Integer.parseInt(uri.substring(8))))
+                .toList();
+    }
+
+    private ViewCounts loadViews(LocalDateTime start,
+                                 LocalDateTime end,
+                                 String prefix,
+                                 Collection<Long> ids,
+                                 boolean unique) {
+        requestedIds.add(List.copyOf(ids));
+        Map<Long, Long> hits = new TreeMap<>();
+        ids.forEach(id -> hits.put(id, id));
+        return ViewCounts.of(hits);
+    }
+}
@@ -0,0 +1,131 @@
+package ru.practicum.statsclient;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.statsdto.ViewCounts;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatsClientTest {
+
+    private final LocalDateTime start = LocalDateTime.of(2000, 1, 1, 0, 0);
+    private final LocalDateTime end = LocalDateTime.of(2100, 1, 1, 0, 0);
+
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+    private final List<String> bodies = new CopyOnWriteArrayList<>();
+    // столько следующих запросов /hit сервер отклонит с 500
+    private final AtomicInteger hitFailures = new AtomicInteger();
+    private HttpServer server;
+    private StatsClient client;
+
+    @BeforeEach
+    void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            calls.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+            bodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            if (path.equals("/hit") && hitFailures.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+                return;
+            }
+
+            byte[] response = switch (path) {
+                case "/stats/ids" -> "{\"ids\":[1,2],\"hits\":[5,7]}".getBytes(StandardCharsets.UTF_8);
+                case "/stats" -> "[]".getBytes(StandardCharsets.UTF_8);
+                default -> new byte[0];
+            };
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(path.startsWith("/hit") ? 201 : 200, response.length == 0 ? -1 : response.length);
+            if (response.length > 0)
+                exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        server.start();
+
+        // как в application.yaml ewm-service: кеш, объединение запросов и предохранитель включены
+        StatsClientConfig config = new StatsClientConfig();
+        config.setSingleFlight(true);
+        config.getCache().setEnabled(true);
+        config.getResilience().setEnabled(true);
+        client = new StatsClient("http://127.0.0.1:" + server.getAddress().getPort(), config,
+                new SimpleMeterRegistry()) {
+        };
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    @DisplayName("Просмотры по id запрашиваются через /stats/ids и кешируются по (префикс, id)")
+    void shouldReadViewCountsFromIdsEndpointThroughCache() {
+        ViewCounts first = client.getViewCounts(start, end, "/events/", List.of(1L, 2L, 3L), true);
+        ViewCounts second = client.getViewCounts(start, end, "/events/", List.of(2L, 3L), true);
+
+        assertEquals(5, first.get(1));
+        assertEquals(7, first.get(2));
+        assertEquals(0, first.get(3));
+        assertEquals(7, second.get(2));
+        assertEquals(1, calls.get("/stats/ids").get(), "второй запрос целиком из кеша");
+        assertNull(calls.get("/stats"));
+        assertTrue(bodies.getFirst().contains("\"prefix\":\"/events/\""));
+    }
+
+    @Test
+    @DisplayName("Свой хит вытесняет из кеша просмотры этого id")
+    void shouldEvictViewCountsOnOwnHit() {
+        client.getViewCounts(start, end, "/events/", List.of(1L, 2L), true);
+        client.hit("ewm-main-service", "/events/2", "10.0.0.1");
+        client.getViewCounts(start, end, "/events/", List.of(1L, 2L), true);
+
+        assertEquals(2, calls.get("/stats/ids").get());
+        assertTrue(bodies.getLast().contains("\"ids\":[2]"), "повторно запрошен только id 2: " + bodies.getLast());
+    }
+
+    @Test
+    @DisplayName("В спул попадает только хит, который сервер не принял, и досылается без ожидания опроса")
+    void shouldSpoolOnlyRejectedHits(@TempDir Path directory) throws InterruptedException {
+        StatsClientConfig config = new StatsClientConfig();
+        config.getSpool().setEnabled(true);
+        config.getSpool().setDirectory(directory.toString());
+        config.getSpool().setPollInterval(Duration.ofMinutes(1));
+        hitFailures.set(1);
+
+        try (StatsClient spooled = new StatsClient("http://127.0.0.1:" + server.getAddress().getPort(), config,
+                new SimpleMeterRegistry()) {
+        }) {
+            spooled.hit("ewm-main-service", "/events/1", "10.0.0.1");
+            for (int i = 0; i < 500 && calls.get("/hit/batch") == null; i++)
+                TimeUnit.MILLISECONDS.sleep(10);
+            assertEquals(1, calls.get("/hit/batch").get(), "отклонённый хит дослан пакетом из спула");
+            assertTrue(bodies.getLast().contains("/events/1"));
+
+            spooled.hit("ewm-main-service", "/events/2", "10.0.0.1");
+            assertEquals(2, calls.get("/hit").get());
+            TimeUnit.MILLISECONDS.sleep(100);
+            assertEquals(1, calls.get("/hit/batch").get(), "принятый сразу хит в спул не пишется");
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package ru.practicum.statsdto;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
@@ -34,4 +35,12 @@ public class HitDto {
     @NotNull
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime dateTime;
+
+    // необязательный идентификатор хита: повторная отправка того же хита не учитывается
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String id;
+
+    public HitDto(String service, String uri, String ip, LocalDateTime dateTime) {
+        this(service, uri, ip, dateTime, null);
+    }
 }
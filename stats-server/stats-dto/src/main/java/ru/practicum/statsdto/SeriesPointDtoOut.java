@@ -0,0 +1,26 @@
+package ru.practicum.statsdto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Hits of one uri in one time bucket of GET /stats/series; bucket is the start of the bucket.
+ */
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class SeriesPointDtoOut {
+
+    @JsonProperty("app")
+    private String service;
+    private String uri;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime bucket;
+    private int hits;
+}
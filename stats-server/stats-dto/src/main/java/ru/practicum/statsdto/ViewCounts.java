@@ -0,0 +1,43 @@
+package ru.practicum.statsdto;
+
+import lombok.*;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Hits by numeric id as two parallel arrays sorted by id; ids without hits are omitted.
+ * Lookups are binary searches over primitives, without boxing or string keys.
+ */
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class ViewCounts {
+
+    private long[] ids = new long[0];
+    private long[] hits = new long[0];
+
+    // ключи в порядке возрастания, например TreeMap
+    public static ViewCounts of(Map<Long, Long> sortedHits) {
+        long[] ids = new long[sortedHits.size()];
+        long[] hits = new long[sortedHits.size()];
+        int i = 0;
+        for (Map.Entry<Long, Long> entry : sortedHits.entrySet()) {
+            ids[i] = entry.getKey();
+            hits[i] = entry.getValue();
+            i++;
+        }
+        return new ViewCounts(ids, hits);
+    }
+
+    public long get(long id) {
+        int index = Arrays.binarySearch(ids, id);
+        return index >= 0 ? hits[index] : 0;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+}
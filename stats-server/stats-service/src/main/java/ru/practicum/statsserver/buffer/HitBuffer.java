@@ -0,0 +1,185 @@
+package ru.practicum.statsserver.buffer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsserver.exception.HitBufferOverflowException;
+import ru.practicum.statsserver.model.Hit;
+import ru.practicum.statsserver.recent.RecentHitsStore;
+import ru.practicum.statsserver.repository.HitRepository;
+import ru.practicum.statsserver.service.HitIdWindow;
+import ru.practicum.statsserver.service.StatsResultCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Write-behind buffer for hits. Request threads only enqueue hits,
+ * a background flusher writes them to the repository in batches
+ * once the batch is full or the oldest buffered hit waited longer than max latency.
+ * Dedup ids of a batch that failed to flush are released, so a client retry is accepted again.
+ */
+@Slf4j
+@Component
+public class HitBuffer implements SmartLifecycle {
+
+    private final HitRepository repository;
+    private final StatsResultCache resultCache;
+    private final RecentHitsStore recentStore;
+    private final HitIdWindow idWindow;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long maxLatencyNanos;
+    private final long retryAfterSeconds;
+    private final MpscRingBuffer<BufferedHit> ring;
+
+    private final Timer flushTimer;
+    private final Counter flushedCounter;
+    private final Counter rejectedCounter;
+    private final Counter failedCounter;
+
+    private volatile boolean running;
+    private volatile Thread flusher;
+
+    public HitBuffer(HitRepository repository,
+                     StatsResultCache resultCache,
+                     RecentHitsStore recentStore,
+                     HitIdWindow idWindow,
+                     MeterRegistry meterRegistry,
+                     @Value("${stats.hit.buffer.enabled:false}") boolean enabled,
+                     @Value("${stats.hit.buffer.capacity:65536}") int capacity,
+                     @Value("${stats.hit.buffer.batch-size:500}") int batchSize,
+                     @Value("${stats.hit.buffer.max-latency-ms:200}") long maxLatencyMs,
+                     @Value("${stats.hit.buffer.retry-after-seconds:1}") long retryAfterSeconds) {
+        this.repository = repository;
+        this.resultCache = resultCache;
+        this.recentStore = recentStore;
+        this.idWindow = idWindow;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMs);
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.ring = new MpscRingBuffer<>(capacity);
+
+        Gauge.builder("stats.hit.buffer.depth", ring, MpscRingBuffer::size)
+                .description("Hits waiting in the write-behind buffer")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("stats.hit.buffer.flush")
+                .description("Time spent writing one batch of buffered hits")
+                .register(meterRegistry);
+        flushedCounter = meterRegistry.counter("stats.hit.buffer.flushed");
+        // отклонённые с 429 хиты клиент отправит повторно; потеряны только те, что не удалось записать
+        rejectedCounter = meterRegistry.counter("stats.hit.buffer.rejected");
+        failedCounter = meterRegistry.counter("stats.hit.buffer.dropped");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // пакет принимается целиком или отклоняется целиком, частично записанных пакетов нет;
+    // ids - id хитов для отбрасывания повторов в том же порядке, null у хитов без id
+    public void addAll(List<Hit> hits, List<String> ids) {
+        List<BufferedHit> buffered = new ArrayList<>(hits.size());
+        for (int i = 0; i < hits.size(); i++)
+            buffered.add(new BufferedHit(hits.get(i), ids.get(i)));
+
+        if (!running || !ring.offerAll(buffered)) {
+            rejectedCounter.increment(hits.size());
+            throw new HitBufferOverflowException("Hit buffer is full", retryAfterSeconds);
+        }
+        if (ring.size() >= batchSize)
+            LockSupport.unpark(flusher);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled)
+            return;
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "hit-buffer-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("Hit write-behind buffer started: capacity={}, batch size={}", ring.capacity(), batchSize);
+    }
+
+    @Override
+    public void stop() {
+        if (!running)
+            return;
+
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Hit write-behind buffer stopped, {} hits left unflushed", ring.size());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // останавливаемся после веб-сервера, чтобы успеть сбросить хиты последних запросов
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void flushLoop() {
+        List<BufferedHit> batch = new ArrayList<>(batchSize);
+        long lastFlush = System.nanoTime();
+
+        while (running || ring.size() > 0) {
+            int depth = ring.size();
+            long waited = System.nanoTime() - lastFlush;
+
+            if (depth >= batchSize || (depth > 0 && (waited >= maxLatencyNanos || !running))) {
+                flush(batch);
+                lastFlush = System.nanoTime();
+            } else if (depth == 0) {
+                lastFlush = System.nanoTime();
+                LockSupport.parkNanos(maxLatencyNanos);
+            } else {
+                LockSupport.parkNanos(maxLatencyNanos - waited);
+            }
+        }
+    }
+
+    private void flush(List<BufferedHit> batch) {
+        ring.drain(batch::add, batchSize);
+        if (batch.isEmpty())
+            return;
+
+        List<Hit> hits = batch.stream().map(BufferedHit::hit).toList();
+        try {
+            flushTimer.record(() -> repository.saveAll(hits));
+        } catch (RuntimeException e) {
+            failedCounter.increment(hits.size());
+            log.error("Failed to flush {} buffered hits: {}", hits.size(), e.getMessage(), e);
+            idWindow.release(batch.stream().map(BufferedHit::id).filter(Objects::nonNull).toList());
+            return;
+        } finally {
+            batch.clear();
+        }
+        flushedCounter.increment(hits.size());
+        recentStore.onHits(hits);
+        resultCache.onHits(hits);
+    }
+
+    private record BufferedHit(Hit hit, String id) {
+    }
+}
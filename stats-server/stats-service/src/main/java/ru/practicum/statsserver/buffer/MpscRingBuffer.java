@@ -0,0 +1,97 @@
+package ru.practicum.statsserver.buffer;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free ring for many producers and a single consumer.
+ * Producers claim a slot (or a run of slots for a batch) with CAS on the tail and publish the elements into them,
+ * the consumer drains published slots in order and releases them.
+ */
+public class MpscRingBuffer<E> {
+
+    private final AtomicReferenceArray<E> slots;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    public MpscRingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 2)
+            throw new IllegalArgumentException("Capacity must be at least 2");
+
+        capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        mask = capacity - 1;
+        slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    public boolean offer(E element) {
+        if (element == null)
+            throw new NullPointerException("Element must not be null");
+
+        long claimed;
+        do {
+            claimed = tail.get();
+            if (claimed - head >= capacity)
+                return false;
+        } while (!tail.compareAndSet(claimed, claimed + 1));
+
+        slots.lazySet((int) claimed & mask, element);
+        return true;
+    }
+
+    // все элементы или ни одного: слоты под них занимаются одним CAS
+    public boolean offerAll(Collection<? extends E> elements) {
+        int count = elements.size();
+        if (count == 0)
+            return true;
+        for (E element : elements) {
+            if (element == null)
+                throw new NullPointerException("Element must not be null");
+        }
+
+        long claimed;
+        do {
+            claimed = tail.get();
+            if (claimed + count - head > capacity)
+                return false;
+        } while (!tail.compareAndSet(claimed, claimed + count));
+
+        for (E element : elements)
+            slots.lazySet((int) claimed++ & mask, element);
+        return true;
+    }
+
+    // должен вызываться только из потока-потребителя
+    public int drain(Consumer<E> consumer, int limit) {
+        long current = head;
+        int drained = 0;
+        while (drained < limit) {
+            int index = (int) current & mask;
+            E element = slots.get(index);
+            if (element == null)
+                break;
+
+            slots.lazySet(index, null);
+            consumer.accept(element);
+            current++;
+            drained++;
+        }
+        head = current;
+        return drained;
+    }
+
+    public int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,39 @@
+package ru.practicum.statsserver.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import ru.practicum.statsserver.lane.Bulkhead;
+import ru.practicum.statsserver.lane.LaneFilter;
+
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "stats.lanes.enabled", havingValue = "true")
+public class LaneConfig {
+
+    @Bean
+    public FilterRegistrationBean<LaneFilter> laneFilter(
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${stats.lanes.retry-after-seconds:1}") long retryAfterSeconds,
+            @Value("${stats.lanes.ingest.max-concurrent:64}") int ingestMaxConcurrent,
+            @Value("${stats.lanes.ingest.queue-timeout:1s}") Duration ingestQueueTimeout,
+            @Value("${stats.lanes.query.max-concurrent:8}") int queryMaxConcurrent,
+            @Value("${stats.lanes.query.queue-timeout:2s}") Duration queryQueueTimeout) {
+        LaneFilter filter = new LaneFilter(objectMapper,
+                new Bulkhead("ingest", ingestMaxConcurrent, ingestQueueTimeout, meterRegistry),
+                new Bulkhead("query", queryMaxConcurrent, queryQueueTimeout, meterRegistry),
+                retryAfterSeconds);
+
+        FilterRegistrationBean<LaneFilter> registration = new FilterRegistrationBean<>(filter);
+        // до остальных фильтров: отклонённый запрос не должен тратить на себя ничего сверх проверки
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
@@ -0,0 +1,56 @@
+package ru.practicum.statsserver.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statsserver.repository.DeadlineJdbcTemplate;
+import ru.practicum.statsserver.repository.QueryLaneJdbc;
+import ru.practicum.statsserver.repository.SqlDialect;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class StorageConfig {
+
+    // пул записи хитов; он же основной DataSource приложения (схема, транзакции, справочники)
+    @Bean
+    @Primary
+    @ConfigurationProperties("stats.lanes.ingest.pool")
+    public HikariDataSource dataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("ingest");
+        return dataSource;
+    }
+
+    // отдельный пул запросов статистики; без него запросы идут через пул записи
+    @Bean
+    @ConditionalOnProperty(name = "stats.lanes.query.separate-pool", havingValue = "true", matchIfMissing = true)
+    @ConfigurationProperties("stats.lanes.query.pool")
+    public HikariDataSource queryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("query");
+        return dataSource;
+    }
+
+    @Bean
+    public QueryLaneJdbc queryLaneJdbc(DataSource dataSource,
+                                       @Qualifier("queryDataSource") ObjectProvider<DataSource> queryDataSource) {
+        DataSource lane = queryDataSource.getIfAvailable(() -> dataSource);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(lane));
+        transactionTemplate.setReadOnly(true);
+        return new QueryLaneJdbc(new DeadlineJdbcTemplate(lane), transactionTemplate);
+    }
+
+    @Bean
+    public SqlDialect sqlDialect(DataSource dataSource) {
+        return SqlDialect.of(dataSource);
+    }
+}
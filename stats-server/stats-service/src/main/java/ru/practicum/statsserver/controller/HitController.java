@@ -1,20 +1,45 @@
 package ru.practicum.statsserver.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.practicum.statsdto.HitDto;
+import ru.practicum.statsdto.SeriesPointDtoOut;
 import ru.practicum.statsdto.StatsDtoOut;
+import ru.practicum.statsdto.StatsIdsQueryDto;
+import ru.practicum.statsdto.StatsQueryDto;
+import ru.practicum.statsdto.ViewCounts;
+import ru.practicum.statsserver.model.ImportResult;
+import ru.practicum.statsserver.model.PartialStats;
+import ru.practicum.statsserver.repository.QueryDeadline;
 import ru.practicum.statsserver.service.HitService;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 @Slf4j
 @Validated
@@ -24,6 +49,16 @@ public class HitController {
 
     private final HitService hitService;
     private static final String DATETIME_FORMAT = "yyyy-MM-dd HH:mm:ss";
+    private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern(DATETIME_FORMAT);
+    private static final String PARTIAL_HEADER = "X-Stats-Partial";
+    private static final String PARTIAL_START_HEADER = "X-Stats-Partial-Start";
+    private static final Duration ASYNC_GRACE = Duration.ofSeconds(1);
+
+    @Value("${stats.query.timeout:30s}")
+    private Duration queryTimeout;
+
+    @Value("${stats.query.max-timeout:5m}")
+    private Duration maxQueryTimeout;
 
     @PostMapping("/hit")
     @ResponseStatus(HttpStatus.CREATED)
@@ -32,19 +67,178 @@ public class HitController {
         hitService.add(hitDto);
     }
 
+    @PostMapping("/hit/batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public void addAll(@RequestBody @NotEmpty List<@Valid HitDto> hits) {
+        log.debug("request for adding {} hits", hits.size());
+        hitService.addAll(hits);
+    }
+
+    // тело запроса читается потоком и не загружается в память целиком
+    @PostMapping(value = "/hit/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, "text/csv"})
+    @ResponseStatus(HttpStatus.CREATED)
+    public ImportResult importHits(HttpServletRequest request) throws IOException {
+        log.debug("request for importing hits, content type: {}", request.getContentType());
+        return hitService.importHits(request.getInputStream(), MediaType.parseMediaType(request.getContentType()));
+    }
+
+    // запрос выполняется асинхронно со сроком timeoutMs: по истечении срока или при обрыве соединения
+    // клиентом запрос в базе отменяется; partial=true - вместо 504 отдаётся уже посчитанная часть диапазона
     @GetMapping("/stats")
-    @ResponseStatus(HttpStatus.OK)
-    public Collection<StatsDtoOut> select(
+    public WebAsyncTask<ResponseEntity<Collection<StatsDtoOut>>> select(
             @RequestParam @NotNull @DateTimeFormat(pattern = DATETIME_FORMAT) LocalDateTime start,
             @RequestParam @NotNull @DateTimeFormat(pattern = DATETIME_FORMAT) LocalDateTime end,
             @RequestParam (required = false) ArrayList<String> uris,
-            @RequestParam (defaultValue = "false") Boolean unique) {
+            @RequestParam (required = false) String uriPrefix,
+            @RequestParam (required = false) String uriTemplate,
+            @RequestParam (defaultValue = "false") Boolean unique,
+            @RequestParam (defaultValue = "false") Boolean approximate,
+            @RequestParam (required = false) @Min(1) Long timeoutMs,
+            @RequestParam (defaultValue = "false") Boolean partial) {
 
         log.debug("request for statistics:");
         log.debug(" start date: {}", start);
         log.debug(" end date: {}", end);
         log.debug(" uris: {}", uris);
 
-        return hitService.getStatistics(start, end, uris, unique);
+        QueryDeadline deadline = deadline(timeoutMs);
+        return withDeadline(deadline, () -> {
+            // все подходящие uri одной строкой на сервис; скетчей по группам нет, approximate считается точно
+            if (uriPrefix != null || uriTemplate != null) {
+                log.debug(" uri prefix: {}, uri template: {}", uriPrefix, uriTemplate);
+                return ResponseEntity.ok(hitService.getGroupStatistics(start, end, uris, uriPrefix, uriTemplate,
+                        unique || approximate));
+            }
+
+            // approximate=true - оценка уникальных посетителей по HyperLogLog, погрешность ~1.6%
+            if (approximate)
+                return ResponseEntity.ok(hitService.getApproximateStatistics(start, end, uris));
+
+            if (partial) {
+                PartialStats stats = hitService.getPartialStatistics(start, end, uris, unique, deadline);
+                if (!stats.isPartial())
+                    return ResponseEntity.ok(stats.getStats());
+                return ResponseEntity.ok()
+                        .header(PARTIAL_HEADER, "true")
+                        .header(PARTIAL_START_HEADER, DATETIME_FORMATTER.format(stats.getCoveredFrom()))
+                        .body(stats.getStats());
+            }
+
+            return ResponseEntity.ok(hitService.getStatistics(start, end, uris, unique));
+        });
+    }
+
+    private QueryDeadline deadline(Long timeoutMs) {
+        return new QueryDeadline(timeoutMs == null
+                ? queryTimeout
+                : Collections.min(List.of(Duration.ofMillis(timeoutMs), maxQueryTimeout)));
+    }
+
+    // общая обёртка запросов статистики: выполняется асинхронно под сроком deadline
+    private static <T> WebAsyncTask<T> withDeadline(QueryDeadline deadline, Callable<T> query) {
+        WebAsyncTask<T> task = new WebAsyncTask<>(deadline.remaining().plus(ASYNC_GRACE).toMillis(),
+                () -> deadline.call(query));
+        // запрос сам останавливается по сроку; сюда попадаем, только если он не успел ответить
+        task.onTimeout(() -> {
+            deadline.cancel();
+            throw new QueryTimeoutException("Stats query deadline exceeded");
+        });
+        // клиент закрыл соединение: продолжать запрос незачем
+        task.onError(resultNone(deadline::cancel));
+        return task;
+    }
+
+    // RESULT_NONE - не значение задачи: Spring сравнивает его по ссылке и продолжает обработку ошибки.
+    // приведение к T стирается, поэтому проверки типа при вызове нет
+    @SuppressWarnings("unchecked")
+    private static <T> Callable<T> resultNone(Runnable action) {
+        return () -> {
+            action.run();
+            return (T) CallableProcessingInterceptor.RESULT_NONE;
+        };
+    }
+
+    // самые просматриваемые uri: в ответе только первые limit строк
+    @GetMapping("/stats/top")
+    @ResponseStatus(HttpStatus.OK)
+    public WebAsyncTask<Collection<StatsDtoOut>> selectTop(
+            @RequestParam @NotNull @DateTimeFormat(pattern = DATETIME_FORMAT) LocalDateTime start,
+            @RequestParam @NotNull @DateTimeFormat(pattern = DATETIME_FORMAT) LocalDateTime end,
+            @RequestParam (defaultValue = "10") @Min(1) @Max(1000) Integer limit,
+            @RequestParam (required = false) String prefix,
+            @RequestParam (defaultValue = "false") Boolean unique,
+            @RequestParam (required = false) @Min(1) Long timeoutMs) {
+        log.debug("request for top {} uris with prefix {}: {} - {}", limit, prefix, start, end);
+        return withDeadline(deadline(timeoutMs),
+                () -> hitService.getTopStatistics(start, end, prefix, limit, unique));
+    }
+
+    // хиты по интервалам minute | hour | day для графиков, одним запросом вместо запроса на каждую точку
+    @GetMapping("/stats/series")
+    @ResponseStatus(HttpStatus.OK)
+    public WebAsyncTask<Collection<SeriesPointDtoOut>> selectSeries(
+            @RequestParam @NotNull @DateTimeFormat(pattern = DATETIME_FORMAT) LocalDateTime start,
+            @RequestParam @NotNull @DateTimeFormat(pattern = DATETIME_FORMAT) LocalDateTime end,
+            @RequestParam (required = false) ArrayList<String> uris,
+            @RequestParam (defaultValue = "hour") String bucket,
+            @RequestParam (defaultValue = "false") Boolean unique,
+            @RequestParam (required = false) @Min(1) Long timeoutMs) {
+        log.debug("request for {} series: {} - {}, uris: {}", bucket, start, end, uris);
+        return withDeadline(deadline(timeoutMs), () -> hitService.getSeries(start, end, uris, bucket, unique));
+    }
+
+    // те же параметры, что у /stats; строки пишутся в ответ по мере чтения из базы
+    @GetMapping(value = "/stats/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> stream(
+            @RequestParam @NotNull @DateTimeFormat(pattern = DATETIME_FORMAT) LocalDateTime start,
+            @RequestParam @NotNull @DateTimeFormat(pattern = DATETIME_FORMAT) LocalDateTime end,
+            @RequestParam (required = false) ArrayList<String> uris,
+            @RequestParam (defaultValue = "false") Boolean unique) {
+        log.debug("request for streaming statistics: {} - {}, uris: {}", start, end, uris);
+
+        // ошибки параметров должны стать ответом 400 до начала записи тела
+        hitService.validateRange(start, end);
+        StreamingResponseBody body = out -> hitService.writeStatistics(start, end, uris, unique, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @GetMapping("/stats/ids")
+    @ResponseStatus(HttpStatus.OK)
+    public WebAsyncTask<ViewCounts> selectByIds(
+            @RequestParam @NotNull @DateTimeFormat(pattern = DATETIME_FORMAT) LocalDateTime start,
+            @RequestParam @NotNull @DateTimeFormat(pattern = DATETIME_FORMAT) LocalDateTime end,
+            @RequestParam @NotBlank String prefix,
+            @RequestParam @NotEmpty List<Long> ids,
+            @RequestParam (defaultValue = "false") Boolean unique,
+            @RequestParam (required = false) @Min(1) Long timeoutMs) {
+        log.debug("request for views of {} ids with prefix {}", ids.size(), prefix);
+        return withDeadline(deadline(timeoutMs), () -> hitService.getViewCounts(start, end, prefix, ids, unique));
+    }
+
+    @PostMapping("/stats/ids")
+    @ResponseStatus(HttpStatus.OK)
+    public WebAsyncTask<ViewCounts> queryByIds(@RequestBody @Valid StatsIdsQueryDto query,
+                                               @RequestParam (required = false) @Min(1) Long timeoutMs) {
+        log.debug("request for views of {} ids with prefix {}", query.getIds().size(), query.getPrefix());
+        return withDeadline(deadline(timeoutMs), () -> hitService.getViewCounts(
+                query.getStart(), query.getEnd(), query.getPrefix(), query.getIds(), query.isUnique()));
+    }
+
+    // тот же запрос с параметрами в теле: список uri не ограничен длиной URL
+    @PostMapping("/stats/query")
+    @ResponseStatus(HttpStatus.OK)
+    public WebAsyncTask<Collection<StatsDtoOut>> query(@RequestBody @Valid StatsQueryDto query,
+                                                       @RequestParam (required = false) @Min(1) Long timeoutMs) {
+        log.debug("request for statistics: {} - {}, {} uris",
+                query.getStart(), query.getEnd(), query.getUris() == null ? 0 : query.getUris().size());
+
+        return withDeadline(deadline(timeoutMs), () -> {
+            if (query.isApproximate())
+                return hitService.getApproximateStatistics(query.getStart(), query.getEnd(), query.getUris());
+
+            return hitService.getStatistics(query.getStart(), query.getEnd(), query.getUris(), query.isUnique());
+        });
     }
 }
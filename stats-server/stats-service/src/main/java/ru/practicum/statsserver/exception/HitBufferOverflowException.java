@@ -0,0 +1,13 @@
+package ru.practicum.statsserver.exception;
+
+import lombok.Getter;
+
+@Getter
+public class HitBufferOverflowException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public HitBufferOverflowException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
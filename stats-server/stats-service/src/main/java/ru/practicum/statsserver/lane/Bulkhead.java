@@ -0,0 +1,84 @@
+package ru.practicum.statsserver.lane;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of requests of one lane executing at the same time.
+ * <p>
+ * A request over the limit waits in a fair queue for at most {@code queueTimeout} and is rejected
+ * after that, so a burst in one lane neither runs unbounded nor holds the threads of another lane forever.
+ * Metrics are tagged with the lane name: stats.lane.active, stats.lane.waiting, stats.lane.wait
+ * and stats.lane.rejected.
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final long queueTimeoutNanos;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Timer waitTimer;
+    private final Counter rejectedCounter;
+
+    public Bulkhead(String name, int maxConcurrent, Duration queueTimeout, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.queueTimeoutNanos = queueTimeout.toNanos();
+        this.permits = new Semaphore(maxConcurrent, true);
+
+        Gauge.builder("stats.lane.active", permits, semaphore -> maxConcurrent - semaphore.availablePermits())
+                .description("Requests executing in the lane")
+                .tag("lane", name)
+                .register(meterRegistry);
+        Gauge.builder("stats.lane.waiting", waiting, AtomicInteger::get)
+                .description("Requests waiting for a free slot of the lane")
+                .tag("lane", name)
+                .register(meterRegistry);
+        waitTimer = Timer.builder("stats.lane.wait")
+                .description("Time requests spent waiting for a free slot of the lane")
+                .tag("lane", name)
+                .register(meterRegistry);
+        rejectedCounter = meterRegistry.counter("stats.lane.rejected", "lane", name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    // false - свободного места не дождались; при true вызывающий обязан вызвать exit()
+    public boolean tryEnter() throws InterruptedException {
+        // tryAcquire() без таймаута обходит очередь, с нулевым - соблюдает её
+        if (permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+            waitTimer.record(0, TimeUnit.NANOSECONDS);
+            return true;
+        }
+
+        long started = System.nanoTime();
+        waiting.incrementAndGet();
+        try {
+            boolean acquired = permits.tryAcquire(queueTimeoutNanos, TimeUnit.NANOSECONDS);
+            waitTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            if (!acquired)
+                rejectedCounter.increment();
+            return acquired;
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    public void exit() {
+        permits.release();
+    }
+}
@@ -0,0 +1,122 @@
+package ru.practicum.statsserver.lane;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.practicum.statsserver.exception.ErrorResponse;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs requests in two bulkheaded lanes: ingest (/hit...) and query (/stats...).
+ * <p>
+ * Each lane has its own concurrency limit and queue timeout, and stats queries use their own
+ * connection pool (see {@code StorageConfig}), so heavy scans can not starve hit ingestion
+ * of threads or connections. A request that does not get a slot in time is answered
+ * with 503 and Retry-After. A streamed response keeps its slot until the stream completes.
+ */
+@Slf4j
+public class LaneFilter extends OncePerRequestFilter {
+
+    private final ObjectMapper objectMapper;
+    private final Bulkhead ingest;
+    private final Bulkhead query;
+    private final long retryAfterSeconds;
+
+    public LaneFilter(ObjectMapper objectMapper, Bulkhead ingest, Bulkhead query, long retryAfterSeconds) {
+        this.objectMapper = objectMapper;
+        this.ingest = ingest;
+        this.query = query;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return lane(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain chain) throws ServletException, IOException {
+        Bulkhead lane = lane(request);
+        boolean entered;
+        try {
+            entered = lane.tryEnter();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            entered = false;
+        }
+        if (!entered) {
+            reject(response, lane);
+            return;
+        }
+
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true))
+                lane.exit();
+        };
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            // потоковый ответ дописывается после выхода из фильтра: место освобождается по его завершении
+            if (request.isAsyncStarted())
+                request.getAsyncContext().addListener(new ReleasingListener(release));
+            else
+                release.run();
+        }
+    }
+
+    private Bulkhead lane(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.startsWith("/hit"))
+            return ingest;
+        if (path.startsWith("/stats"))
+            return query;
+        return null;
+    }
+
+    private void reject(HttpServletResponse response, Bulkhead lane) throws IOException {
+        log.warn("Rejected request: all {} slots of {} lane are busy", lane.getMaxConcurrent(), lane.getName());
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(),
+                new ErrorResponse("Too many concurrent requests in " + lane.getName() + " lane"));
+    }
+
+    private record ReleasingListener(Runnable release) implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // повторный startAsync: слушатель нужно зарегистрировать заново
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
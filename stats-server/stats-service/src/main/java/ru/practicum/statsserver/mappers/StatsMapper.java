@@ -1,7 +1,9 @@
 package ru.practicum.statsserver.mappers;
 
 import lombok.experimental.UtilityClass;
+import ru.practicum.statsdto.SeriesPointDtoOut;
 import ru.practicum.statsdto.StatsDtoOut;
+import ru.practicum.statsserver.model.SeriesPoint;
 import ru.practicum.statsserver.model.Stats;
 
 @UtilityClass
@@ -13,4 +15,8 @@ public class StatsMapper {
         dto.setHits(stats.getHits());
         return dto;
     }
+
+    public SeriesPointDtoOut toDto(SeriesPoint point) {
+        return new SeriesPointDtoOut(point.getService(), point.getUri(), point.getBucket(), point.getHits());
+    }
 }
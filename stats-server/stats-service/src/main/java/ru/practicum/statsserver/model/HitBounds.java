@@ -0,0 +1,16 @@
+package ru.practicum.statsserver.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+// время первого и последнего хита, включительно; хранилище может вернуть границы шире настоящих
+@Getter
+@ToString
+@AllArgsConstructor
+public class HitBounds {
+    private LocalDateTime first;
+    private LocalDateTime last;
+}
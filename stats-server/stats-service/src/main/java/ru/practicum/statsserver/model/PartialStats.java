@@ -0,0 +1,19 @@
+package ru.practicum.statsserver.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import ru.practicum.statsdto.StatsDtoOut;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// partial = true - посчитаны только хиты с coveredFrom по конец диапазона
+@Getter
+@ToString
+@AllArgsConstructor
+public class PartialStats {
+    private List<StatsDtoOut> stats;
+    private boolean partial;
+    private LocalDateTime coveredFrom;
+}
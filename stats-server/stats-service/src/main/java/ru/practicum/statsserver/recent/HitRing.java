@@ -0,0 +1,79 @@
+package ru.practicum.statsserver.recent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ring of hit counters for the last {@code size} buckets of {@code bucketSeconds} each.
+ * <p>
+ * A slot packs the bucket number (upper 32 bits) and its count (lower 32 bits) into one long,
+ * so moving a slot to a newer bucket and counting a hit is a single CAS without locks.
+ * Writers of different uris never share a ring, writers of one uri contend only within one bucket.
+ */
+final class HitRing {
+
+    // часть бакетов уже вытеснена более новыми
+    static final long EVICTED = -1;
+    // ни в одном бакете не было хитов, даже без ip
+    static final long EMPTY = -2;
+
+    private static final long COUNT_MASK = 0xFFFF_FFFFL;
+
+    private final int bucketSeconds;
+    private final AtomicLongArray slots;
+
+    HitRing(int size, int bucketSeconds) {
+        this.bucketSeconds = bucketSeconds;
+        this.slots = new AtomicLongArray(size);
+    }
+
+    int size() {
+        return slots.length();
+    }
+
+    // false - слот уже занят более новым бакетом; count = 0 отмечает бакет с хитами без ip
+    boolean add(long epochSecond, long count) {
+        long bucket = Math.floorDiv(epochSecond, bucketSeconds);
+        int slot = slot(bucket);
+        while (true) {
+            long value = slots.get(slot);
+            long stamp = value >>> 32;
+            long next;
+            if (stamp == bucket)
+                next = value + count;
+            else if (stamp < bucket)
+                next = (bucket << 32) | count;
+            else
+                return false;
+
+            if (slots.compareAndSet(slot, value, next))
+                return true;
+        }
+    }
+
+    // сумма бакетов [fromBucket, toBucket), EVICTED или EMPTY
+    long sum(long fromBucket, long toBucket) {
+        long sum = EMPTY;
+        for (long bucket = fromBucket; bucket < toBucket; bucket++) {
+            long value = slots.get(slot(bucket));
+            long stamp = value >>> 32;
+            if (stamp == bucket)
+                sum = plus(sum, value & COUNT_MASK);
+            else if (stamp > bucket)
+                return EVICTED;
+        }
+        return sum;
+    }
+
+    // складывает суммы, EMPTY - отсутствие хитов
+    static long plus(long sum, long other) {
+        if (sum == EMPTY)
+            return other;
+        if (other == EMPTY)
+            return sum;
+        return sum + other;
+    }
+
+    private int slot(long bucket) {
+        return (int) Math.floorMod(bucket, slots.length());
+    }
+}
@@ -0,0 +1,404 @@
+package ru.practicum.statsserver.recent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsserver.model.Hit;
+import ru.practicum.statsserver.model.SeriesPoint;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.repository.HitRepository;
+import ru.practicum.statsserver.repository.RollupResolution;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Recent hits of every uri kept in memory: a ring of per-second counters for the last
+ * {@code second-horizon} and a ring of per-minute counters for the last {@code minute-horizon}.
+ * <p>
+ * Non-unique /stats and series queries whose window lies inside the retained horizon are answered
+ * from the rings without touching storage; any other query gets null and goes to storage.
+ * The number of uris is bounded: when it is exceeded, the uris with the oldest hits are evicted.
+ * Windows reaching back to their hits are then read from storage only for queries that may include
+ * an evicted uri: over all uris or over uris absent from memory.
+ * On startup the rings are rebuilt from storage before the web server accepts requests.
+ * <p>
+ * The rings see only hits written through this instance, so the store must be disabled
+ * when several instances write to the same storage. Hits without ip are not counted, but as in storage
+ * a uri having only such hits in the window is returned with zero hits.
+ */
+@Slf4j
+@Component
+public class RecentHitsStore implements SmartInitializingSingleton {
+
+    private static final Comparator<Stats> STATS_ORDER = Comparator
+            .comparingInt(Stats::getHits).reversed()
+            .thenComparing(Stats::getService)
+            .thenComparing(Stats::getUri);
+
+    private static final Comparator<SeriesPoint> SERIES_ORDER = Comparator
+            .comparing(SeriesPoint::getUri)
+            .thenComparing(SeriesPoint::getService)
+            .thenComparing(SeriesPoint::getBucket);
+
+    // допустимое опережение часов клиентов; хиты дальше в будущем в кольца не попадают
+    private static final long FUTURE_SECONDS = 60;
+
+    private final HitRepository repository;
+    private final boolean enabled;
+    private final long secondHorizon;
+    private final long minuteHorizon;
+    private final int maxUris;
+    private final LongSupplier clock;
+
+    private final Map<String, UriSeries> series = new ConcurrentHashMap<>();
+    private final AtomicInteger ringCount = new AtomicInteger();
+    // окна, начинающиеся не позже этой секунды, расходятся с хранилищем для всех uri
+    private final AtomicLong lostUntil = new AtomicLong(Long.MIN_VALUE);
+    // то же для uri, которых нет в памяти: среди них могут быть вытесненные
+    private final AtomicLong evictedUntil = new AtomicLong(Long.MIN_VALUE);
+    // с каких секунд кольца полны; до восстановления из хранилища - ни с каких
+    private volatile long secondsSince = Long.MAX_VALUE;
+    private volatile long minutesSince = Long.MAX_VALUE;
+
+    private final Counter memoryCounter;
+    private final Counter storageCounter;
+
+    @Autowired
+    public RecentHitsStore(HitRepository repository,
+                           MeterRegistry meterRegistry,
+                           @Value("${stats.recent.enabled:false}") boolean enabled,
+                           @Value("${stats.recent.second-horizon:1h}") Duration secondHorizon,
+                           @Value("${stats.recent.minute-horizon:1d}") Duration minuteHorizon,
+                           @Value("${stats.recent.max-uris:1000}") int maxUris) {
+        this(repository, meterRegistry, enabled, secondHorizon, minuteHorizon, maxUris,
+                () -> LocalDateTime.now().toEpochSecond(ZoneOffset.UTC));
+    }
+
+    RecentHitsStore(HitRepository repository,
+                    MeterRegistry meterRegistry,
+                    boolean enabled,
+                    Duration secondHorizon,
+                    Duration minuteHorizon,
+                    int maxUris,
+                    LongSupplier clock) {
+        this.repository = repository;
+        this.enabled = enabled;
+        this.secondHorizon = secondHorizon.toSeconds();
+        this.minuteHorizon = minuteHorizon.toMinutes();
+        this.maxUris = maxUris;
+        this.clock = clock;
+
+        Gauge.builder("stats.recent.uris", series, Map::size)
+                .description("Uris with hits kept in memory")
+                .register(meterRegistry);
+        Gauge.builder("stats.recent.memory", ringCount, count -> (double) count.get() * ringBytes())
+                .description("Memory taken by the counter rings of recent hits")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        memoryCounter = meterRegistry.counter("stats.recent.queries", "source", "memory");
+        storageCounter = meterRegistry.counter("stats.recent.queries", "source", "storage");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // вызывается до запуска веб-сервера, поэтому одновременно с восстановлением хиты не пишутся
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (enabled)
+            rebuild();
+    }
+
+    void rebuild() {
+        long now = clock.getAsLong();
+        long secondsFrom = Math.floorDiv(now - secondHorizon, 60) * 60;
+        long minutesFrom = (Math.floorDiv(now, 60) - minuteHorizon) * 60;
+        try {
+            repository.scanCounts(toDateTime(minutesFrom), toDateTime(secondsFrom), ChronoUnit.MINUTES,
+                    (service, uri, bucket, hits) -> record(service, uri, toEpochSecond(bucket), hits, false, now));
+            repository.scanCounts(toDateTime(secondsFrom), toDateTime(now).plusYears(100), ChronoUnit.SECONDS,
+                    (service, uri, bucket, hits) -> record(service, uri, toEpochSecond(bucket), hits, true, now));
+            minutesSince = minutesFrom;
+            secondsSince = secondsFrom;
+            log.info("Recent hits of {} uris loaded from storage", series.size());
+        } catch (RuntimeException e) {
+            // полными кольца будут только для хитов, записанных после запуска
+            long since = Math.floorDiv(now, 60) * 60 + 60;
+            minutesSince = since;
+            secondsSince = since;
+            log.error("Failed to load recent hits from storage, memory serves windows from {}",
+                    toDateTime(since), e);
+        }
+        evictIfFull();
+    }
+
+    public void onHits(Collection<Hit> hits) {
+        if (!enabled)
+            return;
+
+        long now = clock.getAsLong();
+        for (Hit hit : hits) {
+            if (hit.getDateTime() == null)
+                continue;
+            record(hit.getService(), hit.getUri(), toEpochSecond(hit.getDateTime()), hit.getIp() == null ? 0 : 1,
+                    true, now);
+        }
+        evictIfFull();
+    }
+
+    // хиты импорта записываются в кольца по мере чтения; при ошибке импорт откатывается
+    public Iterator<Hit> recording(Iterator<Hit> hits) {
+        if (!enabled)
+            return hits;
+
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return hits.hasNext();
+            }
+
+            @Override
+            public Hit next() {
+                Hit hit = hits.next();
+                onHits(List.of(hit));
+                return hit;
+            }
+        };
+    }
+
+    // записанное в кольца разошлось с хранилищем: окна до текущего момента читаются из хранилища
+    public void invalidate() {
+        if (enabled)
+            lostUntil.accumulateAndGet(clock.getAsLong() + FUTURE_SECONDS, Math::max);
+    }
+
+    // null - окно не целиком в памяти
+    public List<Stats> getStatistics(LocalDateTime start, LocalDateTime end, Collection<String> uris) {
+        if (!enabled)
+            return null;
+
+        long now = clock.getAsLong();
+        long from = toEpochSecond(start);
+        long to = toEpochSecond(end) + 1;
+        List<Map.Entry<String, UriSeries>> selected = select(uris, from);
+        if (selected == null)
+            return miss();
+
+        List<Stats> result = new ArrayList<>();
+        for (Map.Entry<String, UriSeries> entry : selected) {
+            if (from <= entry.getValue().lostUntil.get())
+                return miss();
+            for (Map.Entry<String, Rings> rings : entry.getValue().byService.entrySet()) {
+                long hits = count(rings.getValue(), from, to, now);
+                if (hits == HitRing.EVICTED)
+                    return miss();
+                if (hits != HitRing.EMPTY)
+                    result.add(toStats(rings.getKey(), entry.getKey(), hits));
+            }
+        }
+
+        memoryCounter.increment();
+        result.sort(STATS_ORDER);
+        return result;
+    }
+
+    // null - окно не целиком в памяти
+    public List<SeriesPoint> getSeries(LocalDateTime start,
+                                       LocalDateTime end,
+                                       Collection<String> uris,
+                                       RollupResolution bucket) {
+        if (!enabled)
+            return null;
+
+        long now = clock.getAsLong();
+        long from = toEpochSecond(start);
+        long to = toEpochSecond(end) + 1;
+        long bucketSeconds = bucket.getUnit().getDuration().toSeconds();
+        List<Map.Entry<String, UriSeries>> selected = select(uris, from);
+        if (selected == null)
+            return miss();
+
+        List<SeriesPoint> result = new ArrayList<>();
+        for (Map.Entry<String, UriSeries> entry : selected) {
+            if (from <= entry.getValue().lostUntil.get())
+                return miss();
+            for (Map.Entry<String, Rings> rings : entry.getValue().byService.entrySet()) {
+                for (long bucketStart = Math.floorDiv(from, bucketSeconds) * bucketSeconds;
+                     bucketStart < to; bucketStart += bucketSeconds) {
+                    long hits = count(rings.getValue(),
+                            Math.max(from, bucketStart), Math.min(to, bucketStart + bucketSeconds), now);
+                    if (hits == HitRing.EVICTED)
+                        return miss();
+                    if (hits != HitRing.EMPTY)
+                        result.add(new SeriesPoint(rings.getKey(), entry.getKey(), toDateTime(bucketStart),
+                                (int) hits));
+                }
+            }
+        }
+
+        memoryCounter.increment();
+        result.sort(SERIES_ORDER);
+        return result;
+    }
+
+    private <T> T miss() {
+        storageCounter.increment();
+        return null;
+    }
+
+    // null - окно, начинающееся с from, может не видеть хиты вытесненных uri
+    private List<Map.Entry<String, UriSeries>> select(Collection<String> uris, long from) {
+        if (from <= lostUntil.get())
+            return null;
+        boolean evicted = from <= evictedUntil.get();
+        if (uris == null || uris.isEmpty())
+            return evicted ? null : new ArrayList<>(series.entrySet());
+
+        List<Map.Entry<String, UriSeries>> selected = new ArrayList<>();
+        for (String uri : uris.stream().distinct().toList()) {
+            UriSeries uriSeries = series.get(uri);
+            if (uriSeries != null)
+                selected.add(Map.entry(uri, uriSeries));
+            else if (evicted)
+                return null;
+        }
+        return selected;
+    }
+
+    // хиты за секунды [from, to), HitRing.EVICTED - окно не целиком в кольцах, HitRing.EMPTY - хитов не было
+    private long count(Rings rings, long from, long to, long now) {
+        to = Math.min(to, now + FUTURE_SECONDS + 1);
+        if (from >= to)
+            return HitRing.EMPTY;
+
+        // начало посекундной части выровнено на минуту, чтобы к ней примыкали целые минуты
+        long secondsLow = Math.ceilDiv(Math.max(now - secondHorizon + 1, secondsSince), 60) * 60;
+        long minutesLow = Math.max((Math.floorDiv(now, 60) - minuteHorizon + 1) * 60, minutesSince);
+
+        long sum = HitRing.EMPTY;
+        if (from < secondsLow) {
+            long minutesTo = Math.min(to, secondsLow);
+            if (from < minutesLow || from % 60 != 0 || minutesTo % 60 != 0)
+                return HitRing.EVICTED;
+            long minutes = rings.minutes().sum(from / 60, minutesTo / 60);
+            if (minutes == HitRing.EVICTED)
+                return HitRing.EVICTED;
+            sum = minutes;
+            from = minutesTo;
+        }
+        if (from < to) {
+            long seconds = rings.seconds().sum(from, to);
+            if (seconds == HitRing.EVICTED)
+                return HitRing.EVICTED;
+            sum = HitRing.plus(sum, seconds);
+        }
+        return sum;
+    }
+
+    private void record(String service, String uri, long second, long hits, boolean toSeconds, long now) {
+        // старше минутного горизонта: такие окна из памяти не читаются
+        if (second < (Math.floorDiv(now, 60) - minuteHorizon) * 60)
+            return;
+
+        // uri мог быть вытеснен раньше: пока его хиты не выйдут из окон, он считается потерявшим их
+        UriSeries uriSeries = series.computeIfAbsent(uri, key -> new UriSeries(evictedUntil.get()));
+        if (second > now + FUTURE_SECONDS) {
+            uriSeries.lostUntil.accumulateAndGet(second, Math::max);
+        } else {
+            Rings rings = uriSeries.byService.computeIfAbsent(service, key -> {
+                ringCount.incrementAndGet();
+                return new Rings(new HitRing((int) secondHorizon + 180, 1),
+                        new HitRing((int) minuteHorizon + 5, 60));
+            });
+            rings.minutes().add(second, hits);
+            if (toSeconds)
+                rings.seconds().add(second, hits);
+        }
+        uriSeries.lastHit.accumulateAndGet(second, Math::max);
+
+        // uri вытеснен, пока записывали хит: хит потерян вместе с ним
+        if (uriSeries.evicted)
+            evictedUntil.accumulateAndGet(Math.max(second, uriSeries.lostUntil.get()), Math::max);
+    }
+
+    private void evictIfFull() {
+        if (series.size() <= maxUris)
+            return;
+
+        synchronized (this) {
+            int excess = series.size() - maxUris;
+            if (excess <= 0)
+                return;
+
+            // вытесняем с запасом, чтобы не сортировать все uri на каждой записи
+            List<Map.Entry<String, UriSeries>> coldest = series.entrySet().stream()
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().lastHit.get()))
+                    .limit(excess + maxUris / 10)
+                    .toList();
+            for (Map.Entry<String, UriSeries> entry : coldest) {
+                UriSeries uriSeries = entry.getValue();
+                uriSeries.evicted = true;
+                // отметка ставится до удаления, чтобы заново созданный ряд uri её унаследовал
+                evictedUntil.accumulateAndGet(Math.max(uriSeries.lastHit.get(), uriSeries.lostUntil.get()),
+                        Math::max);
+                series.remove(entry.getKey(), uriSeries);
+                ringCount.addAndGet(-uriSeries.byService.size());
+            }
+        }
+    }
+
+    private long ringBytes() {
+        return (secondHorizon + 180 + minuteHorizon + 5) * Long.BYTES;
+    }
+
+    private static Stats toStats(String service, String uri, long hits) {
+        Stats stats = new Stats();
+        stats.setService(service);
+        stats.setUri(uri);
+        stats.setHits((int) hits);
+        return stats;
+    }
+
+    private static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime toDateTime(long epochSecond) {
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    private record Rings(HitRing seconds, HitRing minutes) {
+    }
+
+    private static final class UriSeries {
+        private final Map<String, Rings> byService = new ConcurrentHashMap<>();
+        private final AtomicLong lastHit = new AtomicLong(Long.MIN_VALUE);
+        // окна, начинающиеся не позже этой секунды, не видят хиты из будущего, не попавшие в кольца,
+        // и хиты прежнего ряда вытесненного uri
+        private final AtomicLong lostUntil;
+        private volatile boolean evicted;
+
+        private UriSeries(long lostUntil) {
+            this.lostUntil = new AtomicLong(lostUntil);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package ru.practicum.statsserver.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Receives hit counts per (service, uri, bucket start) while they are read from storage.
+ */
+@FunctionalInterface
+public interface BucketCountHandler {
+
+    void accept(String service, String uri, LocalDateTime bucket, long hits);
+}
@@ -0,0 +1,38 @@
+package ru.practicum.statsserver.repository;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * JdbcTemplate of the query lane: statements run under the {@link QueryDeadline} of the current thread,
+ * if there is one, get the remaining time as their query timeout and can be cancelled with it.
+ * PostgreSQL stops such a statement on the server side, so no work is left behind.
+ */
+public class DeadlineJdbcTemplate extends JdbcTemplate {
+
+    public DeadlineJdbcTemplate(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    @Override
+    protected void applyStatementSettings(Statement stmt) throws SQLException {
+        super.applyStatementSettings(stmt);
+        QueryDeadline deadline = QueryDeadline.current();
+        if (deadline != null)
+            deadline.apply(stmt);
+    }
+
+    // драйверы по-разному сообщают об отмене по таймауту; для запроса с истёкшим сроком это всегда таймаут
+    @Override
+    protected DataAccessException translateException(String task, String sql, SQLException ex) {
+        QueryDeadline deadline = QueryDeadline.current();
+        if (deadline != null && deadline.isExpired())
+            return new QueryTimeoutException("Stats query stopped by its deadline: " + ex.getMessage(), ex);
+        return super.translateException(task, sql, ex);
+    }
+}
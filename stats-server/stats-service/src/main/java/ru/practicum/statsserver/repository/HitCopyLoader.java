@@ -0,0 +1,76 @@
+package ru.practicum.statsserver.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HexFormat;
+
+/**
+ * Streams hits into PostgreSQL with COPY ... FROM STDIN instead of row-by-row INSERT.
+ * Uses the connection bound to the current transaction, if any.
+ */
+@Component
+@RequiredArgsConstructor
+public class HitCopyLoader {
+
+    private static final String SQL_COPY = "COPY hits (service_id, uri_id, ip, timestamp) FROM STDIN WITH (FORMAT csv)";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final DataSource dataSource;
+    private final SqlDialect dialect;
+
+    public boolean isSupported() {
+        return dialect == SqlDialect.POSTGRESQL;
+    }
+
+    public long copy(Collection<HitRecord> hits) {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            PGCopyOutputStream out = new PGCopyOutputStream(copyManager.copyIn(SQL_COPY), BUFFER_SIZE);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+                for (HitRecord hit : hits)
+                    writeRow(writer, hit);
+            }
+            return hits.size();
+        } catch (SQLException e) {
+            throw new UncategorizedSQLException("COPY hits", SQL_COPY, e);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("COPY hits failed: " + e.getMessage(), e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    // в формате csv пустое значение - это NULL, bytea передаётся в hex-формате \x...
+    private void writeRow(Writer writer, HitRecord hit) throws IOException {
+        writer.write(Integer.toString(hit.serviceId()));
+        writer.write(',');
+        writer.write(Integer.toString(hit.uriId()));
+        writer.write(',');
+        if (hit.ip() != null) {
+            writer.write("\\x");
+            writer.write(HEX.formatHex(hit.ip()));
+        }
+        writer.write(',');
+        if (hit.timestamp() != null)
+            writer.write(hit.timestamp().toString());
+        writer.write('\n');
+    }
+}
@@ -0,0 +1,173 @@
+package ru.practicum.statsserver.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.SqlArrayValue;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.statsserver.model.Hit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps service and uri names to ids of the services/uris dictionary tables.
+ * Ids are cached in-process; ids of rows inserted in a transaction
+ * are cached only after it commits, so the cache never points to a rolled back row.
+ * Lookups of the query path run on the query lane and remember absent names for a short time.
+ */
+@Repository
+public class HitDictionary {
+
+    public enum Kind {
+        SERVICE("services"),
+        URI("uris");
+
+        private final String table;
+
+        Kind(String table) {
+            this.table = table;
+        }
+    }
+
+    private static final String PG_INSERT = "INSERT INTO %s (name) VALUES (?) ON CONFLICT (name) DO NOTHING";
+    private static final String MERGE = "MERGE INTO %s (name) KEY (name) VALUES (?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final QueryLaneJdbc queryLane;
+    private final SqlDialect dialect;
+    private final Map<Kind, Map<String, Integer>> cache = new HashMap<>();
+    private final Map<Kind, Cache<String, Boolean>> absent = new HashMap<>();
+
+    public HitDictionary(JdbcTemplate jdbcTemplate,
+                         QueryLaneJdbc queryLane,
+                         SqlDialect dialect,
+                         @Value("${stats.dictionary.absent-ttl:5s}") Duration absentTtl,
+                         @Value("${stats.dictionary.absent-size:10000}") long absentSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.queryLane = queryLane;
+        this.dialect = dialect;
+        for (Kind kind : Kind.values()) {
+            cache.put(kind, new ConcurrentHashMap<>());
+            absent.put(kind, Caffeine.newBuilder()
+                    .expireAfterWrite(absentTtl)
+                    .maximumSize(absentSize)
+                    .build());
+        }
+    }
+
+    public List<HitRecord> encode(Collection<Hit> hits) {
+        List<String> services = new ArrayList<>(hits.size());
+        List<String> uris = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            services.add(hit.getService());
+            uris.add(hit.getUri());
+        }
+
+        Map<String, Integer> serviceIds = resolve(Kind.SERVICE, services);
+        Map<String, Integer> uriIds = resolve(Kind.URI, uris);
+
+        List<HitRecord> records = new ArrayList<>(hits.size());
+        for (Hit hit : hits)
+            records.add(new HitRecord(
+                    serviceIds.get(hit.getService()),
+                    uriIds.get(hit.getUri()),
+                    IpCodec.encode(hit.getIp()),
+                    hit.getDateTime()));
+        return records;
+    }
+
+    // возвращает id всех имён, отсутствующие в справочнике добавляются
+    public Map<String, Integer> resolve(Kind kind, Collection<String> names) {
+        Map<String, Integer> ids = new HashMap<>();
+        TreeSet<String> missing = lookupCached(kind, names, ids);
+        if (missing.isEmpty())
+            return ids;
+
+        // вставка в одном порядке, чтобы параллельные транзакции не взаимоблокировались
+        String sql = (dialect == SqlDialect.POSTGRESQL ? PG_INSERT : MERGE).formatted(kind.table);
+        List<String> rows = new ArrayList<>(missing);
+        jdbcTemplate.batchUpdate(sql, rows, rows.size(), (ps, name) -> ps.setString(1, name));
+        // отметку снимаем сразу, не дожидаясь коммита: лишний поиск безопаснее пропущенного имени
+        absent.get(kind).invalidateAll(rows);
+
+        Map<String, Integer> loaded = load(jdbcTemplate, kind, rows);
+        ids.putAll(loaded);
+        remember(kind, loaded);
+        return ids;
+    }
+
+    // только поиск для запросов статистики: имена, которых нет в справочнике, в результат не попадают
+    // и absent-ttl не ищутся повторно; читает через полосу запросов, под её сроком
+    public Map<String, Integer> find(Kind kind, Collection<String> names) {
+        Map<String, Integer> ids = new HashMap<>();
+        TreeSet<String> missing = lookupCached(kind, names, ids);
+        Cache<String, Boolean> kindAbsent = absent.get(kind);
+        missing.removeIf(name -> kindAbsent.getIfPresent(name) != null);
+        if (missing.isEmpty())
+            return ids;
+
+        Map<String, Integer> loaded = load(queryLane.getJdbcTemplate(), kind, new ArrayList<>(missing));
+        ids.putAll(loaded);
+        remember(kind, loaded);
+        for (String name : missing) {
+            if (!loaded.containsKey(name))
+                kindAbsent.put(name, Boolean.TRUE);
+        }
+        return ids;
+    }
+
+    // ids одним параметром-массивом для условия "uri_id = ANY(?)": текст запроса не зависит от их числа
+    public static SqlArrayValue idArray(Collection<Integer> ids) {
+        return new SqlArrayValue("integer", ids.toArray());
+    }
+
+    private TreeSet<String> lookupCached(Kind kind, Collection<String> names, Map<String, Integer> ids) {
+        Map<String, Integer> kindCache = cache.get(kind);
+        TreeSet<String> missing = new TreeSet<>();
+        for (String name : names) {
+            Integer id = kindCache.get(name);
+            if (id != null)
+                ids.put(name, id);
+            else
+                missing.add(name);
+        }
+        return missing;
+    }
+
+    private Map<String, Integer> load(JdbcTemplate template, Kind kind, List<String> names) {
+        Map<String, Integer> ids = new HashMap<>();
+        String sql = "SELECT id, name FROM " + kind.table + " WHERE name = ANY(?)";
+        template.query(sql, rs -> {
+            ids.put(rs.getString("name"), rs.getInt("id"));
+        }, new SqlArrayValue("varchar", names.toArray()));
+        return ids;
+    }
+
+    private void remember(Kind kind, Map<String, Integer> ids) {
+        if (ids.isEmpty())
+            return;
+
+        Map<String, Integer> kindCache = cache.get(kind);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            kindCache.putAll(ids);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                kindCache.putAll(ids);
+            }
+        });
+    }
+}
@@ -0,0 +1,8 @@
+package ru.practicum.statsserver.repository;
+
+import java.util.Collection;
+
+// вызывается в транзакции записи хитов, после вставки в таблицу hits
+public interface HitIngestListener {
+    void onHits(Collection<HitRecord> hits);
+}
@@ -0,0 +1,183 @@
+package ru.practicum.statsserver.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Creates upcoming range partitions of the hits table ahead of time
+ * and detaches/drops partitions that fall out of the retention period,
+ * together with expired hits of the default partition and rollup and sketch buckets.
+ * Works only for PostgreSQL with a partitioned hits table.
+ */
+@Slf4j
+@Component
+public class HitPartitionManager {
+
+    private static final String SQL_IS_PARTITIONED = """
+            SELECT EXISTS (
+                SELECT 1 FROM pg_partitioned_table pt
+                JOIN pg_class c ON c.oid = pt.partrelid
+                WHERE c.relname = 'hits'
+            )
+            """;
+
+    private static final String SQL_PARTITIONS = """
+            SELECT c.relname
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            JOIN pg_class p ON p.oid = i.inhparent
+            WHERE p.relname = 'hits' AND c.relname LIKE 'hits\\_p%'
+            """;
+
+    private static final String SQL_CREATE_PARTITION = """
+            CREATE TABLE IF NOT EXISTS %s PARTITION OF hits
+            FOR VALUES FROM ('%s') TO ('%s')
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final HitTotalsRepository totalsRepository;
+    private final HitRollupRepository rollupRepository;
+    private final HitSketchRepository sketchRepository;
+    private final boolean enabled;
+    private final ChronoUnit interval;
+    private final int precreate;
+    private final int retentionDays;
+
+    public HitPartitionManager(JdbcTemplate jdbcTemplate,
+                               TransactionTemplate transactionTemplate,
+                               HitTotalsRepository totalsRepository,
+                               HitRollupRepository rollupRepository,
+                               HitSketchRepository sketchRepository,
+                               SqlDialect dialect,
+                               @Value("${stats.partition.enabled:false}") boolean enabled,
+                               @Value("${stats.partition.interval:day}") String interval,
+                               @Value("${stats.partition.precreate:7}") int precreate,
+                               @Value("${stats.partition.retention-days:0}") int retentionDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.totalsRepository = totalsRepository;
+        this.rollupRepository = rollupRepository;
+        this.sketchRepository = sketchRepository;
+        this.enabled = enabled && dialect == SqlDialect.POSTGRESQL;
+        this.interval = switch (interval.toLowerCase()) {
+            case "day" -> ChronoUnit.DAYS;
+            case "month" -> ChronoUnit.MONTHS;
+            default -> throw new IllegalArgumentException("Unsupported partition interval: " + interval);
+        };
+        this.precreate = precreate;
+        this.retentionDays = retentionDays;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${stats.partition.cron:0 5 0 * * *}")
+    public void maintain() {
+        if (!enabled)
+            return;
+
+        if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(SQL_IS_PARTITIONED, Boolean.class))) {
+            log.warn("Table hits is not partitioned, partition maintenance is skipped");
+            return;
+        }
+
+        LocalDate current = periodStart(LocalDate.now());
+        for (int i = 0; i <= precreate; i++)
+            createPartition(current.plus(i, interval));
+
+        if (retentionDays > 0)
+            dropExpiredPartitions(LocalDate.now().minusDays(retentionDays));
+    }
+
+    private void createPartition(LocalDate from) {
+        LocalDate to = from.plus(1, interval);
+        String name = partitionName(from);
+
+        Boolean inDefault = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM hits_default WHERE timestamp >= ? AND timestamp < ?)",
+                Boolean.class, from.atStartOfDay(), to.atStartOfDay());
+
+        if (!Boolean.TRUE.equals(inDefault)) {
+            jdbcTemplate.execute(SQL_CREATE_PARTITION.formatted(name, from, to));
+            return;
+        }
+
+        // хиты этого диапазона уже лежат в секции по умолчанию - переносим их в новую секцию
+        log.info("Moving hits from default partition to {}", name);
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("CREATE TABLE %s (LIKE hits INCLUDING DEFAULTS INCLUDING CONSTRAINTS)"
+                    .formatted(name));
+            jdbcTemplate.update("""
+                    WITH moved AS (
+                        DELETE FROM hits_default WHERE timestamp >= ? AND timestamp < ? RETURNING *
+                    )
+                    INSERT INTO %s SELECT * FROM moved
+                    """.formatted(name), from.atStartOfDay(), to.atStartOfDay());
+            jdbcTemplate.execute("ALTER TABLE hits ATTACH PARTITION %s FOR VALUES FROM ('%s') TO ('%s')"
+                    .formatted(name, from, to));
+        });
+    }
+
+    // граница хранения - начало секции, в которую попадает retainFrom: по ней удаляются и секции,
+    // и хиты из секции по умолчанию, и интервалы агрегатов, поэтому все таблицы считают одни и те же хиты
+    private void dropExpiredPartitions(LocalDate retainFrom) {
+        LocalDate cutoff = periodStart(retainFrom);
+        List<String> expired = jdbcTemplate.queryForList(SQL_PARTITIONS, String.class).stream()
+                .filter(name -> {
+                    LocalDate from = parsePartitionName(name);
+                    return from != null && !from.plus(1, interval).isAfter(cutoff);
+                })
+                .toList();
+
+        Integer purged = transactionTemplate.execute(status -> {
+            for (String name : expired) {
+                log.info("Dropping expired hits partition {}", name);
+                jdbcTemplate.execute("ALTER TABLE hits DETACH PARTITION " + name);
+                jdbcTemplate.execute("DROP TABLE " + name);
+            }
+            int deleted = jdbcTemplate.update("DELETE FROM hits_default WHERE timestamp < ?", cutoff.atStartOfDay());
+            if (deleted > 0)
+                log.info("Deleted {} expired hits from default partition", deleted);
+
+            if (rollupRepository.isEnabled())
+                rollupRepository.purgeBefore(cutoff.atStartOfDay());
+            if (sketchRepository.isEnabled())
+                sketchRepository.purgeBefore(cutoff.atStartOfDay());
+            return expired.size() + deleted;
+        });
+
+        // счётчики за всё время не должны учитывать удалённые хиты
+        if (purged != null && purged > 0 && totalsRepository.isEnabled())
+            totalsRepository.rebuild();
+    }
+
+    private LocalDate periodStart(LocalDate date) {
+        return interval == ChronoUnit.MONTHS ? date.withDayOfMonth(1) : date;
+    }
+
+    private String partitionName(LocalDate from) {
+        return "hits_p" + from.format(DateTimeFormatter.BASIC_ISO_DATE);
+    }
+
+    private LocalDate parsePartitionName(String name) {
+        try {
+            return LocalDate.parse(name.substring("hits_p".length()), DateTimeFormatter.BASIC_ISO_DATE);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package ru.practicum.statsserver.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Hit as it is stored: dictionary ids instead of names and a packed ip.
+ */
+public record HitRecord(int serviceId, int uriId, byte[] ip, LocalDateTime timestamp) {
+}
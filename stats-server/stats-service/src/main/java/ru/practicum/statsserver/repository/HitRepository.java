@@ -1,73 +1,79 @@
 package ru.practicum.statsserver.repository;
 
-import lombok.RequiredArgsConstructor;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
-import org.springframework.stereotype.Repository;
 import ru.practicum.statsserver.model.Hit;
+import ru.practicum.statsserver.model.HitBounds;
+import ru.practicum.statsserver.model.SeriesPoint;
 import ru.practicum.statsserver.model.Stats;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.time.temporal.ChronoUnit;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.stream.Stream;
+import java.util.Iterator;
 
-@Repository("hitRepository")
-@RequiredArgsConstructor
-public class HitRepository  {
+/**
+ * Hit storage. The engine is chosen with stats.storage.engine: jdbc (default) or segment.
+ */
+public interface HitRepository {
 
-    protected final JdbcTemplate jdbcTemplate;
-    protected final RowMapper<Stats> rowMapper;
+    void save(Hit hit);
 
-    private static final String SQL_INSERT = """
-            INSERT INTO hits (service, uri, ip, timestamp)
-            VALUES (?, ?, ?, ?);
-            """;
+    void saveAll(Collection<Hit> hits);
 
-    private static final String SQL_SELECT = """
-                SELECT service, uri, %s as hits_count
-                FROM hits
-                WHERE timestamp BETWEEN ? AND ?
-                %s
-                GROUP BY service, uri
-                ORDER BY hits_count DESC, service, uri
-                """;
+    // хиты читаются из источника лениво; возвращает число сохранённых хитов
+    long importHits(Iterator<Hit> hits);
 
-    public void save(Hit hit) {
-        jdbcTemplate.update(SQL_INSERT,
-                hit.getService(),
-                hit.getUri(),
-                hit.getIp(),
-                hit.getDateTime()
-        );
-    }
+    Collection<Stats> getStatistics(LocalDateTime start,
+                                    LocalDateTime end,
+                                    Collection<String> uris,
+                                    boolean unique);
 
-    public Collection<Stats> getStatistics(LocalDateTime start,
-                                           LocalDateTime end,
-                                               Collection<String> uris,
-                                           boolean unique) {
+    // время первого и последнего хита uris в [start, end]; null - хитов нет.
+    // границы могут быть шире настоящих: по ним только сужают диапазон, который придётся читать
+    HitBounds getBounds(LocalDateTime start,
+                        LocalDateTime end,
+                        Collection<String> uris);
 
-        if (uris == null)
-            uris = new ArrayList<>();
+    // все uri, подходящие под pattern, считаются одним uri с именем pattern.name():
+    // строка на сервис, порядок - по убыванию хитов, затем по сервису
+    Collection<Stats> getGroupStatistics(LocalDateTime start,
+                                         LocalDateTime end,
+                                         UriPattern pattern,
+                                         boolean unique);
 
-        String urisCondition = "";
-        if (!uris.isEmpty()) {
-            int urisCount = uris.size();
-            String placeholders = String.join(", ", Collections.nCopies(urisCount, "?"));
-            urisCondition = "AND uri IN (" + placeholders + ")";
-        }
+    // первые limit строк в порядке getStatistics; uriPrefix = null - по всем uri
+    Collection<Stats> getTopStatistics(LocalDateTime start,
+                                       LocalDateTime end,
+                                       String uriPrefix,
+                                       int limit,
+                                       boolean unique);
 
-        String query = SQL_SELECT
-                .formatted(
-                    unique ? "COUNT(DISTINCT ip)" : "COUNT(ip)",
-                    urisCondition
-        );
+    // хиты по интервалам bucket, одним проходом; интервалы без хитов в результат не попадают,
+    // порядок - по uri, сервису и началу интервала
+    Collection<SeriesPoint> getSeries(LocalDateTime start,
+                                      LocalDateTime end,
+                                      Collection<String> uris,
+                                      RollupResolution bucket,
+                                      boolean unique);
 
-        Stream<Object> paramsStream = Stream.concat(
-                Stream.of(start, end),
-                uris.stream());
+    // хиты с ip за [start, end) по интервалам unit (SECONDS или MINUTES); интервалы только с хитами
+    // без ip приходят с нулём, интервалы без хитов пропускаются;
+    // для восстановления данных в памяти, порядок строк не определён
+    void scanCounts(LocalDateTime start,
+                    LocalDateTime end,
+                    ChronoUnit unit,
+                    BucketCountHandler handler);
 
-        return jdbcTemplate.query(query, rowMapper, paramsStream.toArray());
+    // строки передаются обработчику по мере чтения, в порядке getStatistics
+    default void streamStatistics(LocalDateTime start,
+                                  LocalDateTime end,
+                                  Collection<String> uris,
+                                  boolean unique,
+                                  StatsRowHandler handler) {
+        for (Stats stats : getStatistics(start, end, uris, unique))
+            handler.accept(stats.getService(), stats.getUri(), stats.getHits());
     }
-}
\ No newline at end of file
+
+    Collection<Stats> getApproximateStatistics(LocalDateTime start,
+                                               LocalDateTime end,
+                                               Collection<String> uris);
+}
@@ -0,0 +1,206 @@
+package ru.practicum.statsserver.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains per-minute/hour/day rollups of the hits table.
+ * Each rollup keeps the number of hits with non-null ip per (service_id, uri_id, bucket)
+ * and the set of distinct ips per bucket, so unique counts stay exact.
+ */
+@Slf4j
+@Repository
+public class HitRollupRepository implements HitIngestListener, SmartInitializingSingleton {
+
+    private static final Comparator<BucketKey> KEY_ORDER = Comparator
+            .comparingInt(BucketKey::serviceId)
+            .thenComparingInt(BucketKey::uriId)
+            .thenComparing(BucketKey::bucket);
+
+    private static final Comparator<BucketIp> IP_ORDER = Comparator
+            .comparing(BucketIp::key, KEY_ORDER)
+            .thenComparing(BucketIp::ip, Arrays::compare);
+
+    private static final String PG_UPSERT_HITS = """
+            INSERT INTO %1$s (service_id, uri_id, bucket, hits)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT (service_id, uri_id, bucket) DO UPDATE SET hits = %1$s.hits + EXCLUDED.hits
+            """;
+
+    private static final String PG_UPSERT_IPS = """
+            INSERT INTO %s (service_id, uri_id, bucket, ip)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT DO NOTHING
+            """;
+
+    private static final String MERGE_HITS = """
+            MERGE INTO %s r
+            USING (VALUES (CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS TIMESTAMP), CAST(? AS BIGINT)))
+                AS v(service_id, uri_id, bucket, hits)
+            ON r.service_id = v.service_id AND r.uri_id = v.uri_id AND r.bucket = v.bucket
+            WHEN MATCHED THEN UPDATE SET hits = r.hits + v.hits
+            WHEN NOT MATCHED THEN INSERT (service_id, uri_id, bucket, hits)
+                VALUES (v.service_id, v.uri_id, v.bucket, v.hits)
+            """;
+
+    private static final String MERGE_IPS = """
+            MERGE INTO %s KEY (service_id, uri_id, bucket, ip)
+            VALUES (?, ?, ?, ?)
+            """;
+
+    private static final String SQL_REBUILD_HITS = """
+            INSERT INTO %s (service_id, uri_id, bucket, hits)
+            SELECT service_id, uri_id, DATE_TRUNC('%s', timestamp), COUNT(ip)
+            FROM hits
+            WHERE timestamp IS NOT NULL
+            GROUP BY service_id, uri_id, DATE_TRUNC('%2$s', timestamp)
+            """;
+
+    private static final String SQL_REBUILD_IPS = """
+            INSERT INTO %s (service_id, uri_id, bucket, ip)
+            SELECT DISTINCT service_id, uri_id, DATE_TRUNC('%s', timestamp), ip
+            FROM hits
+            WHERE timestamp IS NOT NULL AND ip IS NOT NULL
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SqlDialect dialect;
+    private final boolean enabled;
+
+    public HitRollupRepository(JdbcTemplate jdbcTemplate,
+                               TransactionTemplate transactionTemplate,
+                               SqlDialect dialect,
+                               @Value("${stats.rollup.enabled:false}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.dialect = dialect;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void onHits(Collection<HitRecord> hits) {
+        if (!enabled)
+            return;
+
+        for (RollupResolution resolution : RollupResolution.values()) {
+            Map<BucketKey, Long> counts = new TreeMap<>(KEY_ORDER);
+            Set<BucketIp> ips = new TreeSet<>(IP_ORDER);
+
+            for (HitRecord hit : hits) {
+                if (hit.timestamp() == null)
+                    continue;
+
+                BucketKey key = new BucketKey(hit.serviceId(), hit.uriId(), resolution.floor(hit.timestamp()));
+                counts.merge(key, hit.ip() == null ? 0L : 1L, Long::sum);
+                if (hit.ip() != null)
+                    ips.add(new BucketIp(key, hit.ip()));
+            }
+
+            upsertHits(resolution, counts);
+            upsertIps(resolution, ips);
+        }
+    }
+
+    // запись хитов обновляет агрегаты в транзакции вставки в hits: пока таблицы агрегатов заблокированы,
+    // каждая такая транзакция видна пересчёту либо целиком, либо не видна совсем
+    @Transactional
+    public void rebuild() {
+        if (dialect == SqlDialect.POSTGRESQL) {
+            jdbcTemplate.execute("LOCK TABLE " + Arrays.stream(RollupResolution.values())
+                    .map(resolution -> resolution.getTable() + ", " + resolution.getIpTable())
+                    .collect(Collectors.joining(", ")) + " IN SHARE MODE");
+        }
+        for (RollupResolution resolution : RollupResolution.values()) {
+            jdbcTemplate.update("DELETE FROM " + resolution.getTable());
+            jdbcTemplate.update("DELETE FROM " + resolution.getIpTable());
+            jdbcTemplate.update(SQL_REBUILD_HITS.formatted(resolution.getTable(), resolution.getField()));
+            jdbcTemplate.update(SQL_REBUILD_IPS.formatted(resolution.getIpTable(), resolution.getField()));
+        }
+    }
+
+    // интервалы до cutoff, хиты которых удалены по сроку хранения
+    public void purgeBefore(LocalDateTime cutoff) {
+        for (RollupResolution resolution : RollupResolution.values()) {
+            jdbcTemplate.update("DELETE FROM " + resolution.getTable() + " WHERE bucket < ?", cutoff);
+            jdbcTemplate.update("DELETE FROM " + resolution.getIpTable() + " WHERE bucket < ?", cutoff);
+        }
+    }
+
+    // до запуска веб-сервера, пока этот экземпляр ещё не принимает хиты; вызов идёт мимо прокси,
+    // поэтому транзакция открывается явно
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled)
+            return;
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Boolean rollupsEmpty = jdbcTemplate.queryForObject(
+                    "SELECT NOT EXISTS (SELECT 1 FROM " + RollupResolution.DAY.getTable() + ")", Boolean.class);
+            Boolean hitsPresent = jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM hits)", Boolean.class);
+
+            if (Boolean.TRUE.equals(rollupsEmpty) && Boolean.TRUE.equals(hitsPresent)) {
+                log.info("Rollup tables are empty, rebuilding them from hits");
+                rebuild();
+            }
+        });
+    }
+
+    private void upsertHits(RollupResolution resolution, Map<BucketKey, Long> counts) {
+        if (counts.isEmpty())
+            return;
+
+        String sql = (dialect == SqlDialect.POSTGRESQL ? PG_UPSERT_HITS : MERGE_HITS)
+                .formatted(resolution.getTable());
+
+        jdbcTemplate.batchUpdate(sql, new ArrayList<>(counts.entrySet()), counts.size(), (ps, entry) -> {
+            ps.setInt(1, entry.getKey().serviceId());
+            ps.setInt(2, entry.getKey().uriId());
+            ps.setObject(3, entry.getKey().bucket());
+            ps.setLong(4, entry.getValue());
+        });
+    }
+
+    private void upsertIps(RollupResolution resolution, Set<BucketIp> ips) {
+        if (ips.isEmpty())
+            return;
+
+        String sql = (dialect == SqlDialect.POSTGRESQL ? PG_UPSERT_IPS : MERGE_IPS)
+                .formatted(resolution.getIpTable());
+
+        List<BucketIp> rows = new ArrayList<>(ips);
+        jdbcTemplate.batchUpdate(sql, rows, rows.size(), (ps, row) -> {
+            ps.setInt(1, row.key().serviceId());
+            ps.setInt(2, row.key().uriId());
+            ps.setObject(3, row.key().bucket());
+            ps.setBytes(4, row.ip());
+        });
+    }
+
+    private record BucketKey(int serviceId, int uriId, LocalDateTime bucket) {
+    }
+
+    private record BucketIp(BucketKey key, byte[] ip) {
+    }
+}
@@ -0,0 +1,264 @@
+package ru.practicum.statsserver.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps mergeable HyperLogLog registers per (service, uri, bucket) next to the rollups.
+ * Registers are stored sparsely, one row per non-empty register,
+ * so sketches of any set of buckets are merged in SQL with MAX(rnk).
+ */
+@Slf4j
+@Repository
+public class HitSketchRepository implements HitIngestListener, SmartInitializingSingleton {
+
+    private static final Comparator<RegisterKey> KEY_ORDER = Comparator
+            .comparingInt(RegisterKey::serviceId)
+            .thenComparingInt(RegisterKey::uriId)
+            .thenComparing(RegisterKey::bucket)
+            .thenComparingInt(RegisterKey::register);
+
+    private static final Comparator<Stats> STATS_ORDER = Comparator
+            .comparingInt(Stats::getHits).reversed()
+            .thenComparing(Stats::getService)
+            .thenComparing(Stats::getUri);
+
+    private static final int REBUILD_BATCH_SIZE = 10_000;
+
+    private static final String PG_UPSERT = """
+            INSERT INTO %1$s (service_id, uri_id, bucket, reg, rnk)
+            VALUES (?, ?, ?, ?, ?)
+            ON CONFLICT (service_id, uri_id, bucket, reg) DO UPDATE SET rnk = EXCLUDED.rnk
+            WHERE %1$s.rnk < EXCLUDED.rnk
+            """;
+
+    private static final String MERGE = """
+            MERGE INTO %s r
+            USING (VALUES (CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS TIMESTAMP),
+                           CAST(? AS SMALLINT), CAST(? AS SMALLINT)))
+                AS v(service_id, uri_id, bucket, reg, rnk)
+            ON r.service_id = v.service_id AND r.uri_id = v.uri_id AND r.bucket = v.bucket AND r.reg = v.reg
+            WHEN MATCHED AND r.rnk < v.rnk THEN UPDATE SET rnk = v.rnk
+            WHEN NOT MATCHED THEN INSERT (service_id, uri_id, bucket, reg, rnk)
+                VALUES (v.service_id, v.uri_id, v.bucket, v.reg, v.rnk)
+            """;
+
+    private static final String SQL_SPAN_REGISTERS = """
+            SELECT service_id, uri_id, reg, rnk
+            FROM %s
+            WHERE bucket >= ? AND bucket < ? %s
+            UNION ALL
+            SELECT service_id, uri_id, -1, 0
+            FROM %s
+            WHERE bucket >= ? AND bucket < ? %s
+            """;
+
+    private static final String SQL_REGISTERS = """
+            SELECT s.name AS service, u.name AS uri, r.reg, r.rnk
+            FROM (
+                SELECT service_id, uri_id, reg, MAX(rnk) AS rnk
+                FROM (
+                %s
+                ) spans
+                GROUP BY service_id, uri_id, reg
+            ) r
+            JOIN services s ON s.id = r.service_id
+            JOIN uris u ON u.id = r.uri_id
+            """;
+
+    private static final String SQL_RAW_IPS = """
+            SELECT s.name AS service, u.name AS uri, h.ip
+            FROM hits h
+            JOIN services s ON s.id = h.service_id
+            JOIN uris u ON u.id = h.uri_id
+            WHERE h.timestamp >= ? AND h.timestamp %s ? %s
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SqlDialect dialect;
+    private final HitDictionary dictionary;
+    private final QueryLaneJdbc queryLane;
+    private final boolean enabled;
+
+    public HitSketchRepository(JdbcTemplate jdbcTemplate,
+                               TransactionTemplate transactionTemplate,
+                               SqlDialect dialect,
+                               HitDictionary dictionary,
+                               QueryLaneJdbc queryLane,
+                               @Value("${stats.rollup.enabled:false}") boolean rollupEnabled,
+                               @Value("${stats.rollup.sketch.enabled:false}") boolean sketchEnabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.dialect = dialect;
+        this.dictionary = dictionary;
+        this.queryLane = queryLane;
+        this.enabled = rollupEnabled && sketchEnabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void onHits(Collection<HitRecord> hits) {
+        if (!enabled)
+            return;
+
+        for (RollupResolution resolution : RollupResolution.values()) {
+            Map<RegisterKey, Integer> ranks = new TreeMap<>(KEY_ORDER);
+            for (HitRecord hit : hits) {
+                if (hit.timestamp() == null || hit.ip() == null)
+                    continue;
+
+                long hash = HyperLogLog.hash(hit.ip());
+                RegisterKey key = new RegisterKey(hit.serviceId(), hit.uriId(),
+                        resolution.floor(hit.timestamp()), HyperLogLog.register(hash));
+                ranks.merge(key, HyperLogLog.rank(hash), Math::max);
+            }
+            upsert(resolution, ranks);
+        }
+    }
+
+    public Collection<Stats> getStatistics(LocalDateTime start, LocalDateTime end, Collection<String> uris) {
+        List<Object> uriParams = List.of();
+        String urisCondition = "";
+        if (!uris.isEmpty()) {
+            Collection<Integer> uriIds = dictionary.find(HitDictionary.Kind.URI, uris).values();
+            if (uriIds.isEmpty())
+                return List.of();
+            uriParams = List.of(HitDictionary.idArray(uriIds));
+            urisCondition = "AND uri_id = ANY(?)";
+        }
+
+        List<String> registerQueries = new ArrayList<>();
+        List<Object> registerParams = new ArrayList<>();
+        List<String> rawQueries = new ArrayList<>();
+        List<Object> rawParams = new ArrayList<>();
+
+        for (TimeSpan span : RollupPlanner.plan(start, end)) {
+            if (span.isRaw()) {
+                rawQueries.add(SQL_RAW_IPS.formatted(span.toInclusive() ? "<=" : "<",
+                        urisCondition.replace("uri_id", "h.uri_id")));
+                addSpanParams(rawParams, span, uriParams);
+            } else {
+                RollupResolution resolution = span.resolution();
+                registerQueries.add(SQL_SPAN_REGISTERS.formatted(
+                        resolution.getHllTable(), urisCondition,
+                        resolution.getTable(), urisCondition));
+                addSpanParams(registerParams, span, uriParams);
+                addSpanParams(registerParams, span, uriParams);
+            }
+        }
+
+        Map<StatsKey, HyperLogLog> sketches = new HashMap<>();
+
+        if (!registerQueries.isEmpty()) {
+            String query = SQL_REGISTERS.formatted(String.join("UNION ALL\n", registerQueries));
+            queryLane.getJdbcTemplate().query(query, rs -> {
+                HyperLogLog sketch = sketches.computeIfAbsent(
+                        new StatsKey(rs.getString("service"), rs.getString("uri")), key -> new HyperLogLog());
+                int register = rs.getInt("reg");
+                if (register >= 0)
+                    sketch.merge(register, rs.getInt("rnk"));
+            }, registerParams.toArray());
+        }
+
+        if (!rawQueries.isEmpty()) {
+            queryLane.getJdbcTemplate().query(String.join("UNION ALL\n", rawQueries), rs -> {
+                HyperLogLog sketch = sketches.computeIfAbsent(
+                        new StatsKey(rs.getString("service"), rs.getString("uri")), key -> new HyperLogLog());
+                byte[] ip = rs.getBytes("ip");
+                if (ip != null)
+                    sketch.add(HyperLogLog.hash(ip));
+            }, rawParams.toArray());
+        }
+
+        return sketches.entrySet().stream()
+                .map(entry -> {
+                    Stats stats = new Stats();
+                    stats.setService(entry.getKey().service());
+                    stats.setUri(entry.getKey().uri());
+                    stats.setHits((int) entry.getValue().estimate());
+                    return stats;
+                })
+                .sorted(STATS_ORDER)
+                .toList();
+    }
+
+    // скетчи интервалов до cutoff, хиты которых удалены по сроку хранения
+    public void purgeBefore(LocalDateTime cutoff) {
+        for (RollupResolution resolution : RollupResolution.values())
+            jdbcTemplate.update("DELETE FROM " + resolution.getHllTable() + " WHERE bucket < ?", cutoff);
+    }
+
+    // до запуска веб-сервера, пока этот экземпляр ещё не принимает хиты; одной транзакцией,
+    // чтобы прерванный пересчёт не оставил частично заполненные скетчи
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled)
+            return;
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Boolean sketchesEmpty = jdbcTemplate.queryForObject(
+                    "SELECT NOT EXISTS (SELECT 1 FROM " + RollupResolution.DAY.getHllTable() + ")", Boolean.class);
+            if (Boolean.TRUE.equals(sketchesEmpty))
+                rebuild();
+        });
+    }
+
+    private void rebuild() {
+        log.info("Sketch tables are empty, rebuilding them from hits");
+        List<HitRecord> batch = new ArrayList<>(REBUILD_BATCH_SIZE);
+        jdbcTemplate.query("SELECT service_id, uri_id, ip, timestamp FROM hits WHERE ip IS NOT NULL", rs -> {
+            batch.add(new HitRecord(rs.getInt("service_id"), rs.getInt("uri_id"), rs.getBytes("ip"),
+                    rs.getObject("timestamp", LocalDateTime.class)));
+            if (batch.size() == REBUILD_BATCH_SIZE) {
+                onHits(batch);
+                batch.clear();
+            }
+        });
+        onHits(batch);
+    }
+
+    private void upsert(RollupResolution resolution, Map<RegisterKey, Integer> ranks) {
+        if (ranks.isEmpty())
+            return;
+
+        String sql = (dialect == SqlDialect.POSTGRESQL ? PG_UPSERT : MERGE).formatted(resolution.getHllTable());
+        jdbcTemplate.batchUpdate(sql, new ArrayList<>(ranks.entrySet()), ranks.size(), (ps, entry) -> {
+            ps.setInt(1, entry.getKey().serviceId());
+            ps.setInt(2, entry.getKey().uriId());
+            ps.setObject(3, entry.getKey().bucket());
+            ps.setInt(4, entry.getKey().register());
+            ps.setInt(5, entry.getValue());
+        });
+    }
+
+    private void addSpanParams(List<Object> params, TimeSpan span, List<Object> uriParams) {
+        params.add(span.from());
+        params.add(span.to());
+        params.addAll(uriParams);
+    }
+
+    private record RegisterKey(int serviceId, int uriId, LocalDateTime bucket, int register) {
+    }
+
+    private record StatsKey(String service, String uri) {
+    }
+}
@@ -0,0 +1,375 @@
+package ru.practicum.statsserver.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.statsserver.model.HitBounds;
+import ru.practicum.statsserver.model.Stats;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Maintains all-time counters per (service_id, uri_id): the number of hits with non-null ip,
+ * the time bounds of all hits and the exact set of distinct ips.
+ * A query whose range covers every hit of the requested uris is answered from the counters
+ * with an indexed lookup instead of a scan of the hits table.
+ * <p>
+ * Write transactions only append per-batch increments to hits_totals_delta, so concurrent writers
+ * of a popular uri do not queue on its hits_totals row. {@link #compact()} folds the increments
+ * into hits_totals in short transactions of its own; queries read both tables and stay exact.
+ */
+@Slf4j
+@Repository
+public class HitTotalsRepository implements HitIngestListener, SmartInitializingSingleton {
+
+    private static final Comparator<TotalKey> KEY_ORDER = Comparator
+            .comparingInt(TotalKey::uriId)
+            .thenComparingInt(TotalKey::serviceId);
+
+    private static final Comparator<TotalIp> IP_ORDER = Comparator
+            .comparing(TotalIp::key, KEY_ORDER)
+            .thenComparing(TotalIp::ip, Arrays::compare);
+
+    private static final String PG_UPSERT_TOTALS = """
+            INSERT INTO hits_totals (uri_id, service_id, hits, min_timestamp, max_timestamp)
+            VALUES (?, ?, ?, ?, ?)
+            ON CONFLICT (uri_id, service_id) DO UPDATE SET
+                hits = hits_totals.hits + EXCLUDED.hits,
+                min_timestamp = LEAST(hits_totals.min_timestamp, EXCLUDED.min_timestamp),
+                max_timestamp = GREATEST(hits_totals.max_timestamp, EXCLUDED.max_timestamp)
+            """;
+
+    private static final String PG_UPSERT_IPS = """
+            INSERT INTO hits_totals_ips (uri_id, service_id, ip)
+            VALUES (?, ?, ?)
+            ON CONFLICT DO NOTHING
+            """;
+
+    private static final String MERGE_TOTALS = """
+            MERGE INTO hits_totals t
+            USING (VALUES (CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS BIGINT),
+                           CAST(? AS TIMESTAMP), CAST(? AS TIMESTAMP)))
+                AS v(uri_id, service_id, hits, min_timestamp, max_timestamp)
+            ON t.uri_id = v.uri_id AND t.service_id = v.service_id
+            WHEN MATCHED THEN UPDATE SET
+                hits = t.hits + v.hits,
+                min_timestamp = LEAST(t.min_timestamp, v.min_timestamp),
+                max_timestamp = GREATEST(t.max_timestamp, v.max_timestamp)
+            WHEN NOT MATCHED THEN INSERT (uri_id, service_id, hits, min_timestamp, max_timestamp)
+                VALUES (v.uri_id, v.service_id, v.hits, v.min_timestamp, v.max_timestamp)
+            """;
+
+    private static final String MERGE_IPS = """
+            MERGE INTO hits_totals_ips KEY (uri_id, service_id, ip)
+            VALUES (?, ?, ?)
+            """;
+
+    private static final String SQL_INSERT_DELTA = """
+            INSERT INTO hits_totals_delta (uri_id, service_id, hits, min_timestamp, max_timestamp)
+            VALUES (?, ?, ?, ?, ?)
+            """;
+
+    // второй экземпляр сервиса пропускает строки, которые уже переносит первый
+    private static final String SQL_PENDING_DELTA = """
+            SELECT id, uri_id, service_id, hits, min_timestamp, max_timestamp
+            FROM hits_totals_delta
+            ORDER BY id
+            LIMIT ?
+            FOR UPDATE%s
+            """;
+
+    private static final String SQL_REBUILD_TOTALS = """
+            INSERT INTO hits_totals (uri_id, service_id, hits, min_timestamp, max_timestamp)
+            SELECT uri_id, service_id, COUNT(ip), MIN(timestamp), MAX(timestamp)
+            FROM hits
+            GROUP BY uri_id, service_id
+            """;
+
+    private static final String SQL_REBUILD_IPS = """
+            INSERT INTO hits_totals_ips (uri_id, service_id, ip)
+            SELECT DISTINCT uri_id, service_id, ip
+            FROM hits
+            WHERE ip IS NOT NULL
+            """;
+
+    // счётчики вместе с ещё не перенесёнными приращениями
+    private static final String SQL_CURRENT_TOTALS = """
+            SELECT uri_id, service_id, SUM(hits) AS hits,
+                   MIN(min_timestamp) AS min_timestamp, MAX(max_timestamp) AS max_timestamp
+            FROM (
+                SELECT uri_id, service_id, hits, min_timestamp, max_timestamp
+                FROM hits_totals
+                WHERE 1 = 1 %1$s
+                UNION ALL
+                SELECT uri_id, service_id, hits, min_timestamp, max_timestamp
+                FROM hits_totals_delta
+                WHERE 1 = 1 %1$s
+            ) parts
+            GROUP BY uri_id, service_id
+            """;
+
+    // дешёвая проверка покрытия до подсчёта: большинство диапазонов покрывает не все хиты
+    private static final String SQL_BOUNDS = """
+            SELECT MIN(min_timestamp) AS min_timestamp, MAX(max_timestamp) AS max_timestamp
+            FROM (%s) t
+            """;
+
+    // границы времени читаются и вместе со счётчиками: хиты вне диапазона, записанные
+    // после проверки, видны по строкам результата
+    private static final String SQL_TOTALS = """
+            SELECT s.name AS service, u.name AS uri, t.hits AS hits_count, t.min_timestamp, t.max_timestamp
+            FROM (%s) t
+            JOIN services s ON s.id = t.service_id
+            JOIN uris u ON u.id = t.uri_id
+            ORDER BY hits_count DESC, s.name, u.name
+            """;
+
+    private static final String SQL_UNIQUE_TOTALS = """
+            SELECT s.name AS service, u.name AS uri, agg.hits_count, agg.min_timestamp, agg.max_timestamp
+            FROM (
+                SELECT t.uri_id, t.service_id, t.min_timestamp, t.max_timestamp, COUNT(i.ip) AS hits_count
+                FROM (%s) t
+                LEFT JOIN hits_totals_ips i ON i.uri_id = t.uri_id AND i.service_id = t.service_id
+                GROUP BY t.uri_id, t.service_id, t.min_timestamp, t.max_timestamp
+            ) agg
+            JOIN services s ON s.id = agg.service_id
+            JOIN uris u ON u.id = agg.uri_id
+            ORDER BY agg.hits_count DESC, s.name, u.name
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SqlDialect dialect;
+    private final QueryLaneJdbc queryLane;
+    private final boolean enabled;
+    private final int compactBatch;
+
+    public HitTotalsRepository(JdbcTemplate jdbcTemplate,
+                               TransactionTemplate transactionTemplate,
+                               SqlDialect dialect,
+                               QueryLaneJdbc queryLane,
+                               @Value("${stats.totals.enabled:false}") boolean enabled,
+                               @Value("${stats.totals.compact-batch:10000}") int compactBatch) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.dialect = dialect;
+        this.queryLane = queryLane;
+        this.enabled = enabled;
+        this.compactBatch = compactBatch;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void onHits(Collection<HitRecord> hits) {
+        if (!enabled)
+            return;
+
+        Map<TotalKey, Total> totals = new TreeMap<>(KEY_ORDER);
+        Set<TotalIp> ips = new TreeSet<>(IP_ORDER);
+        for (HitRecord hit : hits) {
+            if (hit.timestamp() == null)
+                continue;
+
+            TotalKey key = new TotalKey(hit.serviceId(), hit.uriId());
+            totals.merge(key, new Total(hit.ip() == null ? 0 : 1, hit.timestamp(), hit.timestamp()), Total::plus);
+            if (hit.ip() != null)
+                ips.add(new TotalIp(key, hit.ip()));
+        }
+
+        insertDelta(totals);
+        upsertIps(ips);
+    }
+
+    /**
+     * Returns the time of the first and the last hit of the uris matching {@code urisCondition}
+     * or null when they have no hits.
+     */
+    public HitBounds findBounds(List<Object> uriParams, String urisCondition) {
+        String current = SQL_CURRENT_TOTALS.formatted(urisCondition);
+        Object[] params = Stream.concat(uriParams.stream(), uriParams.stream()).toArray();
+
+        HitBounds bounds = queryLane.getJdbcTemplate().queryForObject(SQL_BOUNDS.formatted(current),
+                (rs, rowNum) -> new HitBounds(
+                        rs.getObject("min_timestamp", LocalDateTime.class),
+                        rs.getObject("max_timestamp", LocalDateTime.class)),
+                params);
+        return bounds == null || bounds.getFirst() == null ? null : bounds;
+    }
+
+    /**
+     * Returns all-time stats of the uris matching {@code urisCondition}
+     * or null when [start, end] does not cover all their hits and the hits table must be queried.
+     */
+    public List<Stats> findCovering(LocalDateTime start,
+                                    LocalDateTime end,
+                                    List<Object> uriParams,
+                                    String urisCondition,
+                                    boolean unique) {
+        HitBounds bounds = findBounds(uriParams, urisCondition);
+        if (bounds == null)
+            return List.of();
+        if (bounds.getFirst().isBefore(start) || bounds.getLast().isAfter(end))
+            return null;
+
+        String current = SQL_CURRENT_TOTALS.formatted(urisCondition);
+        Object[] params = Stream.concat(uriParams.stream(), uriParams.stream()).toArray();
+
+        String sql = (unique ? SQL_UNIQUE_TOTALS : SQL_TOTALS).formatted(current);
+        List<CoveredStats> rows = queryLane.getJdbcTemplate().query(sql, (rs, rowNum) -> {
+            Stats stats = new Stats();
+            stats.setService(rs.getString("service"));
+            stats.setUri(rs.getString("uri"));
+            stats.setHits(rs.getInt("hits_count"));
+            return new CoveredStats(stats,
+                    rs.getObject("min_timestamp", LocalDateTime.class),
+                    rs.getObject("max_timestamp", LocalDateTime.class));
+        }, params);
+
+        List<Stats> result = new ArrayList<>(rows.size());
+        for (CoveredStats row : rows) {
+            if (row.minTimestamp().isBefore(start) || row.maxTimestamp().isAfter(end))
+                return null;
+            result.add(row.stats());
+        }
+        return result;
+    }
+
+    // переносит приращения в hits_totals транзакциями не больше compactBatch строк
+    @Scheduled(fixedDelayString = "${stats.totals.compact-interval:10s}")
+    public void compact() {
+        if (!enabled)
+            return;
+
+        Integer moved;
+        do {
+            moved = transactionTemplate.execute(status -> compactNext());
+        } while (moved != null && moved == compactBatch);
+    }
+
+    // запись хитов кладёт приращение и ip в транзакции вставки в hits: пока таблицы приращений и ip
+    // заблокированы, каждая такая транзакция видна пересчёту либо целиком, либо не видна совсем
+    @Transactional
+    public void rebuild() {
+        if (dialect == SqlDialect.POSTGRESQL)
+            jdbcTemplate.execute("LOCK TABLE hits_totals_delta, hits_totals_ips IN SHARE MODE");
+        jdbcTemplate.update("DELETE FROM hits_totals");
+        jdbcTemplate.update("DELETE FROM hits_totals_delta");
+        jdbcTemplate.update("DELETE FROM hits_totals_ips");
+        jdbcTemplate.update(SQL_REBUILD_TOTALS);
+        jdbcTemplate.update(SQL_REBUILD_IPS);
+    }
+
+    // до запуска веб-сервера, пока этот экземпляр ещё не принимает хиты; вызов идёт мимо прокси,
+    // поэтому транзакция открывается явно
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled)
+            return;
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Boolean totalsEmpty = jdbcTemplate.queryForObject(
+                    "SELECT NOT EXISTS (SELECT 1 FROM hits_totals) AND NOT EXISTS (SELECT 1 FROM hits_totals_delta)",
+                    Boolean.class);
+            Boolean hitsPresent = jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM hits)", Boolean.class);
+
+            if (Boolean.TRUE.equals(totalsEmpty) && Boolean.TRUE.equals(hitsPresent)) {
+                log.info("Totals table is empty, rebuilding it from hits");
+                rebuild();
+            }
+        });
+    }
+
+    private int compactNext() {
+        List<Long> ids = new ArrayList<>();
+        Map<TotalKey, Total> totals = new TreeMap<>(KEY_ORDER);
+        String skipLocked = dialect == SqlDialect.POSTGRESQL ? " SKIP LOCKED" : "";
+        jdbcTemplate.query(SQL_PENDING_DELTA.formatted(skipLocked), (RowCallbackHandler) rs -> {
+            ids.add(rs.getLong("id"));
+            totals.merge(new TotalKey(rs.getInt("service_id"), rs.getInt("uri_id")),
+                    new Total(rs.getLong("hits"),
+                            rs.getObject("min_timestamp", LocalDateTime.class),
+                            rs.getObject("max_timestamp", LocalDateTime.class)),
+                    Total::plus);
+        }, compactBatch);
+        if (ids.isEmpty())
+            return 0;
+
+        upsertTotals(totals);
+        jdbcTemplate.batchUpdate("DELETE FROM hits_totals_delta WHERE id = ?", ids, ids.size(),
+                (ps, id) -> ps.setLong(1, id));
+        return ids.size();
+    }
+
+    private void insertDelta(Map<TotalKey, Total> totals) {
+        if (totals.isEmpty())
+            return;
+
+        batchTotals(SQL_INSERT_DELTA, totals);
+    }
+
+    private void upsertTotals(Map<TotalKey, Total> totals) {
+        batchTotals(dialect == SqlDialect.POSTGRESQL ? PG_UPSERT_TOTALS : MERGE_TOTALS, totals);
+    }
+
+    // строки идут в порядке ключа, чтобы параллельные переносы не блокировали друг друга
+    private void batchTotals(String sql, Map<TotalKey, Total> totals) {
+        jdbcTemplate.batchUpdate(sql, new ArrayList<>(totals.entrySet()), totals.size(), (ps, entry) -> {
+            ps.setInt(1, entry.getKey().uriId());
+            ps.setInt(2, entry.getKey().serviceId());
+            ps.setLong(3, entry.getValue().hits());
+            ps.setObject(4, entry.getValue().minTimestamp());
+            ps.setObject(5, entry.getValue().maxTimestamp());
+        });
+    }
+
+    private void upsertIps(Set<TotalIp> ips) {
+        if (ips.isEmpty())
+            return;
+
+        String sql = dialect == SqlDialect.POSTGRESQL ? PG_UPSERT_IPS : MERGE_IPS;
+        List<TotalIp> rows = new ArrayList<>(ips);
+        jdbcTemplate.batchUpdate(sql, rows, rows.size(), (ps, row) -> {
+            ps.setInt(1, row.key().uriId());
+            ps.setInt(2, row.key().serviceId());
+            ps.setBytes(3, row.ip());
+        });
+    }
+
+    private record TotalKey(int serviceId, int uriId) {
+    }
+
+    private record TotalIp(TotalKey key, byte[] ip) {
+    }
+
+    private record Total(long hits, LocalDateTime minTimestamp, LocalDateTime maxTimestamp) {
+
+        Total plus(Total other) {
+            return new Total(hits + other.hits,
+                    minTimestamp.isBefore(other.minTimestamp) ? minTimestamp : other.minTimestamp,
+                    maxTimestamp.isAfter(other.maxTimestamp) ? maxTimestamp : other.maxTimestamp);
+        }
+    }
+
+    private record CoveredStats(Stats stats, LocalDateTime minTimestamp, LocalDateTime maxTimestamp) {
+    }
+}
@@ -0,0 +1,74 @@
+package ru.practicum.statsserver.repository;
+
+import lombok.experimental.UtilityClass;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Packs ip strings into 16 bytes, IPv4 addresses are stored as IPv4-mapped IPv6.
+ * Values that are not ip literals are kept as their UTF-8 bytes.
+ */
+@UtilityClass
+public class IpCodec {
+
+    public static final int ADDRESS_LENGTH = 16;
+
+    public byte[] encode(String ip) {
+        if (ip == null)
+            return null;
+
+        byte[] address = parseIpv4(ip);
+        if (address == null && ip.indexOf(':') >= 0)
+            address = parseIpv6(ip);
+        if (address == null)
+            return ip.getBytes(StandardCharsets.UTF_8);
+
+        return address.length == ADDRESS_LENGTH ? address : toMapped(address);
+    }
+
+    // разбираем вручную: InetAddress.getByName для не-литералов пошёл бы в DNS
+    private byte[] parseIpv4(String ip) {
+        byte[] address = new byte[4];
+        int octet = 0;
+        int value = -1;
+
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255)
+                    return null;
+            } else if (c == '.' && value >= 0 && octet < 3) {
+                address[octet++] = (byte) value;
+                value = -1;
+            } else {
+                return null;
+            }
+        }
+        if (octet != 3 || value < 0)
+            return null;
+
+        address[3] = (byte) value;
+        return address;
+    }
+
+    // в квадратных скобках строка разбирается только как IPv6-литерал, без обращения к DNS
+    private byte[] parseIpv6(String ip) {
+        String literal = ip.startsWith("[") ? ip : "[" + ip + "]";
+        try {
+            return InetAddress.getByName(literal).getAddress();
+        } catch (UnknownHostException | SecurityException e) {
+            return null;
+        }
+    }
+
+    private byte[] toMapped(byte[] ipv4) {
+        byte[] address = new byte[ADDRESS_LENGTH];
+        address[10] = (byte) 0xff;
+        address[11] = (byte) 0xff;
+        System.arraycopy(ipv4, 0, address, 12, 4);
+        return address;
+    }
+}
@@ -0,0 +1,593 @@
+package ru.practicum.statsserver.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.statsserver.model.Hit;
+import ru.practicum.statsserver.model.HitBounds;
+import ru.practicum.statsserver.model.SeriesPoint;
+import ru.practicum.statsserver.model.Stats;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Repository("hitRepository")
+@ConditionalOnProperty(name = "stats.storage.engine", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class JdbcHitRepository implements HitRepository {
+
+    protected final JdbcTemplate jdbcTemplate;
+    protected final RowMapper<Stats> rowMapper;
+    protected final HitRollupRepository rollupRepository;
+    protected final HitSketchRepository sketchRepository;
+    protected final HitTotalsRepository totalsRepository;
+    protected final List<HitIngestListener> ingestListeners;
+    protected final HitCopyLoader copyLoader;
+    protected final HitDictionary dictionary;
+    protected final SqlDialect dialect;
+    // чтения статистики идут через пул запросов, записи - через jdbcTemplate пула записи
+    protected final QueryLaneJdbc queryLane;
+
+    @Value("${stats.hit.batch.jdbc-batch-size:500}")
+    private int jdbcBatchSize;
+
+    @Value("${stats.query.fetch-size:1000}")
+    private int streamFetchSize;
+
+    @Value("${stats.hit.copy.threshold:200}")
+    private int copyThreshold;
+
+    @Value("${stats.hit.copy.chunk-size:50000}")
+    private int copyChunkSize;
+
+    private static final String SQL_INSERT = """
+            INSERT INTO hits (service_id, uri_id, ip, timestamp)
+            VALUES (?, ?, ?, ?);
+            """;
+
+    // агрегаты считаются по id, имена подставляются из справочников уже после группировки
+    private static final String SQL_NAMED = """
+                SELECT s.name AS service, u.name AS uri, agg.hits_count
+                FROM (
+                %s
+                ) agg
+                JOIN services s ON s.id = agg.service_id
+                JOIN uris u ON u.id = agg.uri_id
+                ORDER BY agg.hits_count DESC, s.name, u.name
+                """;
+
+    private static final String SQL_SELECT = """
+                SELECT service_id, uri_id, %s as hits_count
+                FROM hits
+                WHERE timestamp BETWEEN ? AND ?
+                %s
+                GROUP BY service_id, uri_id
+                """;
+
+    private static final String SQL_BOUNDS = """
+                SELECT MIN(timestamp) AS first_timestamp, MAX(timestamp) AS last_timestamp
+                FROM hits
+                WHERE timestamp BETWEEN ? AND ?
+                %s
+                """;
+
+    private static final String SQL_SELECT_SPANS = """
+                SELECT service_id, uri_id, %s as hits_count
+                FROM (
+                %s
+                ) spans
+                GROUP BY service_id, uri_id
+                """;
+
+    private static final String SQL_RAW_HITS = """
+                SELECT service_id, uri_id, COUNT(ip) as hits
+                FROM hits
+                WHERE timestamp >= ? AND timestamp %s ? %s
+                GROUP BY service_id, uri_id
+                """;
+
+    private static final String SQL_ROLLUP_HITS = """
+                SELECT service_id, uri_id, hits
+                FROM %s
+                WHERE bucket >= ? AND bucket < ? %s
+                """;
+
+    private static final String SQL_RAW_IPS = """
+                SELECT service_id, uri_id, ip
+                FROM hits
+                WHERE timestamp >= ? AND timestamp %s ? %s
+                """;
+
+    // вторая часть нужна, чтобы в результат попадали uri, у которых есть только хиты без ip
+    private static final String SQL_ROLLUP_IPS = """
+                SELECT service_id, uri_id, ip
+                FROM %s
+                WHERE bucket >= ? AND bucket < ? %s
+                UNION ALL
+                SELECT service_id, uri_id, CAST(NULL AS BYTEA)
+                FROM %s
+                WHERE bucket >= ? AND bucket < ? %s
+                """;
+
+    private static final String SQL_GROUP = """
+                SELECT s.name AS service, agg.hits_count
+                FROM (
+                    SELECT service_id, %s as hits_count
+                    FROM (
+                    %s
+                    ) spans
+                    GROUP BY service_id
+                ) agg
+                JOIN services s ON s.id = agg.service_id
+                ORDER BY agg.hits_count DESC, s.name
+                """;
+
+    private static final String SQL_SERIES_NAMED = """
+                SELECT s.name AS service, u.name AS uri, agg.bucket, agg.hits_count
+                FROM (
+                %s
+                ) agg
+                JOIN services s ON s.id = agg.service_id
+                JOIN uris u ON u.id = agg.uri_id
+                ORDER BY u.name, s.name, agg.bucket
+                """;
+
+    private static final String SQL_SERIES = """
+                SELECT service_id, uri_id, DATE_TRUNC('%1$s', timestamp) AS bucket, %2$s as hits_count
+                FROM hits
+                WHERE timestamp BETWEEN ? AND ?
+                %3$s
+                GROUP BY service_id, uri_id, DATE_TRUNC('%1$s', timestamp)
+                """;
+
+    private static final String SQL_SERIES_SPANS = """
+                SELECT service_id, uri_id, bucket, %s as hits_count
+                FROM (
+                %s
+                ) spans
+                GROUP BY service_id, uri_id, bucket
+                """;
+
+    private static final String SQL_SERIES_RAW_HITS = """
+                SELECT service_id, uri_id, DATE_TRUNC('%1$s', timestamp) AS bucket, COUNT(ip) as hits
+                FROM hits
+                WHERE timestamp >= ? AND timestamp %2$s ? %3$s
+                GROUP BY service_id, uri_id, DATE_TRUNC('%1$s', timestamp)
+                """;
+
+    private static final String SQL_SERIES_RAW_IPS = """
+                SELECT service_id, uri_id, DATE_TRUNC('%s', timestamp) AS bucket, ip
+                FROM hits
+                WHERE timestamp >= ? AND timestamp %s ? %s
+                """;
+
+    private static final String SQL_SERIES_ROLLUP_HITS = """
+                SELECT service_id, uri_id, bucket, hits
+                FROM %s
+                WHERE bucket >= ? AND bucket < ? %s
+                """;
+
+    private static final String SQL_SERIES_ROLLUP_IPS = """
+                SELECT service_id, uri_id, bucket, ip
+                FROM %s
+                WHERE bucket >= ? AND bucket < ? %s
+                UNION ALL
+                SELECT service_id, uri_id, bucket, CAST(NULL AS BYTEA)
+                FROM %s
+                WHERE bucket >= ? AND bucket < ? %s
+                """;
+
+    private static final String SQL_BUCKET_COUNTS = """
+                SELECT s.name AS service, u.name AS uri, agg.bucket, agg.hits
+                FROM (
+                    SELECT service_id, uri_id, DATE_TRUNC('%1$s', timestamp) AS bucket, COUNT(ip) AS hits
+                    FROM hits
+                    WHERE timestamp >= ? AND timestamp < ?
+                    GROUP BY service_id, uri_id, DATE_TRUNC('%1$s', timestamp)
+                ) agg
+                JOIN services s ON s.id = agg.service_id
+                JOIN uris u ON u.id = agg.uri_id
+                """;
+
+    private static final RowMapper<SeriesPoint> SERIES_ROW_MAPPER = (rs, rowNum) -> new SeriesPoint(
+            rs.getString("service"),
+            rs.getString("uri"),
+            rs.getObject("bucket", LocalDateTime.class),
+            rs.getInt("hits_count"));
+
+    @Override
+    @Transactional
+    public void save(Hit hit) {
+        List<HitRecord> records = dictionary.encode(List.of(hit));
+        HitRecord record = records.getFirst();
+        jdbcTemplate.update(SQL_INSERT,
+                record.serviceId(),
+                record.uriId(),
+                record.ip(),
+                record.timestamp()
+        );
+        notifyListeners(records);
+    }
+
+    @Override
+    @Transactional
+    public void saveAll(Collection<Hit> hits) {
+        if (hits.isEmpty())
+            return;
+
+        List<HitRecord> records = dictionary.encode(hits);
+        if (copyLoader.isSupported() && records.size() >= copyThreshold)
+            copyLoader.copy(records);
+        else
+            insertBatch(records);
+
+        notifyListeners(records);
+    }
+
+    // хиты читаются из источника частями, в памяти держится не больше одной части
+    @Override
+    @Transactional
+    public long importHits(Iterator<Hit> hits) {
+        long imported = 0;
+        List<Hit> chunk = new ArrayList<>();
+
+        while (hits.hasNext()) {
+            chunk.add(hits.next());
+            if (chunk.size() == copyChunkSize) {
+                imported += importChunk(chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty())
+            imported += importChunk(chunk);
+
+        return imported;
+    }
+
+    @Override
+    public Collection<Stats> getStatistics(LocalDateTime start,
+                                           LocalDateTime end,
+                                           Collection<String> uris,
+                                           boolean unique) {
+        UriFilter filter = uriFilter(uris);
+        if (filter == null)
+            return List.of();
+
+        // диапазон, покрывающий все хиты запрошенных uri, - это счётчики за всё время
+        if (totalsRepository.isEnabled()) {
+            List<Stats> totals = totalsRepository.findCovering(start, end, filter.params(), filter.condition(), unique);
+            if (totals != null)
+                return totals;
+        }
+
+        StatsQuery query = buildStatisticsQuery(start, end, filter.params(), filter.condition(), unique);
+        return queryLane.getJdbcTemplate().query(query.sql(), rowMapper, query.params());
+    }
+
+    // счётчики за всё время хранят границы каждого uri: с ними таблицу хитов читать не нужно
+    @Override
+    public HitBounds getBounds(LocalDateTime start,
+                               LocalDateTime end,
+                               Collection<String> uris) {
+        UriFilter filter = uriFilter(uris);
+        if (filter == null)
+            return null;
+
+        HitBounds bounds;
+        if (totalsRepository.isEnabled()) {
+            bounds = totalsRepository.findBounds(filter.params(), filter.condition());
+        } else {
+            Object[] params = Stream.concat(Stream.of(start, end), filter.params().stream()).toArray();
+            bounds = queryLane.getJdbcTemplate().queryForObject(SQL_BOUNDS.formatted(filter.condition()),
+                    (rs, rowNum) -> new HitBounds(
+                            rs.getObject("first_timestamp", LocalDateTime.class),
+                            rs.getObject("last_timestamp", LocalDateTime.class)),
+                    params);
+        }
+        if (bounds == null || bounds.getFirst() == null
+                || bounds.getFirst().isAfter(end) || bounds.getLast().isBefore(start))
+            return null;
+
+        return new HitBounds(
+                bounds.getFirst().isBefore(start) ? start : bounds.getFirst(),
+                bounds.getLast().isAfter(end) ? end : bounds.getLast());
+    }
+
+    // строки читаются курсором частями по fetch-size и сразу передаются обработчику;
+    // курсор PostgreSQL работает только внутри транзакции
+    @Override
+    public void streamStatistics(LocalDateTime start,
+                                 LocalDateTime end,
+                                 Collection<String> uris,
+                                 boolean unique,
+                                 StatsRowHandler handler) {
+        UriFilter filter = uriFilter(uris);
+        if (filter == null)
+            return;
+
+        StatsQuery query = buildStatisticsQuery(start, end, filter.params(), filter.condition(), unique);
+
+        queryLane.getTransactionTemplate().executeWithoutResult(status -> queryLane.getJdbcTemplate().query(
+                connection -> {
+                    PreparedStatement ps = connection.prepareStatement(query.sql(),
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(streamFetchSize);
+                    new ArgumentPreparedStatementSetter(query.params()).setValues(ps);
+                    return ps;
+                }, (RowCallbackHandler) rs -> handler.accept(
+                        rs.getString("service"), rs.getString("uri"), rs.getLong("hits_count"))));
+    }
+
+    @Override
+    public void scanCounts(LocalDateTime start,
+                           LocalDateTime end,
+                           ChronoUnit unit,
+                           BucketCountHandler handler) {
+        String field = switch (unit) {
+            case SECONDS -> "second";
+            case MINUTES -> "minute";
+            default -> throw new IllegalArgumentException("Unsupported bucket unit: " + unit);
+        };
+
+        queryLane.getTransactionTemplate().executeWithoutResult(status -> queryLane.getJdbcTemplate().query(
+                connection -> {
+                    PreparedStatement ps = connection.prepareStatement(SQL_BUCKET_COUNTS.formatted(field),
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(streamFetchSize);
+                    new ArgumentPreparedStatementSetter(new Object[]{start, end}).setValues(ps);
+                    return ps;
+                }, (RowCallbackHandler) rs -> handler.accept(rs.getString("service"), rs.getString("uri"),
+                        rs.getObject("bucket", LocalDateTime.class), rs.getLong("hits"))));
+    }
+
+    // подходящие uri отбираются в справочнике по индексу на имя, хиты группируются только по сервису
+    @Override
+    public Collection<Stats> getGroupStatistics(LocalDateTime start,
+                                                LocalDateTime end,
+                                                UriPattern pattern,
+                                                boolean unique) {
+        List<Object> uriParams = new ArrayList<>();
+        uriParams.add(escapeLike(pattern.prefix()) + "%");
+        String urisCondition = "AND uri_id IN (SELECT id FROM uris WHERE name LIKE ?)";
+        if (pattern.regex() != null) {
+            uriParams.add(pattern.regex());
+            urisCondition = dialect == SqlDialect.POSTGRESQL
+                    ? "AND uri_id IN (SELECT id FROM uris WHERE name LIKE ? AND name ~ ?)"
+                    : "AND uri_id IN (SELECT id FROM uris WHERE name LIKE ? AND REGEXP_LIKE(name, ?))";
+        }
+
+        List<TimeSpan> spans = rollupRepository.isEnabled()
+                ? RollupPlanner.plan(start, end)
+                : List.of(new TimeSpan(null, start, end, true));
+        StatsQuery union = buildSpans(spans, uriParams, urisCondition, unique);
+        String query = SQL_GROUP.formatted(unique ? "COUNT(DISTINCT ip)" : "SUM(hits)", union.sql());
+
+        return queryLane.getJdbcTemplate().query(query, (rs, rowNum) -> {
+            Stats stats = new Stats();
+            stats.setService(rs.getString("service"));
+            stats.setUri(pattern.name());
+            stats.setHits(rs.getInt("hits_count"));
+            return stats;
+        }, union.params());
+    }
+
+    // LIMIT применяется в базе, клиенту уходят только первые limit строк
+    @Override
+    public Collection<Stats> getTopStatistics(LocalDateTime start,
+                                              LocalDateTime end,
+                                              String uriPrefix,
+                                              int limit,
+                                              boolean unique) {
+        List<Object> uriParams = List.of();
+        String urisCondition = "";
+        if (uriPrefix != null && !uriPrefix.isEmpty()) {
+            uriParams = List.of(escapeLike(uriPrefix) + "%");
+            urisCondition = "AND uri_id IN (SELECT id FROM uris WHERE name LIKE ?)";
+        }
+
+        StatsQuery query = buildStatisticsQuery(start, end, uriParams, urisCondition, unique);
+        Object[] params = Arrays.copyOf(query.params(), query.params().length + 1);
+        params[params.length - 1] = limit;
+        return queryLane.getJdbcTemplate().query(query.sql() + "LIMIT ?", rowMapper, params);
+    }
+
+    // целые интервалы берутся из роллапа той же точности, неполные крайние - из сырых хитов
+    @Override
+    public Collection<SeriesPoint> getSeries(LocalDateTime start,
+                                             LocalDateTime end,
+                                             Collection<String> uris,
+                                             RollupResolution bucket,
+                                             boolean unique) {
+        UriFilter filter = uriFilter(uris);
+        if (filter == null)
+            return List.of();
+        List<Object> uriParams = filter.params();
+        String urisCondition = filter.condition();
+
+        LocalDateTime lo = bucket.ceil(start);
+        LocalDateTime hi = bucket.floor(end.plusNanos(1));
+        if (!rollupRepository.isEnabled() || !lo.isBefore(hi)) {
+            String query = SQL_SERIES_NAMED.formatted(SQL_SERIES.formatted(
+                    bucket.getField(),
+                    unique ? "COUNT(DISTINCT ip)" : "COUNT(ip)",
+                    urisCondition));
+            Object[] params = Stream.concat(Stream.of(start, end), uriParams.stream()).toArray();
+            return queryLane.getJdbcTemplate().query(query, SERIES_ROW_MAPPER, params);
+        }
+
+        List<String> subQueries = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        for (TimeSpan span : List.of(
+                new TimeSpan(null, start, lo, false),
+                new TimeSpan(bucket, lo, hi, false),
+                new TimeSpan(null, hi, end, true))) {
+            String operator = span.toInclusive() ? "<=" : "<";
+            if (span.isRaw()) {
+                boolean empty = span.toInclusive() ? span.from().isAfter(span.to()) : !span.from().isBefore(span.to());
+                if (empty)
+                    continue;
+                subQueries.add((unique ? SQL_SERIES_RAW_IPS : SQL_SERIES_RAW_HITS)
+                        .formatted(bucket.getField(), operator, urisCondition));
+                addSpanParams(params, span, uriParams);
+            } else if (unique) {
+                subQueries.add(SQL_SERIES_ROLLUP_IPS.formatted(
+                        bucket.getIpTable(), urisCondition,
+                        bucket.getTable(), urisCondition));
+                addSpanParams(params, span, uriParams);
+                addSpanParams(params, span, uriParams);
+            } else {
+                subQueries.add(SQL_SERIES_ROLLUP_HITS.formatted(bucket.getTable(), urisCondition));
+                addSpanParams(params, span, uriParams);
+            }
+        }
+
+        String query = SQL_SERIES_NAMED.formatted(SQL_SERIES_SPANS.formatted(
+                unique ? "COUNT(DISTINCT ip)" : "SUM(hits)",
+                String.join("UNION ALL\n", subQueries)));
+        return queryLane.getJdbcTemplate().query(query, SERIES_ROW_MAPPER, params.toArray());
+    }
+
+    // null - запрошенных uri нет в справочнике, результат заведомо пуст
+    private UriFilter uriFilter(Collection<String> uris) {
+        if (uris == null || uris.isEmpty())
+            return new UriFilter(List.of(), "");
+
+        // uri, которых нет в справочнике, не встречаются и в хитах
+        Collection<Integer> uriIds = dictionary.find(HitDictionary.Kind.URI, uris).values();
+        if (uriIds.isEmpty())
+            return null;
+
+        return new UriFilter(List.of(HitDictionary.idArray(uriIds)), "AND uri_id = ANY(?)");
+    }
+
+    private StatsQuery buildStatisticsQuery(LocalDateTime start,
+                                            LocalDateTime end,
+                                            List<Object> uriParams,
+                                            String urisCondition,
+                                            boolean unique) {
+        if (rollupRepository.isEnabled()) {
+            List<TimeSpan> spans = RollupPlanner.plan(start, end);
+            if (spans.stream().anyMatch(span -> !span.isRaw()))
+                return buildSpansQuery(spans, uriParams, urisCondition, unique);
+        }
+
+        String query = SQL_NAMED.formatted(SQL_SELECT
+                .formatted(
+                    unique ? "COUNT(DISTINCT ip)" : "COUNT(ip)",
+                    urisCondition
+        ));
+
+        Stream<Object> paramsStream = Stream.concat(
+                Stream.of(start, end),
+                uriParams.stream());
+
+        return new StatsQuery(query, paramsStream.toArray());
+    }
+
+    // оценка числа уникальных ip по HyperLogLog; без скетчей считаем точно
+    @Override
+    public Collection<Stats> getApproximateStatistics(LocalDateTime start,
+                                                      LocalDateTime end,
+                                                      Collection<String> uris) {
+        if (!sketchRepository.isEnabled())
+            return getStatistics(start, end, uris, true);
+
+        return sketchRepository.getStatistics(start, end, uris == null ? List.of() : uris);
+    }
+
+    private StatsQuery buildSpansQuery(List<TimeSpan> spans,
+                                       List<Object> uriParams,
+                                       String urisCondition,
+                                       boolean unique) {
+        StatsQuery union = buildSpans(spans, uriParams, urisCondition, unique);
+        String query = SQL_NAMED.formatted(SQL_SELECT_SPANS.formatted(
+                unique ? "COUNT(DISTINCT ip)" : "SUM(hits)",
+                union.sql()));
+
+        return new StatsQuery(query, union.params());
+    }
+
+    // UNION ALL частей диапазона: строки (service_id, uri_id, hits) или (service_id, uri_id, ip) при unique
+    private StatsQuery buildSpans(List<TimeSpan> spans,
+                                  List<Object> uriParams,
+                                  String urisCondition,
+                                  boolean unique) {
+        List<String> subQueries = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+
+        for (TimeSpan span : spans) {
+            String operator = span.toInclusive() ? "<=" : "<";
+            if (span.isRaw()) {
+                subQueries.add((unique ? SQL_RAW_IPS : SQL_RAW_HITS).formatted(operator, urisCondition));
+                addSpanParams(params, span, uriParams);
+            } else if (unique) {
+                RollupResolution resolution = span.resolution();
+                subQueries.add(SQL_ROLLUP_IPS.formatted(
+                        resolution.getIpTable(), urisCondition,
+                        resolution.getTable(), urisCondition));
+                addSpanParams(params, span, uriParams);
+                addSpanParams(params, span, uriParams);
+            } else {
+                subQueries.add(SQL_ROLLUP_HITS.formatted(span.resolution().getTable(), urisCondition));
+                addSpanParams(params, span, uriParams);
+            }
+        }
+
+        return new StatsQuery(String.join("UNION ALL\n", subQueries), params.toArray());
+    }
+
+    private long importChunk(List<Hit> chunk) {
+        List<HitRecord> records = dictionary.encode(chunk);
+        if (copyLoader.isSupported())
+            copyLoader.copy(records);
+        else
+            insertBatch(records);
+
+        notifyListeners(records);
+        return records.size();
+    }
+
+    private void insertBatch(Collection<HitRecord> records) {
+        jdbcTemplate.batchUpdate(SQL_INSERT, records, jdbcBatchSize, (ps, record) -> {
+            ps.setInt(1, record.serviceId());
+            ps.setInt(2, record.uriId());
+            ps.setBytes(3, record.ip());
+            ps.setObject(4, record.timestamp());
+        });
+    }
+
+    private void addSpanParams(List<Object> params, TimeSpan span, List<Object> uriParams) {
+        params.add(span.from());
+        params.add(span.to());
+        params.addAll(uriParams);
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private void notifyListeners(Collection<HitRecord> hits) {
+        for (HitIngestListener listener : ingestListeners)
+            listener.onHits(hits);
+    }
+
+    private record StatsQuery(String sql, Object[] params) {
+    }
+
+    private record UriFilter(List<Object> params, String condition) {
+    }
+}
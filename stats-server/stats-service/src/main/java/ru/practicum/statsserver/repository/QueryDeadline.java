@@ -0,0 +1,96 @@
+package ru.practicum.statsserver.repository;
+
+import org.springframework.dao.QueryTimeoutException;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deadline of one stats request, bound to the thread executing it.
+ * <p>
+ * Every JDBC statement of the query lane gets the remaining time as its query timeout
+ * (see {@link DeadlineJdbcTemplate}) and the segment engine checks it while scanning,
+ * so a query stops when the deadline passes instead of running on after the client gave up.
+ * {@link #cancel()} may be called from any thread, e.g. when the client disconnects:
+ * it cancels the statements being executed and fails the next ones.
+ */
+public final class QueryDeadline {
+
+    private static final ThreadLocal<QueryDeadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+    private final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    public QueryDeadline(Duration timeout) {
+        this.deadlineNanos = System.nanoTime() + timeout.toNanos();
+    }
+
+    public static QueryDeadline current() {
+        return CURRENT.get();
+    }
+
+    // для циклов без JDBC: бросает QueryTimeoutException, если срок запроса текущего потока вышел
+    public static void checkCurrent() {
+        QueryDeadline deadline = CURRENT.get();
+        if (deadline != null)
+            deadline.check();
+    }
+
+    public <T> T call(Callable<T> action) throws Exception {
+        QueryDeadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return action.call();
+        } finally {
+            statements.clear();
+            if (previous == null)
+                CURRENT.remove();
+            else
+                CURRENT.set(previous);
+        }
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return cancelled || deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    public void check() {
+        if (cancelled)
+            throw new QueryTimeoutException("Stats query was cancelled");
+        if (deadlineNanos - System.nanoTime() <= 0)
+            throw new QueryTimeoutException("Stats query deadline exceeded");
+    }
+
+    // драйверы (pgjdbc, H2) отменяют только выполняющийся запрос оператора, закрытые и простаивающие не трогают
+    public void cancel() {
+        cancelled = true;
+        for (Statement statement : statements) {
+            try {
+                if (!statement.isClosed())
+                    statement.cancel();
+            } catch (SQLException ignored) {
+                // оператор уже завершился
+            }
+        }
+    }
+
+    void apply(Statement statement) throws SQLException {
+        check();
+        long seconds = Math.max(1, (long) Math.ceil(remaining().toMillis() / 1000.0));
+        if (statement.getQueryTimeout() == 0 || statement.getQueryTimeout() > seconds)
+            statement.setQueryTimeout((int) Math.min(Integer.MAX_VALUE, seconds));
+
+        statements.add(statement);
+        // отмена могла прийти между проверкой и регистрацией
+        check();
+    }
+}
@@ -0,0 +1,21 @@
+package ru.practicum.statsserver.repository;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * JDBC access of the query lane: stats queries run on their own connection pool,
+ * so long scans can not take the connections hit ingestion needs.
+ * The transaction template is read-only and is used where a query needs a transaction (cursors).
+ * <p>
+ * Not a {@link JdbcTemplate} bean on purpose: the single JdbcTemplate and transaction manager
+ * of the application stay bound to the ingest pool.
+ */
+@Getter
+@RequiredArgsConstructor
+public class QueryLaneJdbc {
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+}
@@ -0,0 +1,46 @@
+package ru.practicum.statsserver.repository;
+
+import lombok.experimental.UtilityClass;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits [start, end] into the largest whole rollup buckets
+ * and raw edges that are not covered by a whole bucket of any resolution.
+ */
+@UtilityClass
+public class RollupPlanner {
+
+    private static final RollupResolution[] LEVELS = RollupResolution.values();
+
+    public List<TimeSpan> plan(LocalDateTime start, LocalDateTime end) {
+        List<TimeSpan> spans = new ArrayList<>();
+        plan(start, end, true, LEVELS.length - 1, spans);
+        return spans;
+    }
+
+    private void plan(LocalDateTime from, LocalDateTime to, boolean toInclusive, int level, List<TimeSpan> spans) {
+        boolean empty = toInclusive ? from.isAfter(to) : !from.isBefore(to);
+        if (empty)
+            return;
+
+        if (level < 0) {
+            spans.add(new TimeSpan(null, from, to, toInclusive));
+            return;
+        }
+
+        RollupResolution resolution = LEVELS[level];
+        LocalDateTime lo = resolution.ceil(from);
+        LocalDateTime hi = resolution.floor(toInclusive ? to.plusNanos(1) : to);
+
+        if (lo.isBefore(hi)) {
+            plan(from, lo, false, level - 1, spans);
+            spans.add(new TimeSpan(resolution, lo, hi, false));
+            plan(hi, to, toInclusive, level - 1, spans);
+        } else {
+            plan(from, to, toInclusive, level - 1, spans);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ru.practicum.statsserver.repository;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+@Getter
+@RequiredArgsConstructor
+public enum RollupResolution {
+    MINUTE(ChronoUnit.MINUTES, "minute", "hits_rollup_minute"),
+    HOUR(ChronoUnit.HOURS, "hour", "hits_rollup_hour"),
+    DAY(ChronoUnit.DAYS, "day", "hits_rollup_day");
+
+    private final ChronoUnit unit;
+    // поле для DATE_TRUNC
+    private final String field;
+    private final String table;
+
+    public String getIpTable() {
+        return table + "_ips";
+    }
+
+    public String getHllTable() {
+        return table + "_hll";
+    }
+
+    public LocalDateTime floor(LocalDateTime dateTime) {
+        return dateTime.truncatedTo(unit);
+    }
+
+    public LocalDateTime ceil(LocalDateTime dateTime) {
+        LocalDateTime floor = floor(dateTime);
+        return floor.equals(dateTime) ? floor : floor.plus(1, unit);
+    }
+}
@@ -0,0 +1,19 @@
+package ru.practicum.statsserver.repository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+public enum SqlDialect {
+    POSTGRESQL,
+    H2;
+
+    public static SqlDialect of(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection()) {
+            String product = connection.getMetaData().getDatabaseProductName();
+            return product.toLowerCase().contains("postgres") ? POSTGRESQL : H2;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to detect database dialect: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package ru.practicum.statsserver.repository;
+
+/**
+ * Receives stats rows one by one while they are read from storage, without building a result list.
+ */
+@FunctionalInterface
+public interface StatsRowHandler {
+
+    void accept(String service, String uri, long hits);
+}
@@ -0,0 +1,17 @@
+package ru.practicum.statsserver.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Part of a requested time range served either by a rollup table (whole buckets only)
+ * or by the raw hits table when resolution is null.
+ */
+public record TimeSpan(RollupResolution resolution,
+                       LocalDateTime from,
+                       LocalDateTime to,
+                       boolean toInclusive) {
+
+    public boolean isRaw() {
+        return resolution == null;
+    }
+}
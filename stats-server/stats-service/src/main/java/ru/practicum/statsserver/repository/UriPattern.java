@@ -0,0 +1,60 @@
+package ru.practicum.statsserver.repository;
+
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * A group of uris counted as one: all uris starting with a prefix, or all uris matching
+ * a route template such as {@code /events/{id}}, where a placeholder stands for one non-empty path segment.
+ * <p>
+ * {@code prefix} is the literal start shared by every matching uri and narrows the search through
+ * the index on uri names; {@code regex} (null for a plain prefix) is anchored and written
+ * in the common subset of Java and PostgreSQL regular expressions.
+ */
+public record UriPattern(String name, String prefix, String regex) {
+
+    private static final String PLACEHOLDER = "[^/]+";
+    private static final String SPECIAL = "\\^$.|?*+()[]{}";
+
+    public static UriPattern prefix(String prefix) {
+        return new UriPattern(prefix, prefix, null);
+    }
+
+    public static UriPattern template(String template) {
+        StringBuilder regex = new StringBuilder("^");
+        int literalEnd = -1;
+        int i = 0;
+        while (i < template.length()) {
+            char c = template.charAt(i);
+            if (c == '{') {
+                int close = template.indexOf('}', i);
+                if (close < 0 || close == i + 1)
+                    throw new IllegalArgumentException("Malformed placeholder in uri template " + template);
+                if (literalEnd < 0)
+                    literalEnd = i;
+                regex.append(PLACEHOLDER);
+                i = close + 1;
+                continue;
+            }
+            if (c == '}')
+                throw new IllegalArgumentException("Malformed placeholder in uri template " + template);
+            if (SPECIAL.indexOf(c) >= 0)
+                regex.append('\\');
+            regex.append(c);
+            i++;
+        }
+        regex.append('$');
+
+        String prefix = literalEnd < 0 ? template : template.substring(0, literalEnd);
+        return new UriPattern(template, prefix, regex.toString());
+    }
+
+    // проверка для хранилищ без регулярных выражений в запросах; regex компилируется один раз на запрос
+    public Predicate<String> matcher() {
+        if (regex == null)
+            return uri -> uri.startsWith(prefix);
+
+        Pattern pattern = Pattern.compile(regex);
+        return uri -> uri.startsWith(prefix) && pattern.matcher(uri).matches();
+    }
+}
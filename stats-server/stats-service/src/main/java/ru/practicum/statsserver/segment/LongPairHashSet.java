@@ -0,0 +1,68 @@
+package ru.practicum.statsserver.segment;
+
+/**
+ * Open addressing set of (long, long) pairs, e.g. 128-bit packed ip addresses.
+ */
+public class LongPairHashSet {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] first;
+    private long[] second;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    public LongPairHashSet() {
+        allocate(16);
+    }
+
+    public boolean add(long a, long b) {
+        int slot = slot(a, b);
+        if (used[slot])
+            return false;
+
+        first[slot] = a;
+        second[slot] = b;
+        used[slot] = true;
+        if (++size > first.length * LOAD_FACTOR)
+            rehash();
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int slot(long a, long b) {
+        int slot = LongLongHashMap.mix(a * 31 + b) & mask;
+        while (used[slot] && (first[slot] != a || second[slot] != b))
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void rehash() {
+        long[] oldFirst = first;
+        long[] oldSecond = second;
+        boolean[] oldUsed = used;
+
+        allocate(oldFirst.length << 1);
+        for (int i = 0; i < oldFirst.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slot(oldFirst[i], oldSecond[i]);
+                first[slot] = oldFirst[i];
+                second[slot] = oldSecond[i];
+                used[slot] = true;
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        first = new long[capacity];
+        second = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+}
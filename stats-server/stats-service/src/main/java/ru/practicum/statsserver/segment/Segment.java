@@ -0,0 +1,241 @@
+package ru.practicum.statsserver.segment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only file of fixed-width hit records, memory-mapped as a whole.
+ * <p>
+ * Layout: 64-byte header, {@code capacity} records of {@link #RECORD_SIZE} bytes,
+ * then a sparse time index with min/max timestamp of every block of {@code blockSize} records.
+ * The record count in the header is written after the records themselves,
+ * so after a crash only fully written records are visible.
+ * <p>
+ * A single writer appends; readers may scan concurrently up to {@link #count()}.
+ */
+public final class Segment implements Closeable {
+
+    public static final int RECORD_SIZE = 40;
+    public static final int FLAG_NULL_IP = 1;
+    public static final int FLAG_TEXT_IP = 2;
+
+    static final int HEADER_SIZE = 64;
+
+    private static final int MAGIC = 0x53544853;
+    private static final int VERSION = 1;
+    private static final int FLAG_SEALED = 1;
+    private static final int FLAG_SORTED = 2;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int BLOCK_SIZE_OFFSET = 12;
+    private static final int COUNT_OFFSET = 16;
+    private static final int FLAGS_OFFSET = 20;
+
+    // смещения полей внутри записи; 4 байта после flags - выравнивание
+    private static final int TIMESTAMP = 0;
+    private static final int SERVICE = 8;
+    private static final int URI = 12;
+    private static final int FLAGS = 16;
+    private static final int IP_HIGH = 24;
+    private static final int IP_LOW = 32;
+
+    private final long id;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int blockSize;
+    private final int indexOffset;
+
+    private volatile int count;
+
+    private Segment(long id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = buffer.getInt(CAPACITY_OFFSET);
+        this.blockSize = buffer.getInt(BLOCK_SIZE_OFFSET);
+        this.indexOffset = HEADER_SIZE + capacity * RECORD_SIZE;
+        this.count = buffer.getInt(COUNT_OFFSET);
+    }
+
+    public static Segment create(long id, Path path, int capacity, int blockSize) throws IOException {
+        long size = fileSize(capacity, blockSize);
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Segment of " + capacity + " records does not fit into 2 GB");
+
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(BLOCK_SIZE_OFFSET, blockSize);
+        buffer.putInt(COUNT_OFFSET, 0);
+        buffer.putInt(FLAGS_OFFSET, 0);
+
+        int indexOffset = HEADER_SIZE + capacity * RECORD_SIZE;
+        for (int block = 0; block < blocks(capacity, blockSize); block++) {
+            buffer.putLong(indexOffset + block * 16, Long.MAX_VALUE);
+            buffer.putLong(indexOffset + block * 16 + 8, Long.MIN_VALUE);
+        }
+        // magic пишется последним: файл без него считается недописанным
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        return new Segment(id, path, channel, buffer);
+    }
+
+    public static Segment open(long id, Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+
+        if (channel.size() < HEADER_SIZE || buffer.getInt(MAGIC_OFFSET) != MAGIC
+                || buffer.getInt(VERSION_OFFSET) != VERSION) {
+            channel.close();
+            throw new IOException("Not a hit segment file: " + path);
+        }
+        return new Segment(id, path, channel, buffer);
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public boolean isFull() {
+        return count == capacity;
+    }
+
+    public boolean isSealed() {
+        return (buffer.getInt(FLAGS_OFFSET) & FLAG_SEALED) != 0;
+    }
+
+    // запечатанный сегмент больше не дописывается
+    public void seal() {
+        buffer.putInt(FLAGS_OFFSET, buffer.getInt(FLAGS_OFFSET) | FLAG_SEALED);
+        force();
+    }
+
+    public boolean isSorted() {
+        return (buffer.getInt(FLAGS_OFFSET) & FLAG_SORTED) != 0;
+    }
+
+    public void markSorted() {
+        buffer.putInt(FLAGS_OFFSET, buffer.getInt(FLAGS_OFFSET) | FLAG_SORTED);
+    }
+
+    // вызывается только единственным писателем
+    public void append(long timestamp, int serviceId, int uriId, int flags, long ipHigh, long ipLow) {
+        int index = count;
+        if (index == capacity)
+            throw new IllegalStateException("Segment " + id + " is full");
+
+        int offset = HEADER_SIZE + index * RECORD_SIZE;
+        buffer.putLong(offset + TIMESTAMP, timestamp);
+        buffer.putInt(offset + SERVICE, serviceId);
+        buffer.putInt(offset + URI, uriId);
+        buffer.putInt(offset + FLAGS, flags);
+        buffer.putLong(offset + IP_HIGH, ipHigh);
+        buffer.putLong(offset + IP_LOW, ipLow);
+
+        if (timestamp != Long.MIN_VALUE) {
+            int blockOffset = indexOffset + index / blockSize * 16;
+            if (timestamp < buffer.getLong(blockOffset))
+                buffer.putLong(blockOffset, timestamp);
+            if (timestamp > buffer.getLong(blockOffset + 8))
+                buffer.putLong(blockOffset + 8, timestamp);
+        }
+
+        buffer.putInt(COUNT_OFFSET, index + 1);
+        count = index + 1;
+    }
+
+    public int blockSize() {
+        return blockSize;
+    }
+
+    public int blockCount() {
+        return blocks(count, blockSize);
+    }
+
+    public long blockMin(int block) {
+        return buffer.getLong(indexOffset + block * 16);
+    }
+
+    public long blockMax(int block) {
+        return buffer.getLong(indexOffset + block * 16 + 8);
+    }
+
+    public long minTimestamp() {
+        long min = Long.MAX_VALUE;
+        for (int block = 0; block < blockCount(); block++)
+            min = Math.min(min, blockMin(block));
+        return min;
+    }
+
+    public long timestamp(int index) {
+        return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE + TIMESTAMP);
+    }
+
+    public int serviceId(int index) {
+        return buffer.getInt(HEADER_SIZE + index * RECORD_SIZE + SERVICE);
+    }
+
+    public int uriId(int index) {
+        return buffer.getInt(HEADER_SIZE + index * RECORD_SIZE + URI);
+    }
+
+    public int flags(int index) {
+        return buffer.getInt(HEADER_SIZE + index * RECORD_SIZE + FLAGS);
+    }
+
+    public long ipHigh(int index) {
+        return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE + IP_HIGH);
+    }
+
+    public long ipLow(int index) {
+        return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE + IP_LOW);
+    }
+
+    public void copyRecord(int index, Segment target) {
+        target.append(timestamp(index), serviceId(index), uriId(index), flags(index), ipHigh(index), ipLow(index));
+    }
+
+    public void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    // отображение остаётся валидным для читателей, которые ещё сканируют сегмент
+    public void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    private static long fileSize(int capacity, int blockSize) {
+        return HEADER_SIZE + (long) capacity * RECORD_SIZE + (long) blocks(capacity, blockSize) * 16;
+    }
+
+    private static int blocks(int records, int blockSize) {
+        return (records + blockSize - 1) / blockSize;
+    }
+}
@@ -0,0 +1,116 @@
+package ru.practicum.statsserver.segment;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only name -> id dictionary of the segment engine, ids start from 1.
+ * Entries are stored as length-prefixed modified UTF-8; a torn last entry is truncated on open.
+ */
+@Slf4j
+public class SegmentDictionary implements Closeable {
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    public SegmentDictionary(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        load();
+    }
+
+    public Integer find(String name) {
+        return ids.get(name);
+    }
+
+    public int resolve(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : add(name);
+    }
+
+    public synchronized String name(int id) {
+        return names.get(id - 1);
+    }
+
+    // id всех имён с префиксом по возрастанию
+    public synchronized int[] idsWithPrefix(String prefix) {
+        List<Integer> found = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            if (names.get(i).startsWith(prefix))
+                found.add(i + 1);
+        }
+        return found.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private synchronized int add(String name) {
+        Integer existing = ids.get(name);
+        if (existing != null)
+            return existing;
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(name.length() + 2);
+            new DataOutputStream(bytes).writeUTF(name);
+            ByteBuffer entry = ByteBuffer.wrap(bytes.toByteArray());
+            while (entry.hasRemaining())
+                channel.write(entry, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to dictionary " + path, e);
+        }
+
+        names.add(name);
+        int id = names.size();
+        ids.put(name, id);
+        return id;
+    }
+
+    private void load() throws IOException {
+        byte[] content = Files.readAllBytes(path);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+        int position = 0;
+
+        while (position + 2 <= content.length) {
+            int length = ((content[position] & 0xff) << 8) | (content[position + 1] & 0xff);
+            if (position + 2 + length > content.length)
+                break;
+
+            String name = in.readUTF();
+            names.add(name);
+            ids.put(name, names.size());
+            position += 2 + length;
+        }
+
+        if (position < content.length) {
+            log.warn("Truncating torn entry at the end of dictionary {}", path);
+            channel.truncate(position);
+        }
+    }
+}
@@ -0,0 +1,724 @@
+package ru.practicum.statsserver.segment;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import ru.practicum.statsserver.model.Hit;
+import ru.practicum.statsserver.model.HitBounds;
+import ru.practicum.statsserver.model.SeriesPoint;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.repository.BucketCountHandler;
+import ru.practicum.statsserver.repository.HitRepository;
+import ru.practicum.statsserver.repository.IpCodec;
+import ru.practicum.statsserver.repository.QueryDeadline;
+import ru.practicum.statsserver.repository.RollupResolution;
+import ru.practicum.statsserver.repository.UriPattern;
+import ru.practicum.statsserver.sketch.HyperLogLog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Hit storage in local append-only segment files, no database required.
+ * <p>
+ * Hits are appended to the active memory-mapped {@link Segment}; a full segment is sealed
+ * and a new one is started. Queries skip segments and blocks whose time index
+ * does not overlap [start, end] and aggregate with primitive hash maps.
+ * Compaction rewrites small or unsorted sealed segments sorted by time,
+ * dropping hits older than the retention period.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "stats.storage.engine", havingValue = "segment")
+public class SegmentHitRepository implements HitRepository, DisposableBean {
+
+    private static final Comparator<Stats> STATS_ORDER = Comparator
+            .comparingInt(Stats::getHits).reversed()
+            .thenComparing(Stats::getService)
+            .thenComparing(Stats::getUri);
+
+    private static final Comparator<SeriesPoint> SERIES_ORDER = Comparator
+            .comparing(SeriesPoint::getUri)
+            .thenComparing(SeriesPoint::getService)
+            .thenComparing(SeriesPoint::getBucket);
+
+    private static final Pattern SEGMENT_FILE = Pattern.compile("segment-(\\d{16})\\.dat");
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String JOURNAL_FILE = "compaction.journal";
+    private static final int IMPORT_CHUNK_SIZE = 10_000;
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final int blockSize;
+    private final int retentionDays;
+    private final SegmentDictionary services;
+    private final SegmentDictionary uris;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // снимок сегментов заменяется целиком, читатели работают со своим снимком
+    private volatile State state;
+    private long nextSegmentId;
+
+    public SegmentHitRepository(@Value("${stats.storage.segment.dir:data/segments}") String directory,
+                                @Value("${stats.storage.segment.records-per-segment:1048576}") int recordsPerSegment,
+                                @Value("${stats.storage.segment.block-size:4096}") int blockSize,
+                                @Value("${stats.storage.segment.retention-days:0}") int retentionDays)
+            throws IOException {
+        this.directory = Path.of(directory);
+        this.recordsPerSegment = recordsPerSegment;
+        this.blockSize = blockSize;
+        this.retentionDays = retentionDays;
+
+        Files.createDirectories(this.directory);
+        recoverCompaction();
+        this.services = new SegmentDictionary(this.directory.resolve("services.dict"));
+        this.uris = new SegmentDictionary(this.directory.resolve("uris.dict"));
+        this.state = openSegments();
+        log.info("Opened segment storage in {}: {} sealed segments, {} hits in active segment",
+                this.directory.toAbsolutePath(), state.sealed().size(), state.active().count());
+    }
+
+    @Override
+    public void save(Hit hit) {
+        append(List.of(hit));
+    }
+
+    @Override
+    public void saveAll(Collection<Hit> hits) {
+        append(hits);
+    }
+
+    @Override
+    public long importHits(Iterator<Hit> hits) {
+        long imported = 0;
+        List<Hit> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+
+        while (hits.hasNext()) {
+            chunk.add(hits.next());
+            if (chunk.size() == IMPORT_CHUNK_SIZE) {
+                append(chunk);
+                imported += chunk.size();
+                chunk.clear();
+            }
+        }
+        append(chunk);
+        return imported + chunk.size();
+    }
+
+    @Override
+    public Collection<Stats> getStatistics(LocalDateTime start,
+                                           LocalDateTime end,
+                                           Collection<String> uris,
+                                           boolean unique) {
+        int[] uriFilter = uriFilter(uris);
+        if (uriFilter != null && uriFilter.length == 0)
+            return List.of();
+
+        return aggregate(start, end, uriFilter, unique, 0);
+    }
+
+    // по индексу блоков, без чтения записей: границы блоков шире границ хитов, фильтр uri не учитывается
+    @Override
+    public HitBounds getBounds(LocalDateTime start,
+                               LocalDateTime end,
+                               Collection<String> uris) {
+        int[] uriFilter = uriFilter(uris);
+        if (uriFilter != null && uriFilter.length == 0)
+            return null;
+
+        long from = toMillis(start);
+        long to = toMillis(end);
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (Segment segment : state.all()) {
+            int size = segment.blockSize();
+            for (int block = 0; block * size < segment.count(); block++) {
+                if (segment.blockMin(block) > to || segment.blockMax(block) < from)
+                    continue;
+                first = Math.min(first, Math.max(segment.blockMin(block), from));
+                last = Math.max(last, Math.min(segment.blockMax(block), to));
+            }
+        }
+        if (first > last)
+            return null;
+        return new HitBounds(
+                first == from ? start : LocalDateTime.ofInstant(Instant.ofEpochMilli(first), ZoneOffset.UTC),
+                last == to ? end : LocalDateTime.ofInstant(Instant.ofEpochMilli(last), ZoneOffset.UTC));
+    }
+
+    @Override
+    public Collection<Stats> getTopStatistics(LocalDateTime start,
+                                              LocalDateTime end,
+                                              String uriPrefix,
+                                              int limit,
+                                              boolean unique) {
+        int[] uriFilter = uriPrefix == null || uriPrefix.isEmpty() ? null : uris.idsWithPrefix(uriPrefix);
+        if (uriFilter != null && uriFilter.length == 0)
+            return List.of();
+
+        return aggregate(start, end, uriFilter, unique, limit);
+    }
+
+    @Override
+    public Collection<Stats> getGroupStatistics(LocalDateTime start,
+                                                LocalDateTime end,
+                                                UriPattern pattern,
+                                                boolean unique) {
+        Predicate<String> matcher = pattern.matcher();
+        int[] uriFilter = Arrays.stream(uris.idsWithPrefix(pattern.prefix()))
+                .filter(id -> matcher.test(uris.name(id)))
+                .toArray();
+        if (uriFilter.length == 0)
+            return List.of();
+
+        // ключ группы - только сервис, хиты всех подходящих uri складываются
+        LongLongHashMap counts = new LongLongHashMap();
+        LongLongHashMap slots = new LongLongHashMap();
+        List<LongPairHashSet> ips = new ArrayList<>();
+        scan(start, end, uriFilter, (segment, index, key) -> {
+            long service = key >>> 32;
+            boolean nullIp = (segment.flags(index) & Segment.FLAG_NULL_IP) != 0;
+            if (!unique) {
+                counts.addTo(service, nullIp ? 0 : 1);
+                return;
+            }
+            int slot = (int) slots.putIfAbsent(service, ips.size());
+            if (slot == ips.size())
+                ips.add(new LongPairHashSet());
+            if (!nullIp)
+                ips.get(slot).add(segment.ipHigh(index), segment.ipLow(index));
+        });
+
+        List<Stats> result = new ArrayList<>();
+        if (unique)
+            slots.forEach((service, slot) -> result.add(toGroupStats(service, pattern, ips.get((int) slot).size())));
+        else
+            counts.forEach((service, hits) -> result.add(toGroupStats(service, pattern, hits)));
+        result.sort(STATS_ORDER);
+        return result;
+    }
+
+    // limit > 0 - только первые limit строк, отбор через ограниченную кучу без сортировки всех групп
+    private List<Stats> aggregate(LocalDateTime start, LocalDateTime end, int[] uriFilter, boolean unique, int limit) {
+        TopStats result = new TopStats(limit);
+
+        if (!unique) {
+            LongLongHashMap counts = new LongLongHashMap();
+            scan(start, end, uriFilter, (segment, index, key) ->
+                    counts.addTo(key, (segment.flags(index) & Segment.FLAG_NULL_IP) != 0 ? 0 : 1));
+
+            counts.forEach(result::offer);
+            return result.toList();
+        }
+
+        LongLongHashMap slots = new LongLongHashMap();
+        List<LongPairHashSet> ips = new ArrayList<>();
+        scan(start, end, uriFilter, (segment, index, key) -> {
+            int slot = (int) slots.putIfAbsent(key, ips.size());
+            if (slot == ips.size())
+                ips.add(new LongPairHashSet());
+            if ((segment.flags(index) & Segment.FLAG_NULL_IP) == 0)
+                ips.get(slot).add(segment.ipHigh(index), segment.ipLow(index));
+        });
+
+        slots.forEach((key, slot) -> result.offer(key, ips.get((int) slot).size()));
+        return result.toList();
+    }
+
+    // группы (сервис, uri) и внутри каждой - интервалы по началу в миллисекундах UTC
+    @Override
+    public Collection<SeriesPoint> getSeries(LocalDateTime start,
+                                             LocalDateTime end,
+                                             Collection<String> uris,
+                                             RollupResolution bucket,
+                                             boolean unique) {
+        int[] uriFilter = uriFilter(uris);
+        if (uriFilter != null && uriFilter.length == 0)
+            return List.of();
+
+        long bucketMillis = bucket.getUnit().getDuration().toMillis();
+        LongLongHashMap slots = new LongLongHashMap();
+        List<LongLongHashMap> counts = new ArrayList<>();
+        List<Map<Long, LongPairHashSet>> ips = new ArrayList<>();
+        scan(start, end, uriFilter, (segment, index, key) -> {
+            int slot = (int) slots.putIfAbsent(key, counts.size());
+            if (slot == counts.size()) {
+                counts.add(new LongLongHashMap());
+                ips.add(new HashMap<>());
+            }
+
+            long bucketStart = Math.floorDiv(segment.timestamp(index), bucketMillis) * bucketMillis;
+            boolean nullIp = (segment.flags(index) & Segment.FLAG_NULL_IP) != 0;
+            if (!unique) {
+                counts.get(slot).addTo(bucketStart, nullIp ? 0 : 1);
+                return;
+            }
+            LongPairHashSet bucketIps = ips.get(slot).computeIfAbsent(bucketStart, b -> new LongPairHashSet());
+            if (!nullIp)
+                bucketIps.add(segment.ipHigh(index), segment.ipLow(index));
+        });
+
+        List<SeriesPoint> result = new ArrayList<>();
+        slots.forEach((key, slot) -> {
+            String service = services.name((int) (key >>> 32));
+            String uri = this.uris.name((int) key);
+            if (unique)
+                ips.get((int) slot).forEach((bucketStart, bucketIps) ->
+                        result.add(new SeriesPoint(service, uri, fromMillis(bucketStart), bucketIps.size())));
+            else
+                counts.get((int) slot).forEach((bucketStart, hits) ->
+                        result.add(new SeriesPoint(service, uri, fromMillis(bucketStart), (int) hits)));
+        });
+        result.sort(SERIES_ORDER);
+        return result;
+    }
+
+    @Override
+    public void scanCounts(LocalDateTime start,
+                           LocalDateTime end,
+                           ChronoUnit unit,
+                           BucketCountHandler handler) {
+        long bucketMillis = unit.getDuration().toMillis();
+        LongLongHashMap slots = new LongLongHashMap();
+        List<LongLongHashMap> counts = new ArrayList<>();
+        // scan включает правую границу, здесь она исключается
+        scan(start, end.minusNanos(1), null, (segment, index, key) -> {
+            int slot = (int) slots.putIfAbsent(key, counts.size());
+            if (slot == counts.size())
+                counts.add(new LongLongHashMap());
+            counts.get(slot).addTo(Math.floorDiv(segment.timestamp(index), bucketMillis) * bucketMillis,
+                    (segment.flags(index) & Segment.FLAG_NULL_IP) != 0 ? 0 : 1);
+        });
+
+        slots.forEach((key, slot) -> {
+            String service = services.name((int) (key >>> 32));
+            String uri = uris.name((int) key);
+            counts.get((int) slot).forEach((bucketStart, hits) ->
+                    handler.accept(service, uri, fromMillis(bucketStart), hits));
+        });
+    }
+
+    @Override
+    public Collection<Stats> getApproximateStatistics(LocalDateTime start,
+                                                      LocalDateTime end,
+                                                      Collection<String> uris) {
+        int[] uriFilter = uriFilter(uris);
+        if (uriFilter != null && uriFilter.length == 0)
+            return List.of();
+
+        LongLongHashMap slots = new LongLongHashMap();
+        List<HyperLogLog> sketches = new ArrayList<>();
+        ByteBuffer ip = ByteBuffer.allocate(IpCodec.ADDRESS_LENGTH);
+        scan(start, end, uriFilter, (segment, index, key) -> {
+            int slot = (int) slots.putIfAbsent(key, sketches.size());
+            if (slot == sketches.size())
+                sketches.add(new HyperLogLog());
+            if ((segment.flags(index) & Segment.FLAG_NULL_IP) == 0) {
+                ip.putLong(0, segment.ipHigh(index)).putLong(8, segment.ipLow(index));
+                sketches.get(slot).add(HyperLogLog.hash(ip.array()));
+            }
+        });
+
+        List<Stats> result = new ArrayList<>(slots.size());
+        slots.forEach((key, slot) -> result.add(toStats(key, sketches.get((int) slot).estimate())));
+        result.sort(STATS_ORDER);
+        return result;
+    }
+
+    @Scheduled(cron = "${stats.storage.segment.compaction-cron:0 30 3 * * *}")
+    public synchronized void compact() {
+        long cutoff = retentionDays > 0
+                ? toMillis(LocalDate.now().minusDays(retentionDays).atStartOfDay())
+                : Long.MIN_VALUE;
+
+        List<List<Segment>> groups = new ArrayList<>();
+        List<Segment> group = new ArrayList<>();
+        long groupCount = 0;
+
+        for (Segment segment : state.sealed()) {
+            boolean expired = segment.minTimestamp() < cutoff;
+            boolean small = segment.count() < recordsPerSegment / 2;
+            if (segment.isSorted() && !expired && !small)
+                continue;
+
+            int live = expired ? countLive(segment, cutoff) : segment.count();
+            if (!group.isEmpty() && groupCount + live > recordsPerSegment) {
+                groups.add(group);
+                group = new ArrayList<>();
+                groupCount = 0;
+            }
+            group.add(segment);
+            groupCount += live;
+        }
+        if (!group.isEmpty())
+            groups.add(group);
+
+        for (List<Segment> sources : groups) {
+            Segment single = sources.size() == 1 ? sources.getFirst() : null;
+            if (single != null && single.isSorted() && single.minTimestamp() >= cutoff)
+                continue;
+
+            try {
+                rewrite(sources, cutoff);
+            } catch (IOException e) {
+                log.error("Compaction of segments {} failed", ids(sources), e);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        writeLock.lock();
+        try {
+            for (Segment segment : state.all())
+                segment.close();
+            services.close();
+            uris.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void append(Collection<Hit> hits) {
+        if (hits.isEmpty())
+            return;
+
+        writeLock.lock();
+        try {
+            for (Hit hit : hits) {
+                Segment active = state.active();
+                if (active.isFull())
+                    active = roll();
+
+                int serviceId = services.resolve(hit.getService());
+                int uriId = uris.resolve(hit.getUri());
+                long timestamp = hit.getDateTime() == null ? Long.MIN_VALUE : toMillis(hit.getDateTime());
+                byte[] ip = IpCodec.encode(hit.getIp());
+
+                if (ip == null) {
+                    active.append(timestamp, serviceId, uriId, Segment.FLAG_NULL_IP, 0, 0);
+                } else if (ip.length == IpCodec.ADDRESS_LENGTH) {
+                    ByteBuffer packed = ByteBuffer.wrap(ip);
+                    active.append(timestamp, serviceId, uriId, 0, packed.getLong(0), packed.getLong(8));
+                } else {
+                    // не ip-литерал: храним 128-битный отпечаток строки
+                    active.append(timestamp, serviceId, uriId, Segment.FLAG_TEXT_IP,
+                            HyperLogLog.hash(ip), ((long) Arrays.hashCode(ip) << 32) | ip.length);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append hits to segment storage", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private Segment roll() throws IOException {
+        State current = state;
+        current.active().seal();
+
+        Segment next = Segment.create(nextSegmentId, segmentPath(nextSegmentId), recordsPerSegment, blockSize);
+        nextSegmentId++;
+
+        List<Segment> sealed = new ArrayList<>(current.sealed());
+        sealed.add(current.active());
+        state = new State(List.copyOf(sealed), next);
+        return next;
+    }
+
+    private void scan(LocalDateTime start, LocalDateTime end, int[] uriFilter, RecordVisitor visitor) {
+        long from = toMillis(start);
+        long to = toMillis(end);
+
+        for (Segment segment : state.all()) {
+            int count = segment.count();
+            int size = segment.blockSize();
+
+            for (int block = 0; block * size < count; block++) {
+                if (segment.blockMin(block) > to || segment.blockMax(block) < from)
+                    continue;
+                QueryDeadline.checkCurrent();
+
+                int blockEnd = Math.min(count, (block + 1) * size);
+                for (int index = block * size; index < blockEnd; index++) {
+                    long timestamp = segment.timestamp(index);
+                    if (timestamp < from || timestamp > to)
+                        continue;
+
+                    int uriId = segment.uriId(index);
+                    if (uriFilter != null && Arrays.binarySearch(uriFilter, uriId) < 0)
+                        continue;
+
+                    visitor.visit(segment, index, ((long) segment.serviceId(index) << 32) | uriId);
+                }
+            }
+        }
+    }
+
+    // null - без фильтра; пустой массив - ни одного известного uri
+    private int[] uriFilter(Collection<String> names) {
+        if (names == null || names.isEmpty())
+            return null;
+
+        return names.stream()
+                .map(uris::find)
+                .filter(Objects::nonNull)
+                .mapToInt(Integer::intValue)
+                .sorted()
+                .distinct()
+                .toArray();
+    }
+
+    private final class TopStats {
+        private final int limit;
+        private final List<Stats> all = new ArrayList<>();
+        // на вершине худшая из отобранных строк
+        private final PriorityQueue<Stats> top = new PriorityQueue<>(STATS_ORDER.reversed());
+
+        private TopStats(int limit) {
+            this.limit = limit;
+        }
+
+        private void offer(long key, long hits) {
+            if (limit <= 0) {
+                all.add(toStats(key, hits));
+                return;
+            }
+            if (top.size() == limit && hits < top.peek().getHits())
+                return;
+
+            top.add(toStats(key, hits));
+            if (top.size() > limit)
+                top.poll();
+        }
+
+        private List<Stats> toList() {
+            List<Stats> result = limit <= 0 ? all : new ArrayList<>(top);
+            result.sort(STATS_ORDER);
+            return result;
+        }
+    }
+
+    private Stats toStats(long key, long hits) {
+        Stats stats = new Stats();
+        stats.setService(services.name((int) (key >>> 32)));
+        stats.setUri(uris.name((int) key));
+        stats.setHits((int) hits);
+        return stats;
+    }
+
+    private Stats toGroupStats(long serviceId, UriPattern pattern, long hits) {
+        Stats stats = new Stats();
+        stats.setService(services.name((int) serviceId));
+        stats.setUri(pattern.name());
+        stats.setHits((int) hits);
+        return stats;
+    }
+
+    private int countLive(Segment segment, long cutoff) {
+        int live = 0;
+        for (int index = 0; index < segment.count(); index++) {
+            if (segment.timestamp(index) >= cutoff)
+                live++;
+        }
+        return live;
+    }
+
+    private void rewrite(List<Segment> sources, long cutoff) throws IOException {
+        int total = sources.stream().mapToInt(Segment::count).sum();
+        long[] timestamps = new long[total];
+        int[] sourceOf = new int[total];
+        int[] indexOf = new int[total];
+        int live = 0;
+        for (int source = 0; source < sources.size(); source++) {
+            Segment segment = sources.get(source);
+            for (int index = 0; index < segment.count(); index++) {
+                long timestamp = segment.timestamp(index);
+                if (cutoff != Long.MIN_VALUE && timestamp < cutoff)
+                    continue;
+                timestamps[live] = timestamp;
+                sourceOf[live] = source;
+                indexOf[live] = index;
+                live++;
+            }
+        }
+
+        Segment target = null;
+        Path targetPath;
+        if (live > 0) {
+            long id;
+            writeLock.lock();
+            try {
+                id = nextSegmentId++;
+            } finally {
+                writeLock.unlock();
+            }
+
+            targetPath = segmentPath(id);
+            Path tmp = tmpPath(targetPath);
+            try (Segment output = Segment.create(id, tmp, recordsPerSegment, blockSize)) {
+                IntStream.range(0, live).boxed()
+                        .sorted(Comparator.comparingLong(i -> timestamps[i]))
+                        .forEach(i -> sources.get(sourceOf[i]).copyRecord(indexOf[i], output));
+                output.markSorted();
+                output.seal();
+            }
+
+            // журнал позволяет после сбоя удалить исходные сегменты, уже перенесённые в новый
+            writeJournal(targetPath, sources);
+            Files.move(tmp, targetPath, StandardCopyOption.ATOMIC_MOVE);
+            target = Segment.open(id, targetPath);
+        }
+
+        writeLock.lock();
+        try {
+            List<Segment> sealed = new ArrayList<>(state.sealed());
+            sealed.removeAll(sources);
+            if (target != null)
+                sealed.add(target);
+            sealed.sort(Comparator.comparingLong(Segment::id));
+            state = new State(List.copyOf(sealed), state.active());
+        } finally {
+            writeLock.unlock();
+        }
+
+        for (Segment source : sources)
+            source.delete();
+        Files.deleteIfExists(directory.resolve(JOURNAL_FILE));
+
+        log.info("Compacted segments {} into {} ({} hits)", ids(sources),
+                target == null ? "nothing" : target.id(), live);
+    }
+
+    private void writeJournal(Path target, List<Segment> sources) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(target.getFileName().toString());
+        for (Segment source : sources)
+            lines.add(segmentPath(source.id()).getFileName().toString());
+
+        Path journal = directory.resolve(JOURNAL_FILE);
+        Files.write(journal, lines, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+    }
+
+    private void recoverCompaction() throws IOException {
+        Path journal = directory.resolve(JOURNAL_FILE);
+        if (Files.exists(journal)) {
+            List<String> lines = Files.readAllLines(journal);
+            if (!lines.isEmpty() && Files.exists(directory.resolve(lines.getFirst()))) {
+                log.warn("Finishing interrupted compaction into {}", lines.getFirst());
+                for (String source : lines.subList(1, lines.size()))
+                    Files.deleteIfExists(directory.resolve(source));
+            }
+            Files.delete(journal);
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path tmp : files.filter(path -> path.toString().endsWith(TMP_SUFFIX)).toList())
+                Files.delete(tmp);
+        }
+    }
+
+    private State openSegments() throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.sorted().toList()) {
+                Matcher matcher = SEGMENT_FILE.matcher(path.getFileName().toString());
+                if (!matcher.matches())
+                    continue;
+                try {
+                    segments.add(Segment.open(Long.parseLong(matcher.group(1)), path));
+                } catch (IOException e) {
+                    // сбой при создании сегмента: файл без заголовка не содержит хитов
+                    log.warn("Removing incomplete segment file {}", path);
+                    Files.delete(path);
+                }
+            }
+        }
+        nextSegmentId = segments.isEmpty() ? 1 : segments.getLast().id() + 1;
+
+        // дописывать можно только последний незапечатанный сегмент
+        Segment active = segments.stream()
+                .filter(segment -> !segment.isSealed() && !segment.isFull())
+                .reduce((first, second) -> second)
+                .orElse(null);
+        List<Segment> sealed = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment == active)
+                continue;
+            if (!segment.isSealed())
+                segment.seal();
+            sealed.add(segment);
+        }
+
+        if (active == null) {
+            active = Segment.create(nextSegmentId, segmentPath(nextSegmentId), recordsPerSegment, blockSize);
+            nextSegmentId++;
+        }
+        return new State(List.copyOf(sealed), active);
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve("segment-%016d.dat".formatted(id));
+    }
+
+    private static Path tmpPath(Path path) {
+        return path.resolveSibling(path.getFileName() + TMP_SUFFIX);
+    }
+
+    private static List<Long> ids(List<Segment> segments) {
+        return segments.stream().map(Segment::id).toList();
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), 0, ZoneOffset.UTC);
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(Segment segment, int index, long key);
+    }
+
+    private record State(List<Segment> sealed, Segment active) {
+        List<Segment> all() {
+            List<Segment> all = new ArrayList<>(sealed.size() + 1);
+            all.addAll(sealed);
+            all.add(active);
+            return all;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package ru.practicum.statsserver.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers ids of the last accepted hits, so hits re-sent by a client after a timeout are not counted twice.
+ * The window is in-memory and bounded: duplicates older than the window or sent across a restart are not detected.
+ */
+@Component
+public class HitIdWindow {
+
+    private final Map<String, Boolean> ids;
+
+    public HitIdWindow(@Value("${stats.hit.dedup.window-size:100000}") int windowSize) {
+        this.ids = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > windowSize;
+            }
+        };
+    }
+
+    // резервирует id; возвращает только те, что ещё не встречались
+    public synchronized List<String> acquire(Collection<String> candidates) {
+        List<String> acquired = new ArrayList<>(candidates.size());
+        for (String id : candidates) {
+            if (ids.putIfAbsent(id, Boolean.TRUE) == null)
+                acquired.add(id);
+        }
+        return acquired;
+    }
+
+    // снимает резерв, если хиты так и не были сохранены
+    public synchronized void release(Collection<String> acquired) {
+        acquired.forEach(ids::remove);
+    }
+}
@@ -0,0 +1,149 @@
+package ru.practicum.statsserver.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import ru.practicum.statsdto.HitDto;
+import ru.practicum.statsserver.exception.ParameterInvalidException;
+import ru.practicum.statsserver.mappers.HitMapper;
+import ru.practicum.statsserver.model.Hit;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Lazily parses hits from an NDJSON or CSV stream, one line at a time.
+ * CSV columns: app,uri,ip,timestamp; an optional header line is skipped.
+ */
+public class HitImportReader implements Iterator<Hit> {
+
+    public enum Format {
+        NDJSON,
+        CSV
+    }
+
+    private static final DateTimeFormatter CSV_DATETIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final BufferedReader reader;
+    private final Format format;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    private Hit next;
+    private long lineNumber;
+
+    public HitImportReader(BufferedReader reader, Format format, ObjectMapper objectMapper, Validator validator) {
+        this.reader = reader;
+        this.format = format;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null)
+            return true;
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || isCsvHeader(line))
+                    continue;
+
+                next = HitMapper.toHit(validate(parse(line)));
+                return true;
+            }
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Hit next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        Hit hit = next;
+        next = null;
+        return hit;
+    }
+
+    private boolean isCsvHeader(String line) {
+        return format == Format.CSV && lineNumber == 1 && line.startsWith("app,");
+    }
+
+    private HitDto parse(String line) {
+        if (format == Format.NDJSON) {
+            try {
+                return objectMapper.readValue(line, HitDto.class);
+            } catch (JsonProcessingException e) {
+                throw invalidLine(e.getOriginalMessage());
+            }
+        }
+
+        List<String> fields = splitCsv(line);
+        if (fields.size() != 4)
+            throw invalidLine("expected 4 columns: app,uri,ip,timestamp");
+
+        try {
+            return new HitDto(fields.get(0), fields.get(1), fields.get(2),
+                    LocalDateTime.parse(fields.get(3), CSV_DATETIME_FORMAT));
+        } catch (DateTimeParseException e) {
+            throw invalidLine("invalid timestamp '" + fields.get(3) + "'");
+        }
+    }
+
+    private HitDto validate(HitDto dto) {
+        Set<ConstraintViolation<HitDto>> violations = validator.validate(dto);
+        if (!violations.isEmpty()) {
+            ConstraintViolation<HitDto> violation = violations.iterator().next();
+            throw invalidLine(violation.getPropertyPath() + " " + violation.getMessage());
+        }
+        return dto;
+    }
+
+    private ParameterInvalidException invalidLine(String message) {
+        return new ParameterInvalidException("Invalid hit at line " + lineNumber + ": " + message);
+    }
+
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -1,36 +1,355 @@
 package ru.practicum.statsserver.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import ru.practicum.statsdto.HitDto;
+import ru.practicum.statsdto.SeriesPointDtoOut;
 import ru.practicum.statsdto.StatsDtoOut;
+import ru.practicum.statsdto.ViewCounts;
+import ru.practicum.statsserver.buffer.HitBuffer;
 import ru.practicum.statsserver.exception.ParameterInvalidException;
 import ru.practicum.statsserver.mappers.HitMapper;
 import ru.practicum.statsserver.mappers.StatsMapper;
+import ru.practicum.statsserver.model.Hit;
+import ru.practicum.statsserver.model.HitBounds;
+import ru.practicum.statsserver.model.ImportResult;
+import ru.practicum.statsserver.model.PartialStats;
+import ru.practicum.statsserver.model.SeriesPoint;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.recent.RecentHitsStore;
 import ru.practicum.statsserver.repository.HitRepository;
+import ru.practicum.statsserver.repository.QueryDeadline;
+import ru.practicum.statsserver.repository.RollupResolution;
+import ru.practicum.statsserver.repository.UriPattern;
 
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
 
 @Service
 @RequiredArgsConstructor
 public class HitService {
+    private static final Comparator<StatsDtoOut> PARTIAL_ORDER = Comparator
+            .comparingInt(StatsDtoOut::getHits).reversed()
+            .thenComparing(StatsDtoOut::getService)
+            .thenComparing(StatsDtoOut::getUri);
+
     private final HitRepository repository;
+    private final HitBuffer hitBuffer;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final HitIdWindow idWindow;
+    private final TopStatsCache topStatsCache;
+    private final StatsResultCache resultCache;
+    private final RecentHitsStore recentStore;
+
+    @Value("${stats.hit.batch.max-size:1000}")
+    private int maxBatchSize;
+
+    @Value("${stats.series.max-buckets:10000}")
+    private long maxSeriesBuckets;
+
+    @Value("${stats.query.partial.chunk:1d}")
+    private Duration partialChunk;
 
     public void add(HitDto hitDto) {
-        repository.save(HitMapper.toHit(hitDto));
+        addAll(List.of(hitDto));
+    }
+
+    public void addAll(List<HitDto> hitDtos) {
+        if (hitDtos.size() > maxBatchSize)
+            throw new ParameterInvalidException("Batch size must not exceed " + maxBatchSize + " hits");
+
+        // хиты с уже принятыми id - повторная отправка, их пропускаем
+        List<String> ids = hitDtos.stream()
+                .map(HitDto::getId)
+                .filter(Objects::nonNull)
+                .toList();
+        List<String> acquiredIds = ids.isEmpty() ? List.of() : idWindow.acquire(ids);
+        Set<String> acquired = new HashSet<>(acquiredIds);
+
+        List<HitDto> accepted = hitDtos.stream()
+                .filter(dto -> dto.getId() == null || acquired.remove(dto.getId()))
+                .toList();
+        if (accepted.isEmpty())
+            return;
+        List<Hit> hits = accepted.stream().map(HitMapper::toHit).toList();
+
+        try {
+            if (hitBuffer.isEnabled()) {
+                // кеш результатов и недавние хиты обновляет буфер, когда хиты записаны;
+                // он же снимает резерв id, если записать их не удалось
+                hitBuffer.addAll(hits, accepted.stream().map(HitDto::getId).toList());
+                return;
+            }
+            if (hits.size() == 1)
+                repository.save(hits.getFirst());
+            else
+                repository.saveAll(hits);
+        } catch (RuntimeException e) {
+            idWindow.release(acquiredIds);
+            throw e;
+        }
+        recentStore.onHits(hits);
+        resultCache.onHits(hits);
+    }
+
+    public ImportResult importHits(InputStream body, MediaType contentType) {
+        HitImportReader.Format format = MediaType.valueOf("text/csv").isCompatibleWith(contentType)
+                ? HitImportReader.Format.CSV
+                : HitImportReader.Format.NDJSON;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        long imported;
+        try {
+            imported = repository.importHits(
+                    recentStore.recording(new HitImportReader(reader, format, objectMapper, validator)));
+        } catch (RuntimeException e) {
+            // прочитанные хиты уже в памяти, а импорт откатился
+            recentStore.invalidate();
+            throw e;
+        } finally {
+            // часть хитов могла записаться и до ошибки
+            resultCache.invalidateAll();
+        }
+        return new ImportResult(imported);
     }
 
     public Collection<StatsDtoOut> getStatistics(LocalDateTime start,
                                                  LocalDateTime end,
                                                  List<String> uris,
                                                  Boolean unique) {
-        if (start.isAfter(end))
-            throw new ParameterInvalidException("'start' date must be before the 'end' date");
+        validateRange(start, end);
+
+        if (!Boolean.TRUE.equals(unique)) {
+            List<Stats> recent = recentStore.getStatistics(start, end, uris);
+            if (recent != null)
+                return recent.stream()
+                        .map(StatsMapper::toDto)
+                        .toList();
+        }
+
+        return resultCache.get(start, end, uris, unique, () ->
+                repository.getStatistics(start, end, uris, unique).stream()
+                        .map(StatsMapper::toDto)
+                        .toList());
+    }
+
+    // диапазон считается частями по partialChunk от конца к началу, пока не выйдет срок запроса;
+    // части идут только от последнего до первого хита: пустые края широкого диапазона не читаются.
+    // уникальные ip частей не складываются, поэтому unique всегда считается целиком
+    public PartialStats getPartialStatistics(LocalDateTime start,
+                                             LocalDateTime end,
+                                             List<String> uris,
+                                             boolean unique,
+                                             QueryDeadline deadline) {
+        validateRange(start, end);
+        if (unique)
+            return new PartialStats(List.copyOf(getStatistics(start, end, uris, true)), false, start);
+
+        HitBounds bounds;
+        try {
+            deadline.check();
+            bounds = repository.getBounds(start, end, uris);
+        } catch (QueryTimeoutException e) {
+            return new PartialStats(List.of(), true, end.plusNanos(1));
+        }
+        if (bounds == null)
+            return new PartialStats(List.of(), false, start);
+
+        long chunkSeconds = partialChunk.toSeconds();
+        Map<StatsKey, Integer> hits = new HashMap<>();
+        LocalDateTime coveredFrom = end.plusNanos(1);
+        LocalDateTime to = bounds.getLast();
+        while (!to.isBefore(bounds.getFirst())) {
+            long boundary = Math.floorDiv(to.toEpochSecond(ZoneOffset.UTC), chunkSeconds) * chunkSeconds;
+            LocalDateTime from = LocalDateTime.ofEpochSecond(boundary, 0, ZoneOffset.UTC);
+            if (from.isBefore(bounds.getFirst()))
+                from = bounds.getFirst();
 
-        return repository.getStatistics(start, end, uris, unique).stream()
+            Collection<Stats> chunk;
+            try {
+                deadline.check();
+                chunk = repository.getStatistics(from, to, uris, false);
+            } catch (QueryTimeoutException e) {
+                break;
+            }
+            for (Stats stats : chunk)
+                hits.merge(new StatsKey(stats.getService(), stats.getUri()), stats.getHits(), Integer::sum);
+            coveredFrom = from;
+            // границы частей включительные, хранилища держат время с точностью до микросекунды
+            to = from.minusNanos(1000);
+        }
+        // раньше первого хита считать нечего
+        if (!coveredFrom.isAfter(bounds.getFirst()))
+            coveredFrom = start;
+
+        List<StatsDtoOut> result = hits.entrySet().stream()
+                .map(entry -> new StatsDtoOut(entry.getKey().service(), entry.getKey().uri(), entry.getValue()))
+                .sorted(PARTIAL_ORDER)
+                .toList();
+        return new PartialStats(result, coveredFrom.isAfter(start), coveredFrom);
+    }
+
+    // все uri с префиксом uriPrefix или под шаблоном uriTemplate (/events/{id}) считаются одним uri
+    public Collection<StatsDtoOut> getGroupStatistics(LocalDateTime start,
+                                                      LocalDateTime end,
+                                                      List<String> uris,
+                                                      String uriPrefix,
+                                                      String uriTemplate,
+                                                      boolean unique) {
+        validateRange(start, end);
+        if (uris != null && !uris.isEmpty())
+            throw new ParameterInvalidException("'uris' can not be combined with 'uriPrefix' or 'uriTemplate'");
+        if (uriPrefix != null && uriTemplate != null)
+            throw new ParameterInvalidException("Only one of 'uriPrefix' and 'uriTemplate' can be set");
+
+        UriPattern pattern;
+        if (uriPrefix != null) {
+            pattern = UriPattern.prefix(uriPrefix);
+        } else {
+            if (uriTemplate.isBlank())
+                throw new ParameterInvalidException("'uriTemplate' must not be blank");
+            try {
+                pattern = UriPattern.template(uriTemplate);
+            } catch (IllegalArgumentException e) {
+                throw new ParameterInvalidException(e.getMessage());
+            }
+        }
+
+        return repository.getGroupStatistics(start, end, pattern, unique).stream()
                 .map(StatsMapper::toDto)
                 .toList();
     }
+
+    // просмотры uri вида prefix + id; хиты одного uri от разных сервисов складываются
+    public ViewCounts getViewCounts(LocalDateTime start,
+                                    LocalDateTime end,
+                                    String prefix,
+                                    List<Long> ids,
+                                    boolean unique) {
+        validateRange(start, end);
+
+        List<String> uris = ids.stream()
+                .distinct()
+                .map(id -> prefix + id)
+                .toList();
+
+        Map<Long, Long> hits = new TreeMap<>();
+        for (Stats stats : repository.getStatistics(start, end, uris, unique)) {
+            long id = Long.parseLong(stats.getUri().substring(prefix.length()));
+            hits.merge(id, (long) stats.getHits(), Long::sum);
+        }
+        return ViewCounts.of(hits);
+    }
+
+    public List<SeriesPointDtoOut> getSeries(LocalDateTime start,
+                                             LocalDateTime end,
+                                             List<String> uris,
+                                             String bucket,
+                                             boolean unique) {
+        validateRange(start, end);
+
+        RollupResolution resolution;
+        try {
+            resolution = RollupResolution.valueOf(bucket.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ParameterInvalidException("'bucket' must be one of minute, hour, day");
+        }
+        long buckets = resolution.getUnit().between(resolution.floor(start), end) + 1;
+        if (buckets > maxSeriesBuckets)
+            throw new ParameterInvalidException("Range contains " + buckets + " buckets of one " + bucket
+                    + ", at most " + maxSeriesBuckets + " are allowed");
+
+        Collection<SeriesPoint> points = unique ? null : recentStore.getSeries(start, end, uris, resolution);
+        if (points == null)
+            points = repository.getSeries(start, end, uris, resolution, unique);
+
+        return points.stream()
+                .map(StatsMapper::toDto)
+                .toList();
+    }
+
+    public List<StatsDtoOut> getTopStatistics(LocalDateTime start,
+                                              LocalDateTime end,
+                                              String uriPrefix,
+                                              int limit,
+                                              boolean unique) {
+        validateRange(start, end);
+
+        return topStatsCache.get(start, end, uriPrefix, limit, unique, () ->
+                repository.getTopStatistics(start, end, uriPrefix, limit, unique).stream()
+                        .map(StatsMapper::toDto)
+                        .toList());
+    }
+
+    // статистика пишется в поток по строке NDJSON на uri, без промежуточных списков
+    public void writeStatistics(LocalDateTime start,
+                                LocalDateTime end,
+                                List<String> uris,
+                                boolean unique,
+                                OutputStream out) throws IOException {
+        validateRange(start, end);
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(new SerializedString("\n"));
+            boolean[] written = {false};
+            repository.streamStatistics(start, end, uris, unique, (service, uri, hits) -> {
+                try {
+                    generator.writeStartObject();
+                    generator.writeStringField("app", service);
+                    generator.writeStringField("uri", uri);
+                    generator.writeNumberField("hits", hits);
+                    generator.writeEndObject();
+                    written[0] = true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (written[0])
+                generator.writeRaw('\n');
+        }
+    }
+
+    public Collection<StatsDtoOut> getApproximateStatistics(LocalDateTime start,
+                                                            LocalDateTime end,
+                                                            List<String> uris) {
+        validateRange(start, end);
+
+        return repository.getApproximateStatistics(start, end, uris).stream()
+                .map(StatsMapper::toDto)
+                .toList();
+    }
+
+    public void validateRange(LocalDateTime start, LocalDateTime end) {
+        if (start.isAfter(end))
+            throw new ParameterInvalidException("'start' date must be before the 'end' date");
+    }
+
+    private record StatsKey(String service, String uri) {
+    }
 }
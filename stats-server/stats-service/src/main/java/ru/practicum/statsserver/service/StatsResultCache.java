@@ -0,0 +1,204 @@
+package ru.practicum.statsserver.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsdto.StatsDtoOut;
+import ru.practicum.statsserver.model.Hit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches /stats results by the normalized (start, end, sorted uris, unique) query.
+ * <p>
+ * Closed windows - ending earlier than {@code grace} ago - can no longer change and are kept
+ * until evicted by size. Open windows are kept for a short TTL, and hits written through
+ * {@link HitService} drop open entries they fall into, so a client still sees its own hits.
+ * Hits arriving later than the grace period are not reflected in cached closed windows.
+ * <p>
+ * Open entries are indexed by uri (entries without a uri filter are kept apart), so a write
+ * looks only at the entries of its own uris instead of scanning the whole open cache.
+ */
+@Component
+public class StatsResultCache {
+
+    private final boolean enabled;
+    private final Duration grace;
+    private final Cache<Key, List<StatsDtoOut>> closed;
+    private final Cache<Key, List<StatsDtoOut>> open;
+    private final long openSize;
+    private final AtomicLong writes = new AtomicLong();
+
+    // надмножество ключей открытого кеша; ключи, вытесненные по размеру и сроку, убирает sweep()
+    private final Map<String, Set<Key>> openByUri = new ConcurrentHashMap<>();
+    private final Set<Key> openForAllUris = ConcurrentHashMap.newKeySet();
+    private final AtomicLong openPuts = new AtomicLong();
+
+    public StatsResultCache(MeterRegistry meterRegistry,
+                            @Value("${stats.cache.enabled:true}") boolean enabled,
+                            @Value("${stats.cache.closed-after:10m}") Duration grace,
+                            @Value("${stats.cache.closed-size:10000}") long closedSize,
+                            @Value("${stats.cache.open-size:1000}") long openSize,
+                            @Value("${stats.cache.open-ttl:5s}") Duration openTtl) {
+        this.enabled = enabled;
+        this.grace = grace;
+        this.closed = Caffeine.newBuilder()
+                .maximumSize(closedSize)
+                .recordStats()
+                .build();
+        this.open = Caffeine.newBuilder()
+                .maximumSize(openSize)
+                .expireAfterWrite(openTtl)
+                .recordStats()
+                .build();
+        this.openSize = openSize;
+        CaffeineCacheMetrics.monitor(meterRegistry, closed, "stats.server.cache", Tags.of("window", "closed"));
+        CaffeineCacheMetrics.monitor(meterRegistry, open, "stats.server.cache", Tags.of("window", "open"));
+    }
+
+    public List<StatsDtoOut> get(LocalDateTime start,
+                                 LocalDateTime end,
+                                 Collection<String> uris,
+                                 boolean unique,
+                                 Supplier<List<StatsDtoOut>> loader) {
+        if (!enabled)
+            return loader.get();
+
+        // null и пустой список - оба без фильтра по uri
+        List<String> sortedUris = uris == null ? List.of() : uris.stream().distinct().sorted().toList();
+        Key key = new Key(start, end, sortedUris, unique);
+        Cache<Key, List<StatsDtoOut>> cache = end.isBefore(LocalDateTime.now().minus(grace)) ? closed : open;
+
+        // считаем вне блокировки: одинаковый запрос в редком случае посчитается дважды
+        List<StatsDtoOut> cached = cache.getIfPresent(key);
+        if (cached != null)
+            return cached;
+
+        long generation = writes.get();
+        List<StatsDtoOut> result = loader.get();
+        if (cache == closed) {
+            closed.put(key, result);
+            return result;
+        }
+        // результат, посчитанный до записи новых хитов, мог их не увидеть
+        if (writes.get() != generation)
+            return result;
+
+        open.put(key, result);
+        index(key);
+        // хиты, записанные до появления ключа в индексе, его не сбросили
+        if (writes.get() != generation)
+            open.invalidate(key);
+        if (openPuts.incrementAndGet() % openSize == 0)
+            sweep();
+        return result;
+    }
+
+    // открытые окна, в которые попал хоть один из записанных хитов, больше не актуальны
+    public void onHits(Collection<Hit> hits) {
+        if (!enabled)
+            return;
+
+        writes.incrementAndGet();
+        Map<String, NavigableSet<LocalDateTime>> timestampsByUri = new HashMap<>();
+        NavigableSet<LocalDateTime> timestamps = new TreeSet<>();
+        for (Hit hit : hits) {
+            if (hit.getDateTime() == null)
+                continue;
+            timestampsByUri.computeIfAbsent(hit.getUri(), uri -> new TreeSet<>()).add(hit.getDateTime());
+            timestamps.add(hit.getDateTime());
+        }
+
+        synchronized (this) {
+            invalidateCovering(openForAllUris, timestamps);
+            timestampsByUri.forEach((uri, uriTimestamps) -> {
+                Set<Key> keys = openByUri.get(uri);
+                if (keys != null)
+                    invalidateCovering(keys, uriTimestamps);
+            });
+        }
+    }
+
+    // импорт обычно приносит исторические хиты, которые меняют и закрытые окна
+    public void invalidateAll() {
+        writes.incrementAndGet();
+        closed.invalidateAll();
+        open.invalidateAll();
+        sweep();
+    }
+
+    private void invalidateCovering(Set<Key> keys, NavigableSet<LocalDateTime> timestamps) {
+        for (Key key : List.copyOf(keys)) {
+            if (key.coversAny(timestamps))
+                open.invalidate(key);
+            unindexIfAbsent(key);
+        }
+    }
+
+    // убирает из индекса ключи, которых уже нет в открытом кеше
+    private synchronized void sweep() {
+        List<Key> keys = new ArrayList<>(openForAllUris);
+        openByUri.values().forEach(keys::addAll);
+        keys.forEach(this::unindexIfAbsent);
+    }
+
+    // повторная проверка ловит параллельную запись ключа: она добавляет его в индекс уже после кеша
+    private void unindexIfAbsent(Key key) {
+        if (open.asMap().containsKey(key))
+            return;
+        unindex(key);
+        if (open.asMap().containsKey(key))
+            index(key);
+    }
+
+    private void index(Key key) {
+        if (key.uris().isEmpty()) {
+            openForAllUris.add(key);
+            return;
+        }
+        for (String uri : key.uris()) {
+            openByUri.compute(uri, (name, keys) -> {
+                Set<Key> result = keys != null ? keys : ConcurrentHashMap.newKeySet();
+                result.add(key);
+                return result;
+            });
+        }
+    }
+
+    private void unindex(Key key) {
+        if (key.uris().isEmpty()) {
+            openForAllUris.remove(key);
+            return;
+        }
+        for (String uri : key.uris()) {
+            openByUri.computeIfPresent(uri, (name, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    private record Key(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+
+        boolean coversAny(NavigableSet<LocalDateTime> timestamps) {
+            LocalDateTime first = timestamps.ceiling(start);
+            return first != null && !first.isAfter(end);
+        }
+    }
+}
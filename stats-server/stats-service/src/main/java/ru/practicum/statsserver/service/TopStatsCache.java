@@ -0,0 +1,60 @@
+package ru.practicum.statsserver.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.statsdto.StatsDtoOut;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Caches top-N results of closed windows: windows ending earlier than {@code grace} ago,
+ * after which hits for them are no longer expected. Open windows are always computed.
+ * Hits arriving later than the grace period are not reflected in cached results.
+ */
+@Component
+public class TopStatsCache {
+
+    private final Duration grace;
+    private final Cache<Key, List<StatsDtoOut>> entries;
+
+    public TopStatsCache(MeterRegistry meterRegistry,
+                         @Value("${stats.top.cache-size:1000}") long cacheSize,
+                         @Value("${stats.top.closed-after:10m}") Duration grace) {
+        this.grace = grace;
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, "stats.server.top.cache");
+    }
+
+    public List<StatsDtoOut> get(LocalDateTime start,
+                                 LocalDateTime end,
+                                 String uriPrefix,
+                                 int limit,
+                                 boolean unique,
+                                 Supplier<List<StatsDtoOut>> loader) {
+        if (!end.isBefore(LocalDateTime.now().minus(grace)))
+            return loader.get();
+
+        Key key = new Key(start, end, uriPrefix, limit, unique);
+        List<StatsDtoOut> cached = entries.getIfPresent(key);
+        if (cached != null)
+            return cached;
+
+        // считаем вне блокировки: одинаковый запрос в редком случае посчитается дважды
+        List<StatsDtoOut> result = loader.get();
+        entries.put(key, result);
+        return result;
+    }
+
+    private record Key(LocalDateTime start, LocalDateTime end, String uriPrefix, int limit, boolean unique) {
+    }
+}
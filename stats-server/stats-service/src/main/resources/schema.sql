@@ -1,9 +1,160 @@
 -- DROP TABLE IF EXISTS hits;
 
+-- справочники сервисов и uri: в hits и роллапах хранятся только их id,
+-- ip хранится в бинарном виде (16 байт, IPv4 - как IPv4-mapped IPv6)
+CREATE TABLE IF NOT EXISTS services (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS uris (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(255) NOT NULL UNIQUE
+);
+
+-- поиск uri по префиксу (LIKE 'prefix%') для /stats/top и /stats?uriPrefix= при любой сортировке базы;
+-- text_pattern_ops есть только в PostgreSQL, в схемы H2 (schema-h2.sql, тестовую) индекс не входит
+CREATE INDEX IF NOT EXISTS uris_name_pattern_idx ON uris (name text_pattern_ops);
+
+-- секции по диапазонам timestamp создаёт и удаляет HitPartitionManager,
+-- в секцию по умолчанию попадают хиты вне заранее созданных секций.
+-- Скрипт только создаёт недостающие таблицы: база с несекционированной hits
+-- (созданная до введения секций) на этом месте не стартует, её нужно пересоздать
 CREATE TABLE IF NOT EXISTS hits (
     id BIGINT GENERATED BY DEFAULT AS IDENTITY,
-    service VARCHAR(255) NOT NULL,
-    uri VARCHAR(255) NOT NULL,
-    ip VARCHAR(15),
-    timestamp TIMESTAMP WITHOUT TIME ZONE
-);
\ No newline at end of file
+    service_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    ip BYTEA,
+    timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+CREATE TABLE IF NOT EXISTS hits_default PARTITION OF hits DEFAULT;
+
+CREATE INDEX IF NOT EXISTS hits_timestamp_brin_idx ON hits USING BRIN (timestamp);
+
+CREATE INDEX IF NOT EXISTS hits_uri_timestamp_idx ON hits (uri_id, timestamp);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_minute (
+    service_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (service_id, uri_id, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS hits_rollup_minute_bucket_idx ON hits_rollup_minute (bucket);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_minute_ips (
+    service_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    ip BYTEA NOT NULL,
+    PRIMARY KEY (service_id, uri_id, bucket, ip)
+);
+
+CREATE INDEX IF NOT EXISTS hits_rollup_minute_ips_bucket_idx ON hits_rollup_minute_ips (bucket);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_hour (
+    service_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (service_id, uri_id, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS hits_rollup_hour_bucket_idx ON hits_rollup_hour (bucket);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_hour_ips (
+    service_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    ip BYTEA NOT NULL,
+    PRIMARY KEY (service_id, uri_id, bucket, ip)
+);
+
+CREATE INDEX IF NOT EXISTS hits_rollup_hour_ips_bucket_idx ON hits_rollup_hour_ips (bucket);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_day (
+    service_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (service_id, uri_id, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS hits_rollup_day_bucket_idx ON hits_rollup_day (bucket);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_day_ips (
+    service_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    ip BYTEA NOT NULL,
+    PRIMARY KEY (service_id, uri_id, bucket, ip)
+);
+
+CREATE INDEX IF NOT EXISTS hits_rollup_day_ips_bucket_idx ON hits_rollup_day_ips (bucket);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_minute_hll (
+    service_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    reg SMALLINT NOT NULL,
+    rnk SMALLINT NOT NULL,
+    PRIMARY KEY (service_id, uri_id, bucket, reg)
+);
+
+CREATE INDEX IF NOT EXISTS hits_rollup_minute_hll_bucket_idx ON hits_rollup_minute_hll (bucket);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_hour_hll (
+    service_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    reg SMALLINT NOT NULL,
+    rnk SMALLINT NOT NULL,
+    PRIMARY KEY (service_id, uri_id, bucket, reg)
+);
+
+CREATE INDEX IF NOT EXISTS hits_rollup_hour_hll_bucket_idx ON hits_rollup_hour_hll (bucket);
+
+CREATE TABLE IF NOT EXISTS hits_rollup_day_hll (
+    service_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    reg SMALLINT NOT NULL,
+    rnk SMALLINT NOT NULL,
+    PRIMARY KEY (service_id, uri_id, bucket, reg)
+);
+
+CREATE INDEX IF NOT EXISTS hits_rollup_day_hll_bucket_idx ON hits_rollup_day_hll (bucket);
+
+-- счётчики за всё время: хиты с ip и границы времени всех хитов (сервис, uri),
+-- по ним отвечают запросы, диапазон которых покрывает все хиты запрошенных uri
+CREATE TABLE IF NOT EXISTS hits_totals (
+    uri_id INTEGER NOT NULL,
+    service_id INTEGER NOT NULL,
+    hits BIGINT NOT NULL,
+    min_timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    max_timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    PRIMARY KEY (uri_id, service_id)
+);
+
+-- приращения счётчиков от транзакций записи: они только вставляются и не ждут блокировок
+-- строк hits_totals, HitTotalsRepository периодически переносит их в hits_totals
+CREATE TABLE IF NOT EXISTS hits_totals_delta (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    uri_id INTEGER NOT NULL,
+    service_id INTEGER NOT NULL,
+    hits BIGINT NOT NULL,
+    min_timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    max_timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS hits_totals_delta_uri_idx ON hits_totals_delta (uri_id, service_id);
+
+CREATE TABLE IF NOT EXISTS hits_totals_ips (
+    uri_id INTEGER NOT NULL,
+    service_id INTEGER NOT NULL,
+    ip BYTEA NOT NULL,
+    PRIMARY KEY (uri_id, service_id, ip)
+);
@@ -0,0 +1,65 @@
+package ru.practicum.statsserver.buffer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.practicum.statsserver.exception.HitBufferOverflowException;
+import ru.practicum.statsserver.model.Hit;
+import ru.practicum.statsserver.recent.RecentHitsStore;
+import ru.practicum.statsserver.repository.HitRepository;
+import ru.practicum.statsserver.service.HitIdWindow;
+import ru.practicum.statsserver.service.StatsResultCache;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class HitBufferTest {
+
+    private final HitRepository repository = mock(HitRepository.class);
+    private final HitIdWindow idWindow = new HitIdWindow(100);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final HitBuffer buffer = new HitBuffer(repository, mock(StatsResultCache.class),
+            mock(RecentHitsStore.class), idWindow, meterRegistry, true, 2, 10, 60_000, 1);
+
+    private final Hit hit = new Hit("service1", "/test", "10.0.0.1", LocalDateTime.now());
+
+    @AfterEach
+    void tearDown() {
+        buffer.stop();
+    }
+
+    @Test
+    @DisplayName("Id хитов, которые не удалось записать, снова принимаются при повторной отправке")
+    void shouldReleaseIdsWhenFlushFails() {
+        doThrow(new IllegalStateException("db is down")).when(repository).saveAll(anyCollection());
+        buffer.start();
+        idWindow.acquire(List.of("id-1"));
+
+        buffer.addAll(List.of(hit), List.of("id-1"));
+        buffer.stop();
+
+        assertEquals(List.of("id-1"), idWindow.acquire(List.of("id-1")), "Резерв id снят после ошибки записи");
+        assertEquals(1.0, meterRegistry.counter("stats.hit.buffer.dropped").count());
+        assertEquals(0.0, meterRegistry.counter("stats.hit.buffer.rejected").count());
+    }
+
+    @Test
+    @DisplayName("Отклонённые с 429 хиты считаются отдельно от потерянных")
+    void shouldCountRejectedSeparatelyFromDropped() {
+        buffer.start();
+
+        buffer.addAll(List.of(hit, hit), List.of("id-1", "id-2"));
+        assertThrows(HitBufferOverflowException.class,
+                () -> buffer.addAll(List.of(hit), List.of("id-3")));
+        buffer.stop();
+
+        verify(repository).saveAll(anyCollection());
+        assertEquals(1.0, meterRegistry.counter("stats.hit.buffer.rejected").count());
+        assertEquals(0.0, meterRegistry.counter("stats.hit.buffer.dropped").count());
+    }
+}
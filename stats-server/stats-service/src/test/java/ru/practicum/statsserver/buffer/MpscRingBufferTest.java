@@ -0,0 +1,123 @@
+package ru.practicum.statsserver.buffer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MpscRingBufferTest {
+
+    @Test
+    @DisplayName("Ёмкость округляется до степени двойки, переполнение отклоняется")
+    void shouldRejectWhenFull() {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(3);
+
+        assertEquals(4, ring.capacity());
+        for (int i = 0; i < 4; i++)
+            assertTrue(ring.offer(i));
+
+        assertFalse(ring.offer(4), "Переполненный буфер не принимает элементы");
+        assertEquals(0, ring.remainingCapacity());
+    }
+
+    @Test
+    @DisplayName("Пакет занимает место целиком или не добавляется совсем")
+    void shouldOfferAllOrNothing() {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(4);
+
+        assertTrue(ring.offerAll(List.of(0, 1, 2)));
+        assertFalse(ring.offerAll(List.of(3, 4)), "Места только на один элемент");
+        assertEquals(3, ring.size());
+        assertTrue(ring.offerAll(List.of(3)));
+
+        List<Integer> drained = new ArrayList<>();
+        ring.drain(drained::add, 10);
+        assertEquals(List.of(0, 1, 2, 3), drained);
+    }
+
+    @Test
+    @DisplayName("Элементы вычитываются в порядке добавления и освобождают место")
+    void shouldDrainInOrder() {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(4);
+        for (int i = 0; i < 4; i++)
+            ring.offer(i);
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(3, ring.drain(drained::add, 3));
+        assertEquals(List.of(0, 1, 2), drained);
+
+        assertTrue(ring.offer(4));
+        assertEquals(2, ring.drain(drained::add, 10));
+        assertEquals(List.of(0, 1, 2, 3, 4), drained);
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    @DisplayName("Ни один элемент не теряется при конкурентной записи")
+    void shouldNotLoseElementsWithConcurrentProducers() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 10_000;
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(1024);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch done = new CountDownLatch(producers);
+
+        for (int p = 0; p < producers; p++) {
+            executor.submit(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!ring.offer(i))
+                        Thread.onSpinWait();
+                }
+                done.countDown();
+            });
+        }
+
+        long[] consumed = new long[1];
+        while (done.getCount() > 0 || ring.size() > 0)
+            ring.drain(e -> consumed[0]++, 256);
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals((long) producers * perProducer, consumed[0]);
+    }
+
+    @Test
+    @DisplayName("Конкурентные пакеты не теряются и не перемешиваются")
+    void shouldKeepBatchesWholeWithConcurrentProducers() throws InterruptedException {
+        int producers = 4;
+        int batches = 2_000;
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(64);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch done = new CountDownLatch(producers);
+
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            executor.submit(() -> {
+                for (int i = 0; i < batches; i++) {
+                    List<Integer> batch = List.of(producer * 10 + 1, producer * 10 + 2, producer * 10 + 3);
+                    while (!ring.offerAll(batch))
+                        Thread.onSpinWait();
+                }
+                done.countDown();
+            });
+        }
+
+        List<Integer> consumed = new ArrayList<>();
+        while (done.getCount() > 0 || ring.size() > 0)
+            ring.drain(consumed::add, 256);
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(producers * batches * 3, consumed.size());
+        for (int i = 0; i < consumed.size(); i += 3) {
+            int first = consumed.get(i);
+            assertEquals(List.of(first, first + 1, first + 2), consumed.subList(i, i + 3));
+        }
+    }
+}
@@ -6,11 +6,17 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import ru.practicum.statsdto.HitDto;
 import ru.practicum.statsdto.StatsDtoOut;
+import ru.practicum.statsdto.StatsIdsQueryDto;
+import ru.practicum.statsdto.StatsQueryDto;
+import ru.practicum.statsdto.ViewCounts;
 import ru.practicum.statsserver.exception.ParameterInvalidException;
+import ru.practicum.statsserver.model.PartialStats;
 import ru.practicum.statsserver.service.HitService;
 
 import java.time.LocalDateTime;
@@ -18,6 +24,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -68,6 +75,42 @@ class HitControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    void shouldAddHitsBatchAndReturn201() throws Exception {
+        List<HitDto> hits = List.of(
+                new HitDto("test-service", "/test", "127.0.0.1", LocalDateTime.now()),
+                new HitDto("test-service", "/test/1", "127.0.0.2", LocalDateTime.now()));
+
+        mockMvc.perform(post("/hit/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(hits)))
+                .andExpect(status().isCreated());
+
+        Mockito.verify(hitService, Mockito.times(1)).addAll(Mockito.anyList());
+    }
+
+    @Test
+    void shouldReturn400IfBatchContainsInvalidHit() throws Exception {
+        List<HitDto> hits = List.of(
+                new HitDto("test-service", "/test", "127.0.0.1", LocalDateTime.now()),
+                new HitDto("test-service", null, "127.0.0.2", LocalDateTime.now()));
+
+        mockMvc.perform(post("/hit/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(hits)))
+                .andExpect(status().isBadRequest());
+
+        Mockito.verify(hitService, Mockito.never()).addAll(Mockito.anyList());
+    }
+
+    @Test
+    void shouldReturn400IfBatchIsEmpty() throws Exception {
+        mockMvc.perform(post("/hit/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void shouldReturnStats() throws Exception {
         LocalDateTime now = LocalDateTime.now();
@@ -75,17 +118,82 @@ class HitControllerTest {
         Mockito.when(hitService.getStatistics(any(), any(), any(), any()))
                 .thenReturn(List.of(dto));
 
-        mockMvc.perform(get("/stats")
+        MvcResult result = mockMvc.perform(get("/stats")
                         .param("start", now.minusHours(1).format(FORMATTER))
                         .param("end", now.plusHours(1).format(FORMATTER))
                         .param("uris", "/test")
                         .param("unique", "false"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Stats-Partial"))
                 .andExpect(jsonPath("$[0].app").value("test-service"))
                 .andExpect(jsonPath("$[0].uri").value("/test"))
                 .andExpect(jsonPath("$[0].hits").value(5));
     }
 
+    @Test
+    void shouldReturnStatsForPostQuery() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        StatsDtoOut dto = new StatsDtoOut("test-service", "/test/1", 3);
+        Mockito.when(hitService.getStatistics(any(), any(), Mockito.anyList(), Mockito.eq(true)))
+                .thenReturn(List.of(dto));
+
+        StatsQueryDto query = StatsQueryDto.builder()
+                .start(now.minusHours(1))
+                .end(now.plusHours(1))
+                .uris(List.of("/test/1", "/test/2"))
+                .unique(true)
+                .build();
+
+        MvcResult result = mockMvc.perform(post("/stats/query")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(query)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].uri").value("/test/1"))
+                .andExpect(jsonPath("$[0].hits").value(3));
+    }
+
+    @Test
+    void shouldReturn400IfPostQueryHasNoStart() throws Exception {
+        mockMvc.perform(post("/stats/query")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"end\": \"2025-01-01 10:00:00\", \"uris\": [\"/test\"]}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldReturnViewCountsByIds() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        Mockito.when(hitService.getViewCounts(any(), any(), Mockito.eq("/events/"), Mockito.anyList(), Mockito.eq(true)))
+                .thenReturn(new ViewCounts(new long[]{1, 7}, new long[]{4, 2}));
+
+        StatsIdsQueryDto query = StatsIdsQueryDto.builder()
+                .start(now.minusHours(1))
+                .end(now.plusHours(1))
+                .prefix("/events/")
+                .ids(List.of(1L, 7L, 9L))
+                .unique(true)
+                .build();
+
+        MvcResult result = mockMvc.perform(post("/stats/ids")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(query)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.ids[1]").value(7))
+                .andExpect(jsonPath("$.hits[1]").value(2));
+    }
+
     @Test
     void shouldReturn400IfStartParamIsMissing() throws Exception {
         mockMvc.perform(get("/stats")
@@ -106,10 +214,75 @@ class HitControllerTest {
         Mockito.when(hitService.getStatistics(any(), any(), any(), any()))
                 .thenThrow(new ParameterInvalidException("start > end"));
 
-        mockMvc.perform(get("/stats")
+        MvcResult result = mockMvc.perform(get("/stats")
                         .param("start", now.plusHours(1).format(FORMATTER))
                         .param("end", now.format(FORMATTER))
                         .param("unique", "false"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isBadRequest());
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldMarkPartialStats() throws Exception {
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0);
+        LocalDateTime coveredFrom = LocalDateTime.of(2025, 1, 5, 0, 0);
+        Mockito.when(hitService.getPartialStatistics(any(), any(), any(), Mockito.eq(false), any()))
+                .thenReturn(new PartialStats(List.of(new StatsDtoOut("test-service", "/test", 7)), true, coveredFrom));
+
+        MvcResult result = mockMvc.perform(get("/stats")
+                        .param("start", start.format(FORMATTER))
+                        .param("end", start.plusDays(9).format(FORMATTER))
+                        .param("partial", "true")
+                        .param("timeoutMs", "500"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Stats-Partial", "true"))
+                .andExpect(header().string("X-Stats-Partial-Start", "2025-01-05 00:00:00"))
+                .andExpect(jsonPath("$[0].hits").value(7));
+    }
+
+    @Test
+    void shouldReturn504IfStatsQueryTimesOut() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        Mockito.when(hitService.getStatistics(any(), any(), any(), any()))
+                .thenThrow(new QueryTimeoutException("Stats query deadline exceeded"));
+
+        MvcResult result = mockMvc.perform(get("/stats")
+                        .param("start", now.minusHours(1).format(FORMATTER))
+                        .param("end", now.format(FORMATTER)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isGatewayTimeout());
+    }
+
+    @Test
+    void shouldReturn504IfPostQueryTimesOut() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        Mockito.when(hitService.getStatistics(any(), any(), any(), any()))
+                .thenThrow(new QueryTimeoutException("Stats query deadline exceeded"));
+
+        StatsQueryDto query = StatsQueryDto.builder()
+                .start(now.minusHours(1))
+                .end(now)
+                .uris(List.of("/test"))
+                .build();
+
+        MvcResult result = mockMvc.perform(post("/stats/query")
+                        .param("timeoutMs", "500")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(query)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isGatewayTimeout());
+    }
+}
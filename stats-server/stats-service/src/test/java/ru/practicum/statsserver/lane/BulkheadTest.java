@@ -0,0 +1,53 @@
+package ru.practicum.statsserver.lane;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkheadTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    @DisplayName("Сверх лимита запрос ждёт места не дольше таймаута и отклоняется")
+    void shouldRejectAfterQueueTimeout() throws InterruptedException {
+        Bulkhead bulkhead = new Bulkhead("query", 1, Duration.ofMillis(50), meterRegistry);
+
+        assertTrue(bulkhead.tryEnter());
+        long started = System.nanoTime();
+        assertFalse(bulkhead.tryEnter());
+
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, meterRegistry.get("stats.lane.rejected").tag("lane", "query").counter().count());
+        assertEquals(1, meterRegistry.get("stats.lane.active").tag("lane", "query").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Освобождённое место достаётся ожидающему запросу")
+    void shouldAdmitWaitingRequestOnExit() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("ingest", 1, Duration.ofSeconds(5), meterRegistry);
+        assertTrue(bulkhead.tryEnter());
+
+        CountDownLatch waiting = new CountDownLatch(1);
+        CompletableFuture<Boolean> second = CompletableFuture.supplyAsync(() -> {
+            waiting.countDown();
+            try {
+                return bulkhead.tryEnter();
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+        waiting.await();
+        bulkhead.exit();
+
+        assertTrue(second.get(5, TimeUnit.SECONDS));
+        assertEquals(0, meterRegistry.get("stats.lane.rejected").tag("lane", "ingest").counter().count());
+    }
+}
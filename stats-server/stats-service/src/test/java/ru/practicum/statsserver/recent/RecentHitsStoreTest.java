@@ -0,0 +1,142 @@
+package ru.practicum.statsserver.recent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.practicum.statsserver.model.Hit;
+import ru.practicum.statsserver.model.SeriesPoint;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.repository.BucketCountHandler;
+import ru.practicum.statsserver.repository.HitRepository;
+import ru.practicum.statsserver.repository.RollupResolution;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class RecentHitsStoreTest {
+
+    private final LocalDateTime now = LocalDateTime.of(2026, 10, 18, 12, 30, 15);
+    private final HitRepository repository = mock(HitRepository.class);
+
+    @Test
+    @DisplayName("Окно последнего часа считается по секундам без обращения к хранилищу")
+    void shouldCountRecentWindowBySeconds() {
+        RecentHitsStore store = store(10);
+        store.onHits(List.of(
+                new Hit("svc", "/a", "10.0.0.1", at(12, 29, 59)),
+                new Hit("svc", "/a", "10.0.0.1", at(12, 30, 5)),
+                new Hit("svc", "/a", "10.0.0.2", at(12, 30, 10)),
+                new Hit("svc", "/b", "10.0.0.1", at(12, 30, 0)),
+                new Hit("svc", "/b", null, at(12, 30, 1))));
+
+        List<Stats> stats = store.getStatistics(at(12, 30, 0), now, null);
+
+        assertEquals(2, stats.size());
+        assertEquals("/a", stats.get(0).getUri());
+        assertEquals(2, stats.get(0).getHits());
+        assertEquals("/b", stats.get(1).getUri());
+        assertEquals(1, stats.get(1).getHits());
+        assertEquals(1, store.getStatistics(at(12, 30, 0), now, List.of("/b", "/c")).size());
+    }
+
+    @Test
+    @DisplayName("Окно в пределах суток читается по минутам, если его начало выровнено на минуту")
+    void shouldCountDayWindowByMinutes() {
+        RecentHitsStore store = store(10);
+        store.onHits(List.of(
+                new Hit("svc", "/a", "10.0.0.1", at(11, 0, 30)),
+                new Hit("svc", "/a", "10.0.0.1", at(12, 30, 5))));
+
+        assertEquals(2, store.getStatistics(at(11, 0, 0), now, null).getFirst().getHits());
+        assertNull(store.getStatistics(at(11, 0, 10), now, null), "внутри минуты, старше часа");
+        assertNull(store.getStatistics(now.minusDays(2), now, null), "за горизонтом");
+
+        List<SeriesPoint> series = store.getSeries(at(11, 0, 0), now, List.of("/a"), RollupResolution.HOUR);
+        assertEquals(2, series.size());
+        assertEquals(at(11, 0, 0), series.get(0).getBucket());
+        assertEquals(at(12, 0, 0), series.get(1).getBucket());
+    }
+
+    @Test
+    @DisplayName("При запуске кольца восстанавливаются из хранилища, хиты из будущего не отдаются из памяти")
+    void shouldRebuildFromRepository() {
+        doAnswer(invocation -> {
+            invocation.<BucketCountHandler>getArgument(3).accept("svc", "/a", at(10, 0, 0), 5);
+            return null;
+        }).when(repository).scanCounts(any(), any(), eq(ChronoUnit.MINUTES), any());
+        doAnswer(invocation -> {
+            BucketCountHandler handler = invocation.getArgument(3);
+            handler.accept("svc", "/a", at(12, 0, 1), 2);
+            handler.accept("svc", "/c", now.plusHours(2), 1);
+            return null;
+        }).when(repository).scanCounts(any(), any(), eq(ChronoUnit.SECONDS), any());
+
+        RecentHitsStore store = store(10);
+
+        assertEquals(7, store.getStatistics(at(10, 0, 0), now, List.of("/a")).getFirst().getHits());
+        assertNull(store.getStatistics(at(10, 0, 0), now, List.of("/a", "/c")));
+    }
+
+    @Test
+    @DisplayName("Сверх лимита вытесняются uri с самыми старыми хитами, окна с их хитами читаются из хранилища")
+    void shouldEvictColdUris() {
+        RecentHitsStore store = store(2);
+        store.onHits(List.of(
+                new Hit("svc", "/a", "10.0.0.1", at(12, 0, 0)),
+                new Hit("svc", "/b", "10.0.0.1", at(12, 10, 0)),
+                new Hit("svc", "/c", "10.0.0.1", at(12, 20, 0))));
+
+        assertNull(store.getStatistics(at(12, 0, 0), now, null));
+        assertNull(store.getStatistics(at(12, 0, 0), now, List.of("/a", "/b")), "uri нет в памяти");
+        assertEquals(2, store.getStatistics(at(12, 0, 0), now, List.of("/b", "/c")).size(),
+                "вытеснение не касается запросов по оставшимся uri");
+        List<Stats> stats = store.getStatistics(at(12, 0, 1), now, null);
+        assertEquals(List.of("/b", "/c"), stats.stream().map(Stats::getUri).toList());
+        assertTrue(store.getStatistics(at(12, 5, 0), now, List.of("/a")).isEmpty());
+
+        store.onHits(List.of(new Hit("svc", "/a", "10.0.0.1", at(12, 25, 0))));
+        assertNull(store.getStatistics(at(12, 0, 0), now, List.of("/a")), "новый ряд uri не видит прежних хитов");
+    }
+
+    @Test
+    @DisplayName("Uri только с хитами без ip возвращается с нулём, как из хранилища")
+    void shouldReturnZeroHits_whenAllHitsHaveNoIp() {
+        doAnswer(invocation -> {
+            invocation.<BucketCountHandler>getArgument(3).accept("svc", "/c", at(12, 10, 0), 0);
+            return null;
+        }).when(repository).scanCounts(any(), any(), eq(ChronoUnit.SECONDS), any());
+        RecentHitsStore store = store(10);
+        store.onHits(List.of(
+                new Hit("svc", "/a", "10.0.0.1", at(12, 29, 0)),
+                new Hit("svc", "/b", null, at(12, 20, 0))));
+
+        List<Stats> stats = store.getStatistics(at(12, 0, 0), now, null);
+        List<SeriesPoint> series = store.getSeries(at(12, 0, 0), now, List.of("/b"), RollupResolution.MINUTE);
+
+        assertEquals(List.of("/a", "/b", "/c"), stats.stream().map(Stats::getUri).toList());
+        assertEquals(List.of(1, 0, 0), stats.stream().map(Stats::getHits).toList());
+        assertEquals(1, series.size());
+        assertEquals(0, series.getFirst().getHits());
+        assertTrue(store.getStatistics(at(12, 21, 0), now, List.of("/b")).isEmpty());
+    }
+
+    private RecentHitsStore store(int maxUris) {
+        RecentHitsStore store = new RecentHitsStore(repository, new SimpleMeterRegistry(), true,
+                Duration.ofHours(1), Duration.ofDays(1), maxUris, () -> now.toEpochSecond(ZoneOffset.UTC));
+        store.afterSingletonsInstantiated();
+        return store;
+    }
+
+    private LocalDateTime at(int hour, int minute, int second) {
+        return now.withHour(hour).withMinute(minute).withSecond(second);
+    }
+}
@@ -0,0 +1,147 @@
+package ru.practicum.statsserver.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HitPartitionManagerTest {
+
+    private final JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+    private final PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+    private final HitTotalsRepository totalsRepository = Mockito.mock(HitTotalsRepository.class);
+    private final HitRollupRepository rollupRepository = Mockito.mock(HitRollupRepository.class);
+    private final HitSketchRepository sketchRepository = Mockito.mock(HitSketchRepository.class);
+    private final LocalDate today = LocalDate.now();
+
+    @BeforeEach
+    void setup() {
+        when(jdbcTemplate.queryForObject(startsWith("SELECT EXISTS (\n    SELECT 1 FROM pg_partitioned_table"),
+                eq(Boolean.class))).thenReturn(true);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT EXISTS (SELECT 1 FROM hits_default"),
+                eq(Boolean.class), any(), any())).thenReturn(false);
+    }
+
+    @Test
+    @DisplayName("Заранее создаёт секции на текущий и следующие дни")
+    void shouldPrecreatePartitions() {
+        manager(2, 0).maintain();
+
+        List<String> statements = executed();
+        assertEquals(3, statements.size());
+        for (int i = 0; i < 3; i++) {
+            LocalDate from = today.plusDays(i);
+            assertTrue(statements.get(i).contains("CREATE TABLE IF NOT EXISTS " + partition(from)
+                    + " PARTITION OF hits"));
+            assertTrue(statements.get(i).contains("FROM ('" + from + "') TO ('" + from.plusDays(1) + "')"));
+        }
+    }
+
+    @Test
+    @DisplayName("Хиты диапазона из секции по умолчанию переносятся в новую секцию до её подключения")
+    void shouldMoveHitsFromDefaultPartition() {
+        when(jdbcTemplate.queryForObject(startsWith("SELECT EXISTS (SELECT 1 FROM hits_default"),
+                eq(Boolean.class), eq(today.atStartOfDay()), any())).thenReturn(true);
+
+        manager(0, 0).maintain();
+
+        String name = partition(today);
+        List<String> statements = executed();
+        assertEquals(List.of(
+                "CREATE TABLE " + name + " (LIKE hits INCLUDING DEFAULTS INCLUDING CONSTRAINTS)",
+                "ALTER TABLE hits ATTACH PARTITION " + name
+                        + " FOR VALUES FROM ('" + today + "') TO ('" + today.plusDays(1) + "')"
+        ), statements);
+
+        ArgumentCaptor<String> move = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).update(move.capture(), eq(today.atStartOfDay()), eq(today.plusDays(1).atStartOfDay()));
+        assertTrue(move.getValue().contains("DELETE FROM hits_default"));
+        assertTrue(move.getValue().contains("INSERT INTO " + name));
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    @DisplayName("Удаляет секции старше срока хранения вместе с их агрегатами и пересчитывает счётчики за всё время")
+    void shouldDropExpiredPartitions() {
+        String expired = partition(today.minusDays(40));
+        String retained = partition(today.minusDays(5));
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class)))
+                .thenReturn(List.of(expired, retained, "hits_pbroken"));
+        when(totalsRepository.isEnabled()).thenReturn(true);
+        when(rollupRepository.isEnabled()).thenReturn(true);
+        when(sketchRepository.isEnabled()).thenReturn(true);
+
+        manager(0, 30).maintain();
+
+        List<String> statements = executed();
+        assertTrue(statements.contains("ALTER TABLE hits DETACH PARTITION " + expired));
+        assertTrue(statements.contains("DROP TABLE " + expired));
+        assertTrue(statements.stream().noneMatch(sql -> sql.contains(retained) && !sql.startsWith("CREATE")));
+        assertTrue(statements.stream().noneMatch(sql -> sql.contains("hits_pbroken")));
+        LocalDateTime cutoff = today.minusDays(30).atStartOfDay();
+        verify(jdbcTemplate).update("DELETE FROM hits_default WHERE timestamp < ?", cutoff);
+        verify(rollupRepository).purgeBefore(cutoff);
+        verify(sketchRepository).purgeBefore(cutoff);
+        verify(totalsRepository).rebuild();
+    }
+
+    @Test
+    @DisplayName("Хиты старше срока хранения удаляются и из секции по умолчанию")
+    void shouldDeleteExpiredHitsFromDefaultPartition() {
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class))).thenReturn(List.of());
+        when(jdbcTemplate.update(startsWith("DELETE FROM hits_default"), any(LocalDateTime.class))).thenReturn(3);
+        when(totalsRepository.isEnabled()).thenReturn(true);
+
+        manager(0, 30).maintain();
+
+        verify(rollupRepository, never()).purgeBefore(any());
+        verify(totalsRepository).rebuild();
+    }
+
+    @Test
+    @DisplayName("Без секционированной таблицы hits обслуживание пропускается")
+    void shouldSkipUnpartitionedTable() {
+        when(jdbcTemplate.queryForObject(startsWith("SELECT EXISTS (\n    SELECT 1 FROM pg_partitioned_table"),
+                eq(Boolean.class))).thenReturn(false);
+
+        manager(7, 30).maintain();
+
+        verify(jdbcTemplate, never()).execute(anyString());
+        verify(totalsRepository, never()).rebuild();
+    }
+
+    private HitPartitionManager manager(int precreate, int retentionDays) {
+        return new HitPartitionManager(jdbcTemplate, new TransactionTemplate(transactionManager), totalsRepository,
+                rollupRepository, sketchRepository, SqlDialect.POSTGRESQL, true, "day", precreate, retentionDays);
+    }
+
+    private List<String> executed() {
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, Mockito.atLeast(0)).execute(sql.capture());
+        return sql.getAllValues().stream()
+                .map(statement -> statement.strip().replaceAll("\\s+", " "))
+                .toList();
+    }
+
+    private String partition(LocalDate from) {
+        return "hits_p" + from.format(DateTimeFormatter.BASIC_ISO_DATE);
+    }
+}
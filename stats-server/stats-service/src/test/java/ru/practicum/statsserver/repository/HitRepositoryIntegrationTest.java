@@ -4,19 +4,28 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.statsserver.model.Hit;
+import ru.practicum.statsserver.model.HitBounds;
 import ru.practicum.statsserver.model.Stats;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 
 @SpringBootTest
@@ -28,6 +37,13 @@ class HitRepositoryIntegrationTest {
     private HitRepository hitRepository;
     @Autowired
     private JdbcTemplate jdbcTemplate;
+    // H2 не поддерживает COPY: проверяется только выбор пути записи
+    @MockBean
+    private HitCopyLoader copyLoader;
+    @Value("${stats.hit.copy.threshold}")
+    private int copyThreshold;
+    @Value("${stats.hit.buffer.batch-size}")
+    private int bufferBatchSize;
 
 
     private final LocalDateTime testNow = LocalDateTime.now();
@@ -164,6 +180,19 @@ class HitRepositoryIntegrationTest {
         assertTrue(stats.isEmpty(), "Ожидается пустая коллекция, так как URI отсутствуют в базе");
     }
 
+    @Test
+    @DisplayName("URI, отсутствовавший при прошлом запросе, находится после записи хита")
+    void shouldFindUriRecordedAfterAbsentLookup() {
+        List<String> uris = List.of("/late");
+        assertTrue(hitRepository.getStatistics(testNow.minusHours(2), testNow.plusMinutes(5), uris, false).isEmpty());
+
+        hitRepository.save(new Hit("service1", "/late", "10.0.0.2", testNow.minusMinutes(5)));
+
+        Collection<Stats> stats = hitRepository.getStatistics(testNow.minusHours(2), testNow.plusMinutes(5), uris, false);
+        assertEquals(1, stats.size(), "Отметка об отсутствии URI снимается при его записи");
+        assertEquals(1, stats.iterator().next().getHits());
+    }
+
     @Test
     @DisplayName("Возвращает статистику по нескольким URI из списка")
     void shouldReturnStatsForMultipleUris() {
@@ -208,6 +237,20 @@ class HitRepositoryIntegrationTest {
         });
     }
 
+    @Test
+    @DisplayName("Возвращает время первого и последнего хита запрошенных URI внутри диапазона")
+    void shouldReturnBounds() {
+        HitBounds all = hitRepository.getBounds(testNow.minusYears(25), testNow.plusYears(75), null);
+        HitBounds test = hitRepository.getBounds(testNow.minusHours(2), testNow.minusMinutes(20), List.of("/test"));
+
+        assertEquals(testNow.minusHours(1).truncatedTo(ChronoUnit.MILLIS), all.getFirst().truncatedTo(ChronoUnit.MILLIS));
+        assertEquals(testNow.minusMinutes(10).truncatedTo(ChronoUnit.MILLIS), all.getLast().truncatedTo(ChronoUnit.MILLIS));
+        assertEquals(testNow.minusMinutes(30).truncatedTo(ChronoUnit.MILLIS), test.getLast().truncatedTo(ChronoUnit.MILLIS),
+                "хит в 15 минут назад за концом диапазона");
+        assertNull(hitRepository.getBounds(testNow.plusMinutes(1), testNow.plusHours(1), null));
+        assertNull(hitRepository.getBounds(testNow.minusHours(2), testNow, List.of("/missing")));
+    }
+
     @Test
     @DisplayName("Подсчёт всех IP с unique=false учитывает все попадания, включая повторы IP")
     void shouldCountAllIpsWhenUniqueFalse() {
@@ -343,4 +386,65 @@ class HitRepositoryIntegrationTest {
                 () -> assertEquals(2, result.getHits(), "Hits должен быть равен 2")
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Пакетная вставка сохраняет все хиты")
+    void shouldSaveAllHitsInBatch() {
+        hitRepository.saveAll(List.of(
+                new Hit("service1", "/batch", "10.0.0.1", testNow.minusMinutes(3)),
+                new Hit("service1", "/batch", "10.0.0.2", testNow.minusMinutes(2)),
+                new Hit("service1", "/batch", "10.0.0.1", testNow.minusMinutes(1))
+        ));
+
+        Collection<Stats> stats = hitRepository.getStatistics(
+                testNow.minusHours(1),
+                testNow.plusMinutes(1),
+                List.of("/batch"),
+                false
+        );
+
+        assertEquals(1, stats.size(), "Ожидается статистика по одному URI");
+        assertEquals(3, stats.iterator().next().getHits(), "Все хиты пакета сохранены");
+    }
+
+    @Test
+    @DisplayName("IPv6 адреса сохраняются, IPv4 и IPv4-mapped IPv6 считаются одним адресом")
+    void shouldCountIpv6AndMappedIpv4AsUniqueAddresses() {
+        hitRepository.save(new Hit("service1", "/ipv6", "2001:db8::1", testNow.minusMinutes(4)));
+        hitRepository.save(new Hit("service1", "/ipv6", "2001:0db8:0:0:0:0:0:1", testNow.minusMinutes(3)));
+        hitRepository.save(new Hit("service1", "/ipv6", "10.0.0.1", testNow.minusMinutes(2)));
+        hitRepository.save(new Hit("service1", "/ipv6", "::ffff:10.0.0.1", testNow.minusMinutes(1)));
+
+        Collection<Stats> stats = hitRepository.getStatistics(
+                testNow.minusHours(1),
+                testNow.plusMinutes(1),
+                List.of("/ipv6"),
+                true
+        );
+
+        assertEquals(1, stats.size(), "Ожидается статистика по одному URI");
+        assertEquals(2, stats.iterator().next().getHits(), "Два уникальных адреса");
+    }
+
+    @Test
+    @DisplayName("Пакет записи из буфера доходит до порога COPY, меньший пакет вставляется через INSERT")
+    void shouldCopyBatch_whenThresholdReached() {
+        when(copyLoader.isSupported()).thenReturn(true);
+        assertTrue(copyThreshold <= bufferBatchSize, "Порог не выше размера пакета буфера");
+
+        hitRepository.saveAll(hits("/small", copyThreshold - 1));
+        verify(copyLoader, never()).copy(any());
+        assertEquals(copyThreshold - 1, hitRepository.getStatistics(testNow.minusHours(1), testNow.plusMinutes(1),
+                List.of("/small"), false).iterator().next().getHits());
+
+        hitRepository.saveAll(hits("/large", copyThreshold));
+        verify(copyLoader).copy(argThat(records -> records.size() == copyThreshold));
+    }
+
+    private List<Hit> hits(String uri, int count) {
+        List<Hit> hits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            hits.add(new Hit("service1", uri, "10.0.0." + (i % 250), testNow.minusSeconds(i)));
+        return hits;
+    }
+}
@@ -0,0 +1,163 @@
+package ru.practicum.statsserver.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.statsserver.model.Hit;
+import ru.practicum.statsserver.model.SeriesPoint;
+import ru.practicum.statsserver.model.Stats;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"stats.rollup.enabled=true", "stats.rollup.sketch.enabled=true"})
+@ActiveProfiles("test")
+@Transactional
+class HitRollupIntegrationTest {
+
+    @Autowired
+    private HitRepository hitRepository;
+    @Autowired
+    private HitRollupRepository rollupRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final LocalDateTime base = LocalDateTime.of(2024, 3, 10, 0, 0);
+
+    @BeforeEach
+    void setup() {
+        hitRepository.saveAll(List.of(
+                new Hit("svc", "/a", "10.0.0.1", base.minusSeconds(30)),
+                new Hit("svc", "/a", "10.0.0.1", base),
+                new Hit("svc", "/a", "10.0.0.2", base.plusHours(1).plusMinutes(30).plusSeconds(15)),
+                new Hit("svc", "/a", "10.0.0.3", base.plusDays(2)),
+                new Hit("svc", "/a", "10.0.0.4", base.plusDays(2).plusSeconds(1)),
+                new Hit("svc", "/a", "10.0.0.5", base.minusMinutes(5)),
+                new Hit("svc", "/b", null, base.plusHours(3)),
+                new Hit("svc", "/c", null, base.plusHours(5))
+        ));
+        // запоздавший хит внутри уже агрегированного дня
+        hitRepository.save(new Hit("svc", "/b", "10.0.0.1", base.plusDays(1).plusMinutes(1)));
+    }
+
+    @Test
+    @DisplayName("Роллапы обновляются при вставке хитов")
+    void shouldMaintainRollupsOnInsert() {
+        Long dayHits = jdbcTemplate.queryForObject(
+                "SELECT SUM(hits) FROM hits_rollup_day WHERE uri_id = (SELECT id FROM uris WHERE name = '/a') AND bucket = ?",
+                Long.class, base);
+        Long hourIps = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM hits_rollup_hour_ips WHERE uri_id = (SELECT id FROM uris WHERE name = '/b')", Long.class);
+
+        assertEquals(2, dayHits, "Два хита /a за день base");
+        assertEquals(1, hourIps, "Хит без ip не попадает в таблицу ip");
+    }
+
+    @Test
+    @DisplayName("Статистика по роллапам совпадает с подсчётом по сырым хитам (unique=false)")
+    void shouldReturnSameStatsAsRawHits() {
+        List<Stats> stats = new ArrayList<>(hitRepository.getStatistics(
+                base.minusSeconds(50), base.plusDays(2), null, false));
+
+        assertEquals(3, stats.size());
+        assertAll(
+                () -> assertEquals("/a", stats.get(0).getUri()),
+                () -> assertEquals(4, stats.get(0).getHits()),
+                () -> assertEquals("/b", stats.get(1).getUri()),
+                () -> assertEquals(1, stats.get(1).getHits()),
+                () -> assertEquals("/c", stats.get(2).getUri()),
+                () -> assertEquals(0, stats.get(2).getHits())
+        );
+    }
+
+    @Test
+    @DisplayName("Группа uri по префиксу или шаблону считается по роллапам так же, как по сырым хитам")
+    void shouldReturnGroupStatisticsOverRollups() {
+        List<Stats> byPrefix = new ArrayList<>(hitRepository.getGroupStatistics(
+                base.minusSeconds(50), base.plusDays(2), UriPattern.prefix("/"), false));
+        List<Stats> byTemplate = new ArrayList<>(hitRepository.getGroupStatistics(
+                base.minusSeconds(50), base.plusDays(2), UriPattern.template("/{name}"), true));
+
+        assertEquals(1, byPrefix.size());
+        assertEquals(5, byPrefix.get(0).getHits());
+        assertEquals(1, byTemplate.size());
+        assertEquals("/{name}", byTemplate.get(0).getUri());
+        assertEquals(3, byTemplate.get(0).getHits(), "ip 10.0.0.1 встречается в /a и /b");
+    }
+
+    @Test
+    @DisplayName("Уникальные ip считаются точно с учётом краёв диапазона (unique=true)")
+    void shouldCountUniqueIpsExactly() {
+        List<Stats> stats = new ArrayList<>(hitRepository.getStatistics(
+                base.minusSeconds(50), base.plusDays(2), List.of("/a", "/b", "/c"), true));
+
+        assertEquals(3, stats.size());
+        assertAll(
+                () -> assertEquals("/a", stats.get(0).getUri()),
+                () -> assertEquals(3, stats.get(0).getHits()),
+                () -> assertEquals(1, stats.get(1).getHits()),
+                () -> assertEquals(0, stats.get(2).getHits())
+        );
+    }
+
+    @Test
+    @DisplayName("Перестроение роллапов из таблицы hits даёт тот же результат")
+    void shouldRebuildRollupsFromHits() {
+        jdbcTemplate.update("DELETE FROM hits_rollup_day");
+        jdbcTemplate.update("DELETE FROM hits_rollup_day_ips");
+
+        rollupRepository.rebuild();
+
+        List<Stats> stats = new ArrayList<>(hitRepository.getStatistics(
+                base.minusSeconds(50), base.plusDays(2), List.of("/a"), true));
+
+        assertEquals(1, stats.size());
+        assertEquals(3, stats.get(0).getHits());
+    }
+
+    @Test
+    @DisplayName("Приближённый подсчёт уникальных ip по скетчам")
+    void shouldEstimateUniqueIpsBySketches() {
+        List<Stats> stats = new ArrayList<>(hitRepository.getApproximateStatistics(
+                base.minusSeconds(50), base.plusDays(2), List.of("/a", "/b", "/c")));
+
+        assertEquals(3, stats.size());
+        assertAll(
+                () -> assertEquals("/a", stats.get(0).getUri()),
+                () -> assertEquals(3, stats.get(0).getHits()),
+                () -> assertEquals(1, stats.get(1).getHits()),
+                () -> assertEquals(0, stats.get(2).getHits())
+        );
+    }
+
+    @Test
+    @DisplayName("Ряд по дням: целые дни из роллапа, неполные крайние - из сырых хитов")
+    void shouldBuildSeriesFromRollupsAndRawEdges() {
+        List<SeriesPoint> series = new ArrayList<>(hitRepository.getSeries(
+                base.minusSeconds(50), base.plusDays(2), List.of("/a"), RollupResolution.DAY, false));
+
+        assertEquals(3, series.size());
+        assertAll(
+                () -> assertEquals(base.minusDays(1), series.get(0).getBucket()),
+                () -> assertEquals(1, series.get(0).getHits()),
+                () -> assertEquals(base, series.get(1).getBucket()),
+                () -> assertEquals(2, series.get(1).getHits()),
+                () -> assertEquals(base.plusDays(2), series.get(2).getBucket()),
+                () -> assertEquals(1, series.get(2).getHits())
+        );
+
+        List<SeriesPoint> unique = new ArrayList<>(hitRepository.getSeries(
+                base.minusSeconds(50), base.plusDays(1), List.of("/a"), RollupResolution.DAY, true));
+        assertEquals(2, unique.size());
+        assertEquals(1, unique.get(0).getHits());
+        assertEquals(2, unique.get(1).getHits(), "Один ip в разных днях считается в каждом дне");
+    }
+}
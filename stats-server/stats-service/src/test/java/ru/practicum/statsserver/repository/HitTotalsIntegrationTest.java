@@ -0,0 +1,123 @@
+package ru.practicum.statsserver.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.statsserver.model.Hit;
+import ru.practicum.statsserver.model.Stats;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "stats.totals.enabled=true")
+@ActiveProfiles("test")
+@Transactional
+class HitTotalsIntegrationTest {
+
+    @Autowired
+    private HitRepository hitRepository;
+    @Autowired
+    private HitTotalsRepository totalsRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final LocalDateTime base = LocalDateTime.of(2024, 3, 10, 0, 0);
+    private final LocalDateTime allStart = LocalDateTime.of(2000, 1, 1, 0, 0);
+    private final LocalDateTime allEnd = LocalDateTime.of(2100, 1, 1, 0, 0);
+
+    @BeforeEach
+    void setup() {
+        hitRepository.saveAll(List.of(
+                new Hit("svc", "/a", "10.0.0.1", base),
+                new Hit("svc", "/a", "10.0.0.1", base.plusDays(1)),
+                new Hit("svc", "/a", "10.0.0.2", base.plusDays(2)),
+                new Hit("svc", "/b", null, base.plusHours(3))
+        ));
+        hitRepository.save(new Hit("svc", "/b", "10.0.0.3", base.plusDays(3)));
+    }
+
+    @Test
+    @DisplayName("Приращения от вставки хитов переносятся в счётчики")
+    void shouldMaintainTotalsOnInsert() {
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM hits_totals", Long.class),
+                "Транзакция записи не трогает строки hits_totals");
+
+        totalsRepository.compact();
+
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM hits_totals_delta", Long.class));
+        Long hits = jdbcTemplate.queryForObject(
+                "SELECT hits FROM hits_totals WHERE uri_id = (SELECT id FROM uris WHERE name = '/b')", Long.class);
+        LocalDateTime maxTimestamp = jdbcTemplate.queryForObject(
+                "SELECT max_timestamp FROM hits_totals WHERE uri_id = (SELECT id FROM uris WHERE name = '/a')",
+                LocalDateTime.class);
+
+        assertEquals(1, hits, "Хит без ip не учитывается");
+        assertEquals(base.plusDays(2), maxTimestamp);
+    }
+
+    @Test
+    @DisplayName("Диапазон, покрывающий все хиты, читается из счётчиков и совпадает с подсчётом по hits")
+    void shouldServeAllTimeRangeFromTotals() {
+        assertNotNull(totalsRepository.findCovering(allStart, allEnd, List.of(), "", false));
+        // счётчики не пересчитываются по hits: хит, записанный мимо них, в ответ не попадает
+        jdbcTemplate.update("INSERT INTO hits (service_id, uri_id, ip, timestamp) " +
+                "SELECT service_id, uri_id, ip, timestamp FROM hits WHERE timestamp = ?", base);
+
+        List<Stats> stats = new ArrayList<>(hitRepository.getStatistics(allStart, allEnd, List.of("/a", "/b"), false));
+        List<Stats> unique = new ArrayList<>(hitRepository.getStatistics(allStart, allEnd, List.of("/a"), true));
+
+        assertEquals(2, stats.size());
+        assertAll(
+                () -> assertEquals("/a", stats.get(0).getUri()),
+                () -> assertEquals(3, stats.get(0).getHits()),
+                () -> assertEquals(1, stats.get(1).getHits()),
+                () -> assertEquals(2, unique.getFirst().getHits())
+        );
+    }
+
+    @Test
+    @DisplayName("Счётчики учитывают ещё не перенесённые приращения")
+    void shouldCountPendingDelta() {
+        totalsRepository.compact();
+        hitRepository.save(new Hit("svc", "/a", "10.0.0.4", base.plusDays(4)));
+
+        List<Stats> stats = totalsRepository.findCovering(allStart, allEnd, List.of(), "", false);
+        List<Stats> unique = totalsRepository.findCovering(allStart, allEnd, List.of(), "", true);
+
+        assertAll(
+                () -> assertEquals(4, stats.getFirst().getHits()),
+                () -> assertEquals(3, unique.getFirst().getHits()),
+                () -> assertNull(totalsRepository.findCovering(allStart, base.plusDays(3), List.of(), "", false))
+        );
+    }
+
+    @Test
+    @DisplayName("Диапазон, не покрывающий все хиты uri, считается по таблице hits")
+    void shouldFallBackToHits_whenRangeIsPartial() {
+        assertNull(totalsRepository.findCovering(base.plusHours(1), allEnd, List.of(), "", false));
+
+        List<Stats> stats = new ArrayList<>(hitRepository.getStatistics(
+                base.plusHours(1), allEnd, List.of("/a"), false));
+
+        assertEquals(2, stats.getFirst().getHits());
+    }
+
+    @Test
+    @DisplayName("Перестроение счётчиков из таблицы hits даёт тот же результат")
+    void shouldRebuildTotalsFromHits() {
+        List<Stats> before = new ArrayList<>(hitRepository.getStatistics(allStart, allEnd, null, true));
+
+        totalsRepository.rebuild();
+
+        List<Stats> after = new ArrayList<>(hitRepository.getStatistics(allStart, allEnd, null, true));
+        assertEquals(before.toString(), after.toString());
+    }
+}
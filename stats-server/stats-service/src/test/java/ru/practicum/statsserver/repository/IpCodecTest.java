@@ -0,0 +1,38 @@
+package ru.practicum.statsserver.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IpCodecTest {
+
+    @Test
+    @DisplayName("IPv4 упаковывается в 16 байт как IPv4-mapped IPv6")
+    void shouldEncodeIpv4AsMappedIpv6() {
+        byte[] encoded = IpCodec.encode("192.168.1.1");
+
+        assertEquals(IpCodec.ADDRESS_LENGTH, encoded.length);
+        assertArrayEquals(new byte[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0xff, (byte) 0xff,
+                (byte) 192, (byte) 168, 1, 1}, encoded);
+        assertArrayEquals(encoded, IpCodec.encode("::ffff:192.168.1.1"));
+    }
+
+    @Test
+    @DisplayName("Разные записи одного IPv6 адреса дают одинаковые байты")
+    void shouldEncodeIpv6Canonically() {
+        assertArrayEquals(IpCodec.encode("2001:db8::1"), IpCodec.encode("2001:0DB8:0:0:0:0:0:1"));
+        assertEquals(IpCodec.ADDRESS_LENGTH, IpCodec.encode("::1").length);
+    }
+
+    @Test
+    @DisplayName("Строки, не являющиеся ip, сохраняются как есть")
+    void shouldKeepNonIpValuesAsText() {
+        assertArrayEquals("unknown".getBytes(StandardCharsets.UTF_8), IpCodec.encode("unknown"));
+        assertArrayEquals("256.1.1.1".getBytes(StandardCharsets.UTF_8), IpCodec.encode("256.1.1.1"));
+        assertArrayEquals("fe:zz".getBytes(StandardCharsets.UTF_8), IpCodec.encode("fe:zz"));
+        assertNull(IpCodec.encode(null));
+    }
+}
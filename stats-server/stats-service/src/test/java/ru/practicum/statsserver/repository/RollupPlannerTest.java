@@ -0,0 +1,52 @@
+package ru.practicum.statsserver.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollupPlannerTest {
+
+    private final LocalDateTime base = LocalDateTime.of(2024, 3, 10, 0, 0);
+
+    @Test
+    @DisplayName("Целые дни берутся из дневного роллапа, края читаются из hits")
+    void shouldSplitRangeIntoDaysAndRawEdges() {
+        List<TimeSpan> spans = RollupPlanner.plan(base.minusSeconds(50), base.plusDays(2));
+
+        assertEquals(List.of(
+                new TimeSpan(null, base.minusSeconds(50), base, false),
+                new TimeSpan(RollupResolution.DAY, base, base.plusDays(2), false),
+                new TimeSpan(null, base.plusDays(2), base.plusDays(2), true)
+        ), spans);
+    }
+
+    @Test
+    @DisplayName("Неполные сутки покрываются часами и минутами")
+    void shouldUseFinerResolutionsForPartialBuckets() {
+        List<TimeSpan> spans = RollupPlanner.plan(
+                base.plusMinutes(58).plusSeconds(30),
+                base.plusHours(3).plusMinutes(2).plusSeconds(10));
+
+        assertEquals(List.of(
+                new TimeSpan(null, base.plusMinutes(58).plusSeconds(30), base.plusMinutes(59), false),
+                new TimeSpan(RollupResolution.MINUTE, base.plusMinutes(59), base.plusHours(1), false),
+                new TimeSpan(RollupResolution.HOUR, base.plusHours(1), base.plusHours(3), false),
+                new TimeSpan(RollupResolution.MINUTE, base.plusHours(3), base.plusHours(3).plusMinutes(2), false),
+                new TimeSpan(null, base.plusHours(3).plusMinutes(2),
+                        base.plusHours(3).plusMinutes(2).plusSeconds(10), true)
+        ), spans);
+    }
+
+    @Test
+    @DisplayName("Короткий диапазон внутри одной минуты читается целиком из hits")
+    void shouldUseRawHitsForShortRange() {
+        List<TimeSpan> spans = RollupPlanner.plan(base.plusSeconds(5), base.plusSeconds(40));
+
+        assertEquals(1, spans.size());
+        assertTrue(spans.get(0).isRaw());
+    }
+}
@@ -0,0 +1,123 @@
+package ru.practicum.statsserver.segment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import ru.practicum.statsserver.model.Hit;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.repository.HitRepository;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares ingest and query time of the JDBC and segment engines on the same data.
+ * Runs only on demand: mvn test -Dtest=SegmentHitRepositoryBenchmark -Dstats.benchmark=true
+ * (with the test profile the JDBC engine runs on H2; point spring.datasource to PostgreSQL for real numbers).
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "stats.benchmark", matches = "true")
+class SegmentHitRepositoryBenchmark {
+
+    private static final int HITS = Integer.getInteger("stats.benchmark.hits", 500_000);
+    private static final int BATCH_SIZE = 1_000;
+    private static final int URIS = 1_000;
+    private static final int QUERIES = 20;
+
+    @Autowired
+    private HitRepository jdbcRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    Path directory;
+
+    private final LocalDateTime base = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    @AfterEach
+    void cleanup() {
+        jdbcTemplate.update("DELETE FROM hits");
+    }
+
+    @Test
+    @DisplayName("Сравнение JDBC- и сегментного хранилища")
+    void compareEngines() throws Exception {
+        List<List<Hit>> batches = generate();
+        SegmentHitRepository segmentRepository = new SegmentHitRepository(directory.toString(), 1 << 20, 4096, 0);
+        try {
+            long jdbcIngest = time(() -> batches.forEach(jdbcRepository::saveAll));
+            long segmentIngest = time(() -> batches.forEach(segmentRepository::saveAll));
+
+            LocalDateTime start = base.plusDays(10);
+            LocalDateTime end = base.plusDays(11);
+            assertEquals(asSet(jdbcRepository.getStatistics(start, end, null, true)),
+                    asSet(segmentRepository.getStatistics(start, end, null, true)));
+
+            long jdbcQuery = time(() -> query(jdbcRepository, start, end));
+            long segmentQuery = time(() -> query(segmentRepository, start, end));
+
+            System.out.printf("""
+                    %d hits, %d uris
+                    ingest: jdbc %d ms (%.0f hits/s), segment %d ms (%.0f hits/s)
+                    %d unique queries over one day: jdbc %d ms, segment %d ms
+                    """,
+                    HITS, URIS,
+                    jdbcIngest, HITS * 1000.0 / jdbcIngest, segmentIngest, HITS * 1000.0 / segmentIngest,
+                    QUERIES, jdbcQuery, segmentQuery);
+        } finally {
+            segmentRepository.destroy();
+        }
+    }
+
+    private List<List<Hit>> generate() {
+        Random random = new Random(42);
+        List<List<Hit>> batches = new ArrayList<>();
+        List<Hit> batch = new ArrayList<>(BATCH_SIZE);
+        long spanSeconds = 30L * 24 * 3600;
+
+        for (int i = 0; i < HITS; i++) {
+            // хиты идут примерно по времени, как при реальной записи
+            long second = spanSeconds * i / HITS + random.nextInt(60);
+            batch.add(new Hit("ewm-main-service", "/events/" + random.nextInt(URIS),
+                    "10.%d.%d.%d".formatted(random.nextInt(4), random.nextInt(256), random.nextInt(256)),
+                    base.plusSeconds(second)));
+            if (batch.size() == BATCH_SIZE) {
+                batches.add(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty())
+            batches.add(batch);
+        return batches;
+    }
+
+    private void query(HitRepository repository, LocalDateTime start, LocalDateTime end) {
+        for (int i = 0; i < QUERIES; i++)
+            repository.getStatistics(start, end, List.of("/events/" + i), true);
+    }
+
+    private static Set<String> asSet(Collection<Stats> stats) {
+        return stats.stream().map(Stats::toString).collect(Collectors.toSet());
+    }
+
+    private long time(Runnable action) {
+        long started = System.nanoTime();
+        action.run();
+        return (System.nanoTime() - started) / 1_000_000;
+    }
+}
@@ -0,0 +1,206 @@
+package ru.practicum.statsserver.segment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.statsserver.model.Hit;
+import ru.practicum.statsserver.model.HitBounds;
+import ru.practicum.statsserver.model.SeriesPoint;
+import ru.practicum.statsserver.model.Stats;
+import ru.practicum.statsserver.repository.RollupResolution;
+import ru.practicum.statsserver.repository.UriPattern;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentHitRepositoryTest {
+
+    // маленькие сегменты и блоки, чтобы проверить переключение сегментов и разреженный индекс
+    private static final int RECORDS_PER_SEGMENT = 8;
+    private static final int BLOCK_SIZE = 2;
+
+    @TempDir
+    Path directory;
+
+    private final LocalDateTime base = LocalDateTime.of(2025, 3, 10, 12, 0);
+    private SegmentHitRepository repository;
+
+    @BeforeEach
+    void setup() throws IOException {
+        repository = open();
+        repository.saveAll(List.of(
+                new Hit("svc", "/a", "10.0.0.1", base),
+                new Hit("svc", "/a", "10.0.0.2", base.plusMinutes(1)),
+                new Hit("svc", "/a", "10.0.0.1", base.plusMinutes(2)),
+                new Hit("svc", "/b", "2001:db8::1", base.plusMinutes(3)),
+                new Hit("svc", "/b", "::ffff:10.0.0.1", base.plusMinutes(4)),
+                new Hit("svc", "/c", null, base.plusMinutes(5)),
+                new Hit("other", "/a", "10.0.0.1", base.plusDays(1))
+        ));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        repository.destroy();
+    }
+
+    @Test
+    @DisplayName("Считает хиты по uri и сортирует как JDBC-хранилище")
+    void shouldCountHits() {
+        List<Stats> stats = new ArrayList<>(repository.getStatistics(base, base.plusHours(1), null, false));
+
+        assertEquals(3, stats.size());
+        assertAll(
+                () -> assertEquals("/a", stats.get(0).getUri()),
+                () -> assertEquals(3, stats.get(0).getHits()),
+                () -> assertEquals("/b", stats.get(1).getUri()),
+                () -> assertEquals(2, stats.get(1).getHits()),
+                () -> assertEquals("/c", stats.get(2).getUri()),
+                () -> assertEquals(0, stats.get(2).getHits(), "Хиты без ip не учитываются")
+        );
+    }
+
+    @Test
+    @DisplayName("Границы хитов берутся из индекса блоков и не выходят за запрошенный диапазон")
+    void shouldReturnBounds() {
+        HitBounds all = repository.getBounds(base.minusYears(25), base.plusYears(75), null);
+        HitBounds clamped = repository.getBounds(base.plusMinutes(2), base.plusHours(1), List.of("/a"));
+
+        assertEquals(base, all.getFirst());
+        assertEquals(base.plusDays(1), all.getLast());
+        assertEquals(base.plusMinutes(2), clamped.getFirst());
+        assertEquals(base.plusMinutes(5), clamped.getLast(), "фильтр uri не сужает границы блоков");
+        assertNull(repository.getBounds(base.plusHours(2), base.plusHours(3), null));
+        assertNull(repository.getBounds(base, base.plusDays(1), List.of("/missing")));
+    }
+
+    @Test
+    @DisplayName("Возвращает только первые limit строк и учитывает префикс uri")
+    void shouldReturnTopStats() {
+        List<Stats> top = new ArrayList<>(repository.getTopStatistics(base, base.plusHours(1), null, 2, false));
+        assertEquals(2, top.size());
+        assertEquals("/a", top.get(0).getUri());
+        assertEquals("/b", top.get(1).getUri());
+
+        List<Stats> byPrefix = new ArrayList<>(repository.getTopStatistics(base, base.plusHours(1), "/b", 5, false));
+        assertEquals(1, byPrefix.size());
+        assertEquals("/b", byPrefix.getFirst().getUri());
+    }
+
+    @Test
+    @DisplayName("Складывает хиты uri под шаблоном в одну строку на сервис")
+    void shouldCountGroupStats() {
+        repository.saveAll(List.of(
+                new Hit("svc", "/events/1", "10.0.0.1", base),
+                new Hit("svc", "/events/2", "10.0.0.1", base),
+                new Hit("svc", "/events/2/comments", "10.0.0.2", base)));
+
+        List<Stats> hits = new ArrayList<>(repository.getGroupStatistics(base, base.plusHours(1),
+                UriPattern.template("/events/{id}"), false));
+        List<Stats> unique = new ArrayList<>(repository.getGroupStatistics(base, base.plusHours(1),
+                UriPattern.prefix("/events/"), true));
+
+        assertEquals(1, hits.size());
+        assertEquals("/events/{id}", hits.getFirst().getUri());
+        assertEquals(2, hits.getFirst().getHits());
+        assertEquals(2, unique.getFirst().getHits());
+        assertTrue(repository.getGroupStatistics(base, base.plusHours(1), UriPattern.prefix("/none"), false).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Считает уникальные ip с фильтром по uri")
+    void shouldCountUniqueIps() {
+        List<Stats> stats = new ArrayList<>(repository.getStatistics(
+                base, base.plusDays(2), List.of("/a", "/b", "/unknown"), true));
+
+        assertEquals(3, stats.size());
+        assertAll(
+                () -> assertEquals("svc", stats.get(0).getService()),
+                () -> assertEquals(2, stats.get(0).getHits()),
+                () -> assertEquals(2, stats.get(1).getHits()),
+                () -> assertEquals("other", stats.get(2).getService()),
+                () -> assertEquals(1, stats.get(2).getHits())
+        );
+        assertTrue(repository.getStatistics(base, base.plusDays(2), List.of("/unknown"), false).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Разбивает хиты по интервалам, уникальные ip считаются внутри интервала")
+    void shouldBuildSeries() {
+        List<SeriesPoint> minutes = new ArrayList<>(repository.getSeries(
+                base, base.plusHours(1), List.of("/a"), RollupResolution.MINUTE, false));
+        assertEquals(3, minutes.size());
+        assertEquals(base.plusMinutes(2), minutes.get(2).getBucket());
+        assertTrue(minutes.stream().allMatch(point -> point.getHits() == 1));
+
+        List<SeriesPoint> hours = new ArrayList<>(repository.getSeries(
+                base, base.plusDays(2), List.of("/a"), RollupResolution.HOUR, true));
+        assertEquals(2, hours.size());
+        assertAll(
+                () -> assertEquals("other", hours.get(0).getService()),
+                () -> assertEquals(base.plusDays(1), hours.get(0).getBucket()),
+                () -> assertEquals(1, hours.get(0).getHits()),
+                () -> assertEquals(base, hours.get(1).getBucket()),
+                () -> assertEquals(2, hours.get(1).getHits())
+        );
+    }
+
+    @Test
+    @DisplayName("Хиты переживают перезапуск и продолжают дописываться")
+    void shouldReopenSegments() throws IOException {
+        repository.destroy();
+        repository = open();
+        repository.saveAll(hits("/d", 10, base.plusMinutes(10)));
+
+        List<Stats> stats = new ArrayList<>(repository.getStatistics(base, base.plusHours(1), null, false));
+
+        assertEquals(4, stats.size());
+        assertEquals("/d", stats.get(0).getUri());
+        assertEquals(10, stats.get(0).getHits());
+        assertEquals(3, segmentFiles().size(), "17 хитов по 8 в сегменте");
+    }
+
+    @Test
+    @DisplayName("Компактизация объединяет сегменты, не меняя статистику")
+    void shouldCompactSegments() throws IOException {
+        repository.saveAll(hits("/d", 10, base.minusMinutes(30)));
+        Collection<Stats> before = repository.getStatistics(base.minusHours(1), base.plusDays(2), null, true);
+
+        repository.compact();
+
+        assertEquals(toString(before),
+                toString(repository.getStatistics(base.minusHours(1), base.plusDays(2), null, true)));
+        assertEquals(3, segmentFiles().size(), "Две полные отсортированные части и активный сегмент");
+    }
+
+    private SegmentHitRepository open() throws IOException {
+        return new SegmentHitRepository(directory.toString(), RECORDS_PER_SEGMENT, BLOCK_SIZE, 0);
+    }
+
+    private List<Hit> hits(String uri, int count, LocalDateTime from) {
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            hits.add(new Hit("svc", uri, "10.1.0." + i, from.plusSeconds(i)));
+        return hits;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("segment-")).toList();
+        }
+    }
+
+    private static List<String> toString(Collection<Stats> stats) {
+        return stats.stream().map(Stats::toString).toList();
+    }
+}
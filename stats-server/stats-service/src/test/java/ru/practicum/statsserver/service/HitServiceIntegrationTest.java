@@ -5,15 +5,28 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.statsdto.HitDto;
+import ru.practicum.statsdto.SeriesPointDtoOut;
 import ru.practicum.statsdto.StatsDtoOut;
+import ru.practicum.statsdto.ViewCounts;
 import ru.practicum.statsserver.exception.ParameterInvalidException;
+import ru.practicum.statsserver.model.ImportResult;
+import ru.practicum.statsserver.model.PartialStats;
+import ru.practicum.statsserver.repository.QueryDeadline;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -25,6 +38,8 @@ class HitServiceIntegrationTest {
     @Autowired
     private HitService hitService;
 
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     private final LocalDateTime testNow = LocalDateTime.now();
 
     @BeforeEach
@@ -115,4 +130,194 @@ class HitServiceIntegrationTest {
             }
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Возвращает просмотры по числовым id, хиты разных сервисов складываются")
+    void shouldReturnViewCountsByIds() {
+        hitService.add(new HitDto("service1", "/events/1", "10.0.0.1", testNow.minusMinutes(5)));
+        hitService.add(new HitDto("service1", "/events/1", "10.0.0.2", testNow.minusMinutes(4)));
+        hitService.add(new HitDto("service2", "/events/1", "10.0.0.3", testNow.minusMinutes(3)));
+        hitService.add(new HitDto("service1", "/events/2", "10.0.0.1", testNow.minusMinutes(2)));
+
+        ViewCounts views = hitService.getViewCounts(testNow.minusHours(1), testNow.plusMinutes(5),
+                "/events/", List.of(2L, 1L, 3L), false);
+
+        assertEquals(2, views.size(), "id без хитов в ответ не попадают");
+        assertArrayEquals(new long[]{1, 2}, views.getIds());
+        assertEquals(3, views.get(1));
+        assertEquals(1, views.get(2));
+        assertEquals(0, views.get(3));
+    }
+
+    @Test
+    @DisplayName("Возвращает самые просматриваемые uri с префиксом, не больше limit")
+    void shouldReturnTopStatisticsByPrefix() {
+        hitService.add(new HitDto("service1", "/events/1", "10.0.0.1", testNow.minusMinutes(5)));
+        hitService.add(new HitDto("service1", "/events/2", "10.0.0.1", testNow.minusMinutes(4)));
+        hitService.add(new HitDto("service1", "/events/2", "10.0.0.2", testNow.minusMinutes(3)));
+        hitService.add(new HitDto("service1", "/events/3", "10.0.0.1", testNow.minusMinutes(2)));
+
+        List<StatsDtoOut> top = hitService.getTopStatistics(testNow.minusHours(2), testNow.plusMinutes(5),
+                "/events/", 2, false);
+
+        assertEquals(2, top.size());
+        assertEquals("/events/2", top.get(0).getUri());
+        assertEquals(2, top.get(0).getHits());
+        assertEquals(1, top.get(1).getHits());
+        assertTrue(top.stream().allMatch(stats -> stats.getUri().startsWith("/events/")));
+    }
+
+    @Test
+    @DisplayName("Складывает хиты всех uri с префиксом или под шаблоном в одну строку на сервис")
+    void shouldReturnGroupStatistics() {
+        hitService.add(new HitDto("service1", "/events/1", "10.0.0.1", testNow.minusMinutes(5)));
+        hitService.add(new HitDto("service1", "/events/2", "10.0.0.1", testNow.minusMinutes(4)));
+        hitService.add(new HitDto("service1", "/events/2/comments", "10.0.0.2", testNow.minusMinutes(3)));
+        hitService.add(new HitDto("service2", "/events/3", "10.0.0.3", testNow.minusMinutes(2)));
+        hitService.add(new HitDto("service1", "/events_all", "10.0.0.4", testNow.minusMinutes(2)));
+        LocalDateTime start = testNow.minusHours(2);
+        LocalDateTime end = testNow.plusMinutes(5);
+
+        List<StatsDtoOut> byPrefix = new ArrayList<>(
+                hitService.getGroupStatistics(start, end, null, "/events/", null, false));
+        List<StatsDtoOut> byTemplate = new ArrayList<>(
+                hitService.getGroupStatistics(start, end, null, null, "/events/{id}", true));
+
+        assertEquals(2, byPrefix.size());
+        assertEquals("service1", byPrefix.get(0).getService());
+        assertEquals("/events/", byPrefix.get(0).getUri());
+        assertEquals(3, byPrefix.get(0).getHits());
+        assertEquals(1, byPrefix.get(1).getHits());
+        assertEquals("/events/{id}", byTemplate.get(0).getUri());
+        assertEquals(1, byTemplate.stream().filter(stats -> stats.getService().equals("service1"))
+                .findFirst().orElseThrow().getHits(), "один ip, /events/2/comments не подходит под шаблон");
+        assertThrows(ParameterInvalidException.class,
+                () -> hitService.getGroupStatistics(start, end, null, null, "/events/{id", false));
+        assertThrows(ParameterInvalidException.class,
+                () -> hitService.getGroupStatistics(start, end, List.of("/test"), "/events/", null, false));
+    }
+
+    @Test
+    @DisplayName("Считает статистику по частям диапазона и помечает неполный результат, если срок вышел")
+    void shouldReturnPartialStatistics() {
+        hitService.add(new HitDto("service1", "/test", "192.168.1.3", testNow.minusDays(3)));
+        hitService.add(new HitDto("service1", "/old", "192.168.1.3", testNow.minusDays(3).minusHours(2)));
+        LocalDateTime start = testNow.minusDays(4);
+        LocalDateTime end = testNow.plusMinutes(5);
+
+        PartialStats full = hitService.getPartialStatistics(start, end, null, false,
+                new QueryDeadline(Duration.ofMinutes(1)));
+        assertFalse(full.isPartial());
+        assertEquals(List.of("/test:4", "/old:1", "/other:1"),
+                full.getStats().stream().map(stat -> stat.getUri() + ":" + stat.getHits()).toList());
+
+        PartialStats expired = hitService.getPartialStatistics(start, end, null, false,
+                new QueryDeadline(Duration.ZERO));
+        assertTrue(expired.isPartial());
+        assertTrue(expired.getStats().isEmpty());
+        assertTrue(expired.getCoveredFrom().isAfter(end));
+    }
+
+    @Test
+    @DisplayName("Широкий диапазон считается частями только между первым и последним хитом")
+    void shouldChunkPartialStatisticsByHitBounds() {
+        LocalDateTime start = LocalDateTime.of(2000, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2100, 1, 1, 0, 0);
+
+        PartialStats stats = hitService.getPartialStatistics(start, end, List.of("/test"), false,
+                new QueryDeadline(Duration.ofSeconds(30)));
+
+        assertFalse(stats.isPartial(), "за 100 лет по частям в сутки было бы 36 500 запросов");
+        assertEquals(start, stats.getCoveredFrom());
+        assertEquals(3, stats.getStats().getFirst().getHits());
+        assertTrue(hitService.getPartialStatistics(start, end, List.of("/missing"), false,
+                new QueryDeadline(Duration.ofSeconds(30))).getStats().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Возвращает хиты по интервалам и отклоняет неизвестный или слишком мелкий интервал")
+    void shouldReturnSeries() {
+        LocalDateTime start = testNow.minusHours(2);
+        LocalDateTime end = testNow.plusMinutes(5);
+
+        List<SeriesPointDtoOut> series = hitService.getSeries(start, end, List.of("/test"), "minute", false);
+
+        assertEquals(3, series.size());
+        assertEquals(3, series.stream().mapToInt(SeriesPointDtoOut::getHits).sum());
+        assertTrue(series.get(0).getBucket().isBefore(series.get(1).getBucket()));
+        assertThrows(ParameterInvalidException.class,
+                () -> hitService.getSeries(start, end, null, "week", false));
+        assertThrows(ParameterInvalidException.class,
+                () -> hitService.getSeries(start.minusYears(1), end, null, "minute", false));
+    }
+
+    @Test
+    @DisplayName("Пишет статистику в поток построчно в формате NDJSON")
+    void shouldWriteStatisticsAsNdjson() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        hitService.writeStatistics(testNow.minusHours(2), testNow.plusMinutes(5), null, true, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).strip().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("{\"app\":\"service1\",\"uri\":\"/test\",\"hits\":2}", lines[0]);
+        assertEquals("{\"app\":\"service1\",\"uri\":\"/other\",\"hits\":1}", lines[1]);
+    }
+
+    @Test
+    @DisplayName("Импортирует хиты из NDJSON и CSV")
+    void shouldImportHitsFromNdjsonAndCsv() {
+        String ndjson = """
+                {"app":"service1","uri":"/imported","ip":"10.0.0.1","timestamp":"%1$s"}
+                {"app":"service1","uri":"/imported","ip":"10.0.0.2","timestamp":"%1$s"}
+                """.formatted(testNow.minusMinutes(5).format(FORMATTER));
+        String csv = """
+                app,uri,ip,timestamp
+                service1,/imported,10.0.0.1,"%s"
+                """.formatted(testNow.minusMinutes(4).format(FORMATTER));
+
+        ImportResult fromNdjson = hitService.importHits(toStream(ndjson), MediaType.APPLICATION_NDJSON);
+        ImportResult fromCsv = hitService.importHits(toStream(csv), MediaType.valueOf("text/csv"));
+
+        assertEquals(2, fromNdjson.getImported());
+        assertEquals(1, fromCsv.getImported());
+
+        Collection<StatsDtoOut> stats = hitService.getStatistics(
+                testNow.minusHours(2), testNow.plusMinutes(5), List.of("/imported"), false);
+        assertEquals(3, stats.iterator().next().getHits());
+    }
+
+    @Test
+    @DisplayName("Отклоняет импорт с невалидной строкой и сообщает её номер")
+    void shouldRejectImport_whenLineIsInvalid() {
+        String ndjson = """
+                {"app":"service1","uri":"/imported","ip":"10.0.0.1","timestamp":"%s"}
+                {"app":"service1","uri":"bad uri","ip":"10.0.0.2"}
+                """.formatted(testNow.format(FORMATTER));
+
+        ParameterInvalidException ex = assertThrows(
+                ParameterInvalidException.class,
+                () -> hitService.importHits(toStream(ndjson), MediaType.APPLICATION_NDJSON)
+        );
+
+        assertTrue(ex.getMessage().contains("line 2"));
+    }
+
+    @Test
+    @DisplayName("Повторно отправленный хит с тем же id не учитывается")
+    void shouldSkipHitsWithAlreadySeenIds() {
+        HitDto hit = new HitDto("service1", "/dedup", "10.0.0.1", testNow.minusMinutes(1), "hit-1");
+
+        hitService.addAll(List.of(hit, new HitDto("service1", "/dedup", "10.0.0.2", testNow, "hit-2")));
+        hitService.addAll(List.of(hit));
+        hitService.add(hit);
+
+        Collection<StatsDtoOut> stats = hitService.getStatistics(
+                testNow.minusHours(1), testNow.plusMinutes(1), List.of("/dedup"), false);
+        assertEquals(2, stats.iterator().next().getHits());
+    }
+
+    private static InputStream toStream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
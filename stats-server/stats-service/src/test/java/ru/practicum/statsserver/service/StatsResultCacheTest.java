@@ -0,0 +1,77 @@
+package ru.practicum.statsserver.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.practicum.statsdto.StatsDtoOut;
+import ru.practicum.statsserver.model.Hit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatsResultCacheTest {
+
+    private final StatsResultCache cache = new StatsResultCache(new SimpleMeterRegistry(), true,
+            Duration.ofMinutes(10), 100, 100, Duration.ofMinutes(1));
+
+    private final LocalDateTime now = LocalDateTime.now();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Supplier<List<StatsDtoOut>> loader = () ->
+            List.of(new StatsDtoOut("svc", "/a", loads.incrementAndGet()));
+
+    @Test
+    @DisplayName("Закрытое окно считается один раз независимо от порядка uri")
+    void shouldCacheClosedWindow() {
+        LocalDateTime start = now.minusDays(2);
+        LocalDateTime end = now.minusDays(1);
+
+        cache.get(start, end, List.of("/b", "/a"), false, loader);
+        cache.onHits(List.of(new Hit("svc", "/a", "10.0.0.1", now)));
+        List<StatsDtoOut> cached = cache.get(start, end, List.of("/a", "/b", "/a"), false, loader);
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cached.getFirst().getHits());
+        cache.get(start, end, List.of("/a", "/b"), true, loader);
+        assertEquals(2, loads.get(), "unique входит в ключ");
+    }
+
+    @Test
+    @DisplayName("Хит, попавший в открытое окно, сбрасывает его, остальные окна остаются в кеше")
+    void shouldInvalidateOpenWindowOnHit() {
+        LocalDateTime start = now.minusHours(1);
+        LocalDateTime end = now.plusHours(1);
+
+        cache.get(start, end, List.of("/a"), false, loader);
+        cache.get(start, end, List.of("/b"), false, loader);
+        cache.onHits(List.of(new Hit("svc", "/a", "10.0.0.1", now)));
+
+        assertEquals(3, cache.get(start, end, List.of("/a"), false, loader).getFirst().getHits());
+        assertEquals(2, cache.get(start, end, List.of("/b"), false, loader).getFirst().getHits());
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    @DisplayName("Окно без фильтра по uri сбрасывает хит на любой uri, но только внутри окна")
+    void shouldInvalidateAllUrisWindowByTimestamp() {
+        LocalDateTime start = now.minusHours(1);
+        LocalDateTime end = now.plusHours(1);
+
+        cache.get(start, end, List.of(), false, loader);
+        cache.get(start, end, List.of("/a", "/b"), false, loader);
+        cache.onHits(List.of(new Hit("svc", "/c", "10.0.0.1", now.minusHours(2))));
+
+        assertEquals(1, cache.get(start, end, null, false, loader).getFirst().getHits(),
+                "хит раньше начала окна его не меняет");
+        cache.onHits(List.of(new Hit("svc", "/c", "10.0.0.1", now)));
+
+        assertEquals(3, cache.get(start, end, List.of(), false, loader).getFirst().getHits());
+        assertEquals(2, cache.get(start, end, List.of("/b", "/a"), false, loader).getFirst().getHits());
+        cache.onHits(List.of(new Hit("svc", "/b", "10.0.0.1", now)));
+        assertEquals(4, cache.get(start, end, List.of("/a", "/b"), false, loader).getFirst().getHits());
+    }
+}
@@ -0,0 +1,43 @@
+package ru.practicum.statsserver.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.practicum.statsdto.StatsDtoOut;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopStatsCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TopStatsCache cache = new TopStatsCache(meterRegistry, 100, Duration.ofMinutes(10));
+
+    private final LocalDateTime now = LocalDateTime.now();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Supplier<List<StatsDtoOut>> loader = () ->
+            List.of(new StatsDtoOut("svc", "/a", loads.incrementAndGet()));
+
+    @Test
+    @DisplayName("Закрытое окно считается один раз, открытое - при каждом запросе")
+    void shouldCacheOnlyClosedWindow() {
+        cache.get(now.minusDays(2), now.minusDays(1), "/a", 10, false, loader);
+        List<StatsDtoOut> cached = cache.get(now.minusDays(2), now.minusDays(1), "/a", 10, false, loader);
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cached.getFirst().getHits());
+        cache.get(now.minusDays(2), now.minusDays(1), "/a", 5, false, loader);
+        assertEquals(2, loads.get(), "limit входит в ключ");
+
+        cache.get(now.minusHours(1), now, "/a", 10, false, loader);
+        cache.get(now.minusHours(1), now, "/a", 10, false, loader);
+        assertEquals(4, loads.get());
+        assertEquals(1, meterRegistry.get("cache.gets")
+                .tag("cache", "stats.server.top.cache").tag("result", "hit").functionCounter().count());
+    }
+}
@@ -0,0 +1,53 @@
+package ru.practicum.statsserver.sketch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HyperLogLogTest {
+
+    @Test
+    @DisplayName("Пустой скетч оценивается нулём")
+    void shouldEstimateZeroForEmptySketch() {
+        assertEquals(0, new HyperLogLog().estimate());
+    }
+
+    @Test
+    @DisplayName("Повторы одного значения не увеличивают оценку")
+    void shouldIgnoreDuplicates() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 1000; i++)
+            sketch.add(HyperLogLog.hash("192.168.0.1"));
+
+        assertEquals(1, sketch.estimate());
+    }
+
+    @Test
+    @DisplayName("Оценка большого множества укладывается в заявленную погрешность")
+    void shouldEstimateWithinErrorBound() {
+        HyperLogLog sketch = new HyperLogLog();
+        int distinct = 100_000;
+        for (int i = 0; i < distinct; i++)
+            sketch.add(HyperLogLog.hash("10." + (i >> 16) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff)));
+
+        double error = Math.abs(sketch.estimate() - distinct) / (double) distinct;
+        assertTrue(error < 0.05, "Ошибка оценки " + error);
+    }
+
+    @Test
+    @DisplayName("Объединение скетчей равно скетчу объединения множеств")
+    void shouldMergeSketches() {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        HyperLogLog union = new HyperLogLog();
+        for (int i = 0; i < 20_000; i++) {
+            long hash = HyperLogLog.hash("ip-" + i);
+            (i % 2 == 0 ? first : second).add(hash);
+            union.add(hash);
+        }
+
+        first.merge(second);
+        assertEquals(union.estimate(), first.estimate());
+    }
+}